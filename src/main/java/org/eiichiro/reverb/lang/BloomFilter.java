@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2019 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.reverb.lang;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * {@code BloomFilter} is the fixed-size summary of a set of names (e.g. the 
+ * annotation types and the supertypes referred to by the classes in a jar 
+ * file) which answers whether a name may be in the set.
+ * {@link #mightContain(String)} never returns <code>false</code> for the 
+ * name in the set, and returns <code>true</code> for the name not in the set 
+ * with the probability of about 1% (10 bits and 7 hash functions per name).
+ * So a query can skip the whole set by testing one name against a few 
+ * hundred bytes.
+ * This class is immutable.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+final class BloomFilter {
+
+	private static final int BITS = 10;
+	
+	private static final int HASHES = 7;
+	
+	private final long[] bits;
+	
+	/**
+	 * Constructs a new {@code BloomFilter} of the specified names.
+	 * 
+	 * @param names The names to be summarized.
+	 */
+	BloomFilter(Collection<String> names) {
+		bits = new long[Math.max(1, (names.size() * BITS + 63) / 64)];
+		
+		for (String name : names) {
+			int h1 = name.hashCode();
+			int h2 = hash(name);
+			
+			for (int i = 0; i < HASHES; i++) {
+				int bit = index(h1 + i * h2);
+				bits[bit >>> 6] |= 1L << bit;
+			}
+		}
+	}
+	
+	private BloomFilter(long[] bits) {
+		this.bits = bits;
+	}
+	
+	/**
+	 * Indicates whether the specified name may be in the set or not.
+	 * 
+	 * @param name The name.
+	 * @return <code>false</code> If the specified name is never in the set.
+	 */
+	boolean mightContain(String name) {
+		int h1 = name.hashCode();
+		int h2 = hash(name);
+		
+		for (int i = 0; i < HASHES; i++) {
+			int bit = index(h1 + i * h2);
+			
+			if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	private int index(int hash) {
+		return (int) ((hash & 0xffffffffL) % (bits.length * 64L));
+	}
+	
+	/** FNV-1a hash of the characters, independent of {@code String#hashCode()}. */
+	private static int hash(String name) {
+		int hash = 0x811c9dc5;
+		
+		for (int i = 0; i < name.length(); i++) {
+			hash ^= name.charAt(i);
+			hash *= 0x01000193;
+		}
+		
+		return hash | 1;
+	}
+	
+	/**
+	 * Writes this {@code BloomFilter} to the specified {@code DataOutput}.
+	 * 
+	 * @param output {@code DataOutput}.
+	 * @throws IOException If any I/O access fails while writing.
+	 */
+	void write(DataOutput output) throws IOException {
+		output.writeInt(bits.length);
+		
+		for (long l : bits) {
+			output.writeLong(l);
+		}
+	}
+	
+	/**
+	 * Reads {@code BloomFilter} from the specified {@code DataInput}.
+	 * 
+	 * @param input {@code DataInput}.
+	 * @return {@code BloomFilter} read.
+	 * @throws IOException If any I/O access fails while reading.
+	 */
+	static BloomFilter read(DataInput input) throws IOException {
+		int length = input.readInt();
+		
+		if (length <= 0) {
+			throw new IOException("Invalid filter length [" + length + "]");
+		}
+		
+		long[] bits = new long[length];
+		
+		for (int i = 0; i < length; i++) {
+			bits[i] = input.readLong();
+		}
+		
+		return new BloomFilter(bits);
+	}
+	
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2019 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.reverb.lang;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * {@code BufferInputStream} reads the remaining bytes of 
+ * {@code ByteBuffer}.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+class BufferInputStream extends InputStream {
+
+	private final ByteBuffer buffer;
+	
+	/**
+	 * Constructs a new {@code BufferInputStream} which reads the remaining 
+	 * bytes of the specified {@code ByteBuffer}.
+	 * 
+	 * @param buffer {@code ByteBuffer} to be read.
+	 */
+	BufferInputStream(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+	
+	@Override
+	public int read() throws IOException {
+		return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (!buffer.hasRemaining()) {
+			return -1;
+		}
+		
+		int read = Math.min(len, buffer.remaining());
+		buffer.get(b, off, read);
+		return read;
+	}
+	
+	@Override
+	public long skip(long n) throws IOException {
+		int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+		buffer.position(buffer.position() + skipped);
+		return skipped;
+	}
+	
+	@Override
+	public int available() throws IOException {
+		return buffer.remaining();
+	}
+	
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2019 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.reverb.lang;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.annotation.Inherited;
+import java.net.URL;
+import java.util.Set;
+
+/**
+ * {@code BytecodeClassResolver} is a class file based extension of 
+ * {@link ClassResolver}. 
+ * This class reads the class file format directly from the specified search 
+ * path and represents the class as {@link ClassFile} without loading it into 
+ * the JVM. So no class is loaded and no static initializer is run while 
+ * matching. Only the matched classes are turned into {@code java.lang.Class} 
+ * and only when {@link ClassFile#load(ClassLoader)} is invoked. 
+ * The supertypes which are not on the search path (e.g. JDK classes) are read 
+ * from the class file resources of the {@code ClassLoader} specified on the 
+ * construction (they are not loaded, either) to build the type hierarchy 
+ * graph (see {@link #hierarchy()}).
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class BytecodeClassResolver extends ClassResolver<ClassFile> {
+
+	private ClassLoader classLoader;
+	
+	/**
+	 * Constructs a new {@code BytecodeClassResolver} instance with the 
+	 * specified search paths.
+	 * 
+	 * @param paths The search path.
+	 */
+	public BytecodeClassResolver(Iterable<URL> paths) {
+		this(Thread.currentThread().getContextClassLoader(), paths);
+	}
+	
+	/**
+	 * Constructs a new {@code BytecodeClassResolver} instance with the 
+	 * specified {@code ClassLoader} and search paths.
+	 * 
+	 * @param classLoader The {@code ClassLoader} to read the supertypes which 
+	 * are not on the search path.
+	 * @param paths The search path.
+	 */
+	public BytecodeClassResolver(ClassLoader classLoader, Iterable<URL> paths) {
+		super(paths);
+		this.classLoader = classLoader;
+	}
+	
+	/**
+	 * Constructs a new {@code BytecodeClassResolver} instance with the 
+	 * search paths derived from the specified {@code ClassLoader} (see 
+	 * {@link ClassPaths#of(ClassLoader)}). The jar files on the search path 
+	 * are recorded in {@link ClassIndex#shared()}, so they are read only once 
+	 * in the process even if several {@code ClassResolver}s are built over 
+	 * them.
+	 * 
+	 * @param classLoader The {@code ClassLoader} to read the supertypes which 
+	 * are not on the search path and to derive the search paths from.
+	 * @return {@code BytecodeClassResolver} over the search paths of the 
+	 * specified {@code ClassLoader}.
+	 */
+	public static BytecodeClassResolver of(ClassLoader classLoader) {
+		BytecodeClassResolver resolver = new BytecodeClassResolver(classLoader, ClassPaths.of(classLoader));
+		resolver.index(ClassIndex.shared());
+		return resolver;
+	}
+	
+	/**
+	 * Reads the class file from the specified {@code InputStream} and returns 
+	 * it as {@code ClassFile}.
+	 * 
+	 * @param clazz The name of the class to be loaded.
+	 * @param stream {@code InputStream} to load a class file.
+	 * @return The class file representation as {@code ClassFile}.
+	 */
+	@Override
+	protected ClassFile load(String clazz, InputStream stream) {
+		try {
+			return ClassFile.read(stream);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Returns the specified class file metadata as it is.
+	 * 
+	 * @param classFile The class file metadata.
+	 * @return The specified class file metadata.
+	 */
+	@Override
+	protected ClassFile load(ClassFile classFile) {
+		return classFile;
+	}
+	
+	/**
+	 * Resolves the classes that contains the specified name as 
+	 * {@code ClassFile}. The names are 
+	 * looked up in the name index (see {@link #names()}) and only the matched 
+	 * classes are loaded.
+	 * 
+	 * @param name The part of the class name.
+	 * @return Classes that contains the specified name as {@code ClassFile}.
+	 * @throws IOException If any I/O access fails while traversing the search 
+	 * path.
+	 */
+	@Override
+	public Set<ClassFile> resolveByName(final String name) throws IOException {
+		return classes(names().find(name));
+	}
+	
+	/**
+	 * Resolves the classes that inherits the specified superclass as 
+	 * {@code ClassFile}. The subclasses are looked up in the type hierarchy 
+	 * graph (see {@link #hierarchy()}).
+	 * 
+	 * @param superclass The superclass being inherited.
+	 * @return Classes that inherits the specified superclass as 
+	 * {@code ClassFile}.
+	 * @throws IOException If any I/O access fails while traversing the search 
+	 * path.
+	 */
+	@Override
+	public Set<ClassFile> resolveBySuperclass(final Class<?> superclass)
+			throws IOException {
+		return resolveBySupertype(superclass.getName(), false);
+	}
+	
+	/**
+	 * Resolves the classes that implements the specified interface as 
+	 * {@code ClassFile}. The classes which implement the specified interface 
+	 * through their superclasses or superinterfaces and the subinterfaces of 
+	 * the specified interface are also resolved. The implementors are looked 
+	 * up in the type hierarchy graph (see {@link #hierarchy()}).
+	 * 
+	 * @param interfaceClass The interface being implemented.
+	 * @return Classes that implements the specified interface as 
+	 * {@code ClassFile}.
+	 * @throws IOException If any I/O access fails while traversing the search 
+	 * path.
+	 */
+	@Override
+	public Set<ClassFile> resolveByInterface(final Class<?> interfaceClass)
+			throws IOException {
+		return resolveBySupertype(interfaceClass.getName(), true);
+	}
+	
+	/**
+	 * Resolves the classes that is annotated by the specified annotation as 
+	 * {@code ClassFile}. If the specified annotation is {@code Inherited}, the 
+	 * subclasses of the annotated classes are also resolved. Otherwise, the 
+	 * jar files whose summaries in {@link ClassIndex} rule out the annotation 
+	 * are skipped without being opened.
+	 * 
+	 * @param annotation The annotation the class being annotated.
+	 * @return Classes that is annotated by the specified annotation as 
+	 * {@code ClassFile}.
+	 * @throws IOException If any I/O access fails while traversing the search 
+	 * path.
+	 */
+	@Override
+	public Set<ClassFile> resolveByAnnotation(
+			final Class<? extends Annotation> annotation) throws IOException {
+		if (annotation.isAnnotationPresent(Inherited.class)) {
+			return classes(hierarchy().annotated(annotation.getName(), true));
+		}
+		
+		Matcher<ClassFile> matcher = new Matcher<ClassFile>() {
+			
+			public boolean matches(ClassFile clazz) {
+				return clazz.annotations().contains(annotation.getName());
+			}
+			
+		};
+		return resolve(sources(annotation.getName(), false), matcher, executor());
+	}
+	
+	/**
+	 * Returns the {@code ClassLoader} to read the supertypes which are not on 
+	 * the search path.
+	 * 
+	 * @return The {@code ClassLoader} to read the supertypes.
+	 */
+	public ClassLoader classLoader() {
+		return classLoader;
+	}
+	
+}
@@ -0,0 +1,507 @@
+/*
+ * Copyright (C) 2019 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.reverb.lang;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@code ClassFile} is a lightweight class representation read directly from 
+ * the class file format (JVMS chapter 4) without loading the class into the 
+ * JVM. 
+ * {@code ClassFile} holds the class name, access flags, superclass name, 
+ * interface names and the type names of the annotations declared in 
+ * {@code RuntimeVisibleAnnotations} attribute, and the fields and methods 
+ * which have the runtime visible annotations (as {@link Member}). The members 
+ * without annotation are not kept. All the names are binary names 
+ * (the same as {@code Class#getName()}). The class is turned into 
+ * {@code java.lang.Class} only when {@link #load(ClassLoader)} is invoked.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class ClassFile {
+
+	/** The access flag of interface. */
+	public static final int ACC_INTERFACE = 0x0200;
+	
+	/** The access flag of abstract class. */
+	public static final int ACC_ABSTRACT = 0x0400;
+	
+	/** The access flag of annotation type. */
+	public static final int ACC_ANNOTATION = 0x2000;
+	
+	/** The access flag of enum type. */
+	public static final int ACC_ENUM = 0x4000;
+	
+	/** The access flag of module-info. */
+	public static final int ACC_MODULE = 0x8000;
+	
+	private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+	
+	private final String name;
+	
+	private final int access;
+	
+	private final String superclass;
+	
+	private final List<String> interfaces;
+	
+	private final List<String> annotations;
+	
+	private final List<Member> members;
+	
+	/**
+	 * Constructs a new {@code ClassFile} instance with the specified class 
+	 * metadata.
+	 * 
+	 * @param name The binary name of the class.
+	 * @param access The access flags of the class.
+	 * @param superclass The binary name of the superclass or <code>null</code> 
+	 * if the class is {@code java.lang.Object}.
+	 * @param interfaces The binary names of the direct superinterfaces.
+	 * @param annotations The binary names of the runtime visible annotation 
+	 * types declared on the class.
+	 */
+	public ClassFile(String name, int access, String superclass,
+			List<String> interfaces, List<String> annotations) {
+		this(name, access, superclass, interfaces, annotations, Collections.<Member>emptyList());
+	}
+	
+	/**
+	 * Constructs a new {@code ClassFile} instance with the specified class 
+	 * metadata and annotated members.
+	 * 
+	 * @param name The binary name of the class.
+	 * @param access The access flags of the class.
+	 * @param superclass The binary name of the superclass or <code>null</code> 
+	 * if the class is {@code java.lang.Object}.
+	 * @param interfaces The binary names of the direct superinterfaces.
+	 * @param annotations The binary names of the runtime visible annotation 
+	 * types declared on the class.
+	 * @param members The fields and methods which have the runtime visible 
+	 * annotations.
+	 */
+	public ClassFile(String name, int access, String superclass,
+			List<String> interfaces, List<String> annotations, List<Member> members) {
+		if (name == null) {
+			throw new IllegalArgumentException("'name' must not be [" + name + "]");
+		}
+		
+		this.name = name;
+		this.access = access;
+		this.superclass = superclass;
+		this.interfaces = Collections.unmodifiableList(new ArrayList<String>(interfaces));
+		this.annotations = Collections.unmodifiableList(new ArrayList<String>(annotations));
+		this.members = members.isEmpty() ? Collections.<Member>emptyList() 
+				: Collections.unmodifiableList(new ArrayList<Member>(members));
+	}
+	
+	/**
+	 * Reads the class file from the specified {@code InputStream}. 
+	 * The stream is read to the end but not closed.
+	 * 
+	 * @param stream {@code InputStream} to read a class file.
+	 * @return {@code ClassFile} read from the specified stream or 
+	 * <code>null</code> if the stream is not a class file or represents a 
+	 * module descriptor.
+	 * @throws IOException If any I/O access fails while reading the stream.
+	 */
+	public static ClassFile read(InputStream stream) throws IOException {
+		return read(bytes(stream));
+	}
+	
+	/**
+	 * Reads the class file from the specified bytes.
+	 * 
+	 * @param bytes The bytes of a class file.
+	 * @return {@code ClassFile} read from the specified bytes or 
+	 * <code>null</code> if the bytes are not a class file or represents a 
+	 * module descriptor.
+	 */
+	public static ClassFile read(byte[] bytes) {
+		try {
+			return new Parser(bytes).parse();
+		} catch (IndexOutOfBoundsException e) {
+			// Truncated or malformed class file.
+			return null;
+		}
+	}
+	
+	static byte[] bytes(InputStream stream) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream(4096);
+		byte[] buffer = new byte[4096];
+		int read;
+		
+		while ((read = stream.read(buffer)) != -1) {
+			outputStream.write(buffer, 0, read);
+		}
+		
+		return outputStream.toByteArray();
+	}
+	
+	/**
+	 * Loads the class represented by this {@code ClassFile} with the specified 
+	 * {@code ClassLoader}. The class is not initialized.
+	 * 
+	 * @param classLoader The {@code ClassLoader} to load the class.
+	 * @return The loaded class.
+	 * @throws ClassNotFoundException If the class cannot be located by the 
+	 * specified {@code ClassLoader}.
+	 */
+	public Class<?> load(ClassLoader classLoader) throws ClassNotFoundException {
+		return Class.forName(name, false, classLoader);
+	}
+	
+	/**
+	 * Returns the binary name of the class.
+	 * 
+	 * @return The binary name of the class.
+	 */
+	public String name() {
+		return name;
+	}
+	
+	/**
+	 * Returns the access flags of the class.
+	 * 
+	 * @return The access flags of the class.
+	 */
+	public int access() {
+		return access;
+	}
+	
+	/**
+	 * Returns the binary name of the superclass.
+	 * 
+	 * @return The binary name of the superclass or <code>null</code> if the 
+	 * class is {@code java.lang.Object}.
+	 */
+	public String superclass() {
+		return superclass;
+	}
+	
+	/**
+	 * Returns the binary names of the direct superinterfaces.
+	 * 
+	 * @return The binary names of the direct superinterfaces.
+	 */
+	public List<String> interfaces() {
+		return interfaces;
+	}
+	
+	/**
+	 * Returns the binary names of the runtime visible annotation types 
+	 * declared on the class.
+	 * 
+	 * @return The binary names of the annotation types.
+	 */
+	public List<String> annotations() {
+		return annotations;
+	}
+	
+	/**
+	 * Returns the fields and methods declared in the class which have the 
+	 * runtime visible annotations, in the declaration order (the fields 
+	 * first).
+	 * 
+	 * @return The annotated fields and methods.
+	 */
+	public List<Member> members() {
+		return members;
+	}
+	
+	/**
+	 * Indicates whether the class is an interface (including annotation type) 
+	 * or not.
+	 * 
+	 * @return <code>true</code> If the class is an interface.
+	 */
+	public boolean isInterface() {
+		return (access & ACC_INTERFACE) != 0;
+	}
+	
+	/**
+	 * Indicates whether the class is an annotation type or not.
+	 * 
+	 * @return <code>true</code> If the class is an annotation type.
+	 */
+	public boolean isAnnotation() {
+		return (access & ACC_ANNOTATION) != 0;
+	}
+	
+	/**
+	 * Indicates whether the class is an enum type or not.
+	 * 
+	 * @return <code>true</code> If the class is an enum type.
+	 */
+	public boolean isEnum() {
+		return (access & ACC_ENUM) != 0;
+	}
+	
+	/**
+	 * Indicates whether the class is abstract (including interface) or not.
+	 * 
+	 * @return <code>true</code> If the class is abstract.
+	 */
+	public boolean isAbstract() {
+		return (access & ACC_ABSTRACT) != 0;
+	}
+	
+	@Override
+	public int hashCode() {
+		return name.hashCode();
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		
+		if (!(obj instanceof ClassFile)) {
+			return false;
+		}
+		
+		return name.equals(((ClassFile) obj).name);
+	}
+	
+	/**
+	 * Returns the binary name of the class.
+	 * 
+	 * @return The binary name of the class.
+	 */
+	@Override
+	public String toString() {
+		return name;
+	}
+	
+	/**
+	 * {@code Parser} reads the class level structures following the constant 
+	 * pool (see {@link ConstantPool}) from the class file bytes. Only the 
+	 * {@code CONSTANT_Utf8} entries which are referred to are decoded.
+	 * 
+	 * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+	 */
+	private static class Parser {
+		
+		private final byte[] bytes;
+		
+		/** The offsets of the constant pool entries (just after the tag). */
+		private int[] offsets;
+		
+		private int position;
+		
+		private Parser(byte[] bytes) {
+			this.bytes = bytes;
+		}
+		
+		private ClassFile parse() {
+			ConstantPool pool = ConstantPool.read(bytes);
+			
+			if (pool == null) {
+				return null;
+			}
+			
+			offsets = pool.offsets;
+			position = pool.end;
+			int access = u2();
+			
+			if ((access & ACC_MODULE) != 0) {
+				return null;
+			}
+			
+			String name = className(u2());
+			int superclassIndex = u2();
+			String superclass = (superclassIndex == 0) ? null : className(superclassIndex);
+			int interfacesCount = u2();
+			List<String> interfaces = new ArrayList<String>(interfacesCount);
+			
+			for (int i = 0; i < interfacesCount; i++) {
+				interfaces.add(className(u2()));
+			}
+			
+			List<Member> members = new ArrayList<Member>(0);
+			members(name, members);		// fields
+			members(name, members);		// methods
+			List<String> annotations = attributes();
+			return new ClassFile(name, access, superclass, interfaces, annotations, members);
+		}
+		
+		/**
+		 * Reads the field or method table and adds the annotated members to 
+		 * the specified list. The name and the descriptor are decoded only for 
+		 * the annotated members.
+		 */
+		private void members(String declaringClass, List<Member> members) {
+			int count = u2();
+			
+			for (int i = 0; i < count; i++) {
+				int access = u2();
+				int name = u2();
+				int descriptor = u2();
+				List<String> annotations = attributes();
+				
+				if (!annotations.isEmpty()) {
+					members.add(new Member(declaringClass, utf8(name), 
+							utf8(descriptor), access, annotations));
+				}
+			}
+		}
+		
+		/**
+		 * Reads the attribute table and returns the annotation types in 
+		 * {@code RuntimeVisibleAnnotations} attribute. The other attributes 
+		 * are skipped without decoding their names.
+		 */
+		private List<String> attributes() {
+			List<String> annotations = Collections.emptyList();
+			int count = u2();
+			
+			for (int i = 0; i < count; i++) {
+				int attribute = u2();
+				int length = u4();
+				int end = position + length;
+				
+				if (equals(attribute, RUNTIME_VISIBLE_ANNOTATIONS)) {
+					int annotationsCount = u2();
+					annotations = new ArrayList<String>(annotationsCount);
+					
+					for (int j = 0; j < annotationsCount; j++) {
+						annotations.add(annotation());
+					}
+				}
+				
+				position = end;
+			}
+			
+			return annotations;
+		}
+		
+		/**
+		 * Indicates whether the {@code CONSTANT_Utf8} entry of the specified 
+		 * index is the specified ASCII string or not without decoding it.
+		 */
+		private boolean equals(int index, String string) {
+			int offset = offsets[index];
+			int length = u2(offset);
+			
+			if (length != string.length()) {
+				return false;
+			}
+			
+			for (int i = 0; i < length; i++) {
+				if (bytes[offset + 2 + i] != string.charAt(i)) {
+					return false;
+				}
+			}
+			
+			return true;
+		}
+		
+		private String annotation() {
+			String type = descriptor(utf8(u2()));
+			int pairs = u2();
+			
+			for (int i = 0; i < pairs; i++) {
+				position += 2;
+				skipElementValue();
+			}
+			
+			return type;
+		}
+		
+		private void skipElementValue() {
+			int tag = bytes[position++];
+			
+			switch (tag) {
+			case 'e':
+				position += 4;
+				break;
+			case '@':
+				annotation();
+				break;
+			case '[':
+				int count = u2();
+				
+				for (int i = 0; i < count; i++) {
+					skipElementValue();
+				}
+				
+				break;
+			default:
+				// B, C, D, F, I, J, S, Z, s, c
+				position += 2;
+				break;
+			}
+		}
+		
+		private String className(int index) {
+			return utf8(u2(offsets[index])).replace('/', '.');
+		}
+		
+		private String descriptor(String descriptor) {
+			// "Lcom/example/Annotation;" -> "com.example.Annotation"
+			return descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
+		}
+		
+		private String utf8(int index) {
+			int offset = offsets[index];
+			int length = u2(offset);
+			int start = offset + 2;
+			int end = start + length;
+			char[] chars = new char[length];
+			int count = 0;
+			
+			for (int i = start; i < end; i++) {
+				int b = bytes[i] & 0xFF;
+				
+				if (b < 0x80) {
+					chars[count++] = (char) b;
+				} else if ((b & 0xE0) == 0xC0) {
+					chars[count++] = (char) (((b & 0x1F) << 6) | (bytes[++i] & 0x3F));
+				} else {
+					chars[count++] = (char) (((b & 0x0F) << 12)
+							| ((bytes[++i] & 0x3F) << 6) | (bytes[++i] & 0x3F));
+				}
+			}
+			
+			return new String(chars, 0, count);
+		}
+		
+		private int u2() {
+			int value = u2(position);
+			position += 2;
+			return value;
+		}
+		
+		private int u2(int offset) {
+			return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+		}
+		
+		private int u4() {
+			int value = ((bytes[position] & 0xFF) << 24) | ((bytes[position + 1] & 0xFF) << 16)
+					| ((bytes[position + 2] & 0xFF) << 8) | (bytes[position + 3] & 0xFF);
+			position += 4;
+			return value;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,652 @@
+/*
+ * Copyright (C) 2019 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.reverb.lang;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * {@code ClassIndex} is a persistent index of the classes contained in the jar 
+ * files traversed by {@link ClassResolver}.
+ * {@code ClassIndex} records the class names, superclasses, interfaces, 
+ * annotations and annotated members (as {@link ClassFile}) and the manifest 
+ * {@code Class-Path} of each jar file, keyed by the jar file's path, size 
+ * and last modified time.
+ * When a jar file has not been changed since it was recorded, 
+ * {@code ClassResolver} answers the queries from this index without opening 
+ * the jar file at all (see {@link ClassResolver#index(ClassIndex)}).
+ * The index file is memory-mapped on the construction and each record is 
+ * decoded only when it is referred to. The records are written back to the 
+ * index file by {@link #store()}: 
+ * <pre>
+ * ClassIndex index = new ClassIndex(new File("classes.idx")); 
+ * JLCClassResolver resolver = new JLCClassResolver(paths); 
+ * resolver.index(index); 
+ * Set&lt;Class&lt;?&gt;&gt; classes = resolver.resolveByInterface(Plugin.class); 
+ * index.store(); 
+ * </pre>
+ * Directories are not recorded because their last modified time does not 
+ * reflect the changes of the nested class files.
+ * Each record also summarizes the jar file with the Bloom filter of the 
+ * annotation types and the supertypes its classes refer to and the list of 
+ * the supertypes declared out of it, which are decoded without the classes. 
+ * So {@code ClassResolver} skips the jar files which can never contain the 
+ * annotated classes or the subtypes of a type without opening them or 
+ * decoding their records (see {@link ClassResolver#resolveByAnnotation(Class)} 
+ * and {@link ClassResolver#resolveByInterface(Class)}).
+ * The jar files are keyed by their normalized absolute paths. The in-memory 
+ * {@code ClassIndex} shared in the process ({@link #shared()}) lets the 
+ * {@code ClassResolver}s built over the same jar files read each of them 
+ * only once.
+ * This class is thread-safe.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class ClassIndex {
+
+	private static final int MAGIC = 0x52564958;	// "RVIX"
+	
+	private static final int VERSION = 4;
+	
+	private static final ClassIndex shared = new ClassIndex();
+	
+	private final File file;
+	
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+	
+	private boolean modified = false;
+	
+	/**
+	 * {@code Entry} is the record of a jar file.
+	 * 
+	 * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+	 */
+	static class Entry {
+		
+		private final long size;
+		
+		private final long lastModified;
+		
+		private ByteBuffer buffer;
+		
+		/** The position of the classes in the buffer. */
+		private int position;
+		
+		private String classPath;
+		
+		private int release;
+		
+		private BloomFilter filter;
+		
+		private List<String> supertypes;
+		
+		private List<ClassFile> classes;
+		
+		/** Whether the record in the index file cannot be decoded. */
+		private boolean broken = false;
+		
+		private Entry(long size, long lastModified, String classPath, int release, 
+				List<ClassFile> classes) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.classPath = classPath;
+			this.release = release;
+			this.classes = classes;
+			summarize(classes);
+		}
+		
+		private Entry(long size, long lastModified, ByteBuffer buffer) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.buffer = buffer;
+		}
+		
+		/**
+		 * Summarizes the specified classes into the filter of the annotation 
+		 * types and the supertypes they refer to and the list of the 
+		 * supertypes declared out of the jar file.
+		 */
+		private void summarize(List<ClassFile> classes) {
+			Set<String> names = new HashSet<String>();
+			Set<String> declared = new HashSet<String>();
+			Set<String> supertypes = new TreeSet<String>();
+			
+			for (ClassFile clazz : classes) {
+				declared.add(clazz.name());
+				names.addAll(clazz.annotations());
+				
+				if (clazz.superclass() != null) {
+					supertypes.add(clazz.superclass());
+				}
+				
+				supertypes.addAll(clazz.interfaces());
+				
+				for (Member member : clazz.members()) {
+					names.addAll(member.annotations());
+				}
+			}
+			
+			names.addAll(supertypes);
+			supertypes.removeAll(declared);
+			filter = new BloomFilter(names);
+			this.supertypes = Collections.unmodifiableList(new ArrayList<String>(supertypes));
+		}
+		
+		/** Decodes the fields preceding the classes from the buffer. */
+		private synchronized void summarize() {
+			if (buffer == null || filter != null || broken) {
+				return;
+			}
+			
+			try {
+				ByteBuffer buffer = this.buffer.duplicate();
+				DataInputStream input = new DataInputStream(new BufferInputStream(buffer));
+				classPath = input.readBoolean() ? input.readUTF() : null;
+				release = input.readInt();
+				BloomFilter filter = BloomFilter.read(input);
+				int count = input.readInt();
+				List<String> supertypes = new ArrayList<String>(count);
+				
+				for (int i = 0; i < count; i++) {
+					supertypes.add(input.readUTF());
+				}
+				
+				this.supertypes = Collections.unmodifiableList(supertypes);
+				position = buffer.position();
+				this.filter = filter;
+			} catch (IOException e) {
+				broken = true;
+			} catch (RuntimeException e) {
+				// e.g. Negative count.
+				broken = true;
+			}
+		}
+		
+		private synchronized void decode() {
+			summarize();
+			
+			if (buffer == null || broken) {
+				return;
+			}
+			
+			try {
+				ByteBuffer buffer = this.buffer.duplicate();
+				buffer.position(position);
+				DataInputStream input = new DataInputStream(new BufferInputStream(buffer));
+				int count = input.readInt();
+				List<ClassFile> classes = new ArrayList<ClassFile>(count);
+				
+				for (int i = 0; i < count; i++) {
+					classes.add(read(input));
+				}
+				
+				this.classes = Collections.unmodifiableList(classes);
+				this.buffer = null;
+			} catch (IOException e) {
+				broken = true;
+			} catch (RuntimeException e) {
+				broken = true;
+			}
+		}
+		
+		private synchronized void encode(DataOutput output) throws IOException {
+			decode();
+			output.writeBoolean(classPath != null);
+			
+			if (classPath != null) {
+				output.writeUTF(classPath);
+			}
+			
+			output.writeInt(release);
+			filter.write(output);
+			output.writeInt(supertypes.size());
+			
+			for (String supertype : supertypes) {
+				output.writeUTF(supertype);
+			}
+			
+			output.writeInt(classes.size());
+			
+			for (ClassFile clazz : classes) {
+				write(output, clazz);
+			}
+		}
+		
+		/**
+		 * Returns the manifest {@code Class-Path} of the jar file.
+		 * 
+		 * @return The manifest {@code Class-Path} or <code>null</code> if the 
+		 * jar file does not have it.
+		 */
+		String classPath() {
+			summarize();
+			return classPath;
+		}
+		
+		/**
+		 * Returns the feature release of the JDK the versioned class files of 
+		 * the multi-release jar file were selected for.
+		 * 
+		 * @return The feature release or <code>0</code> if the jar file is not 
+		 * a multi-release jar file.
+		 */
+		int release() {
+			summarize();
+			return release;
+		}
+		
+		/**
+		 * Indicates whether the classes contained in the jar file may refer to 
+		 * the specified type as their annotation (including the annotations 
+		 * of the members), superclass or interface or not. The answer is taken 
+		 * from the Bloom filter of the referred types without decoding the 
+		 * classes.
+		 * 
+		 * @param type The binary name of the type.
+		 * @return <code>false</code> If none of the classes refers to the 
+		 * specified type.
+		 */
+		boolean mightRefer(String type) {
+			summarize();
+			return filter.mightContain(type);
+		}
+		
+		/**
+		 * Returns the superclasses and interfaces of the classes contained in 
+		 * the jar file which are not declared in the jar file.
+		 * 
+		 * @return The binary names of the supertypes declared out of the jar 
+		 * file.
+		 */
+		List<String> supertypes() {
+			summarize();
+			return supertypes;
+		}
+		
+		/**
+		 * Returns the classes contained in the jar file. If the record read 
+		 * from the index file is broken, this method returns 
+		 * <code>null</code> and the jar file must be scanned again; the 
+		 * broken record is dropped on the next {@link ClassIndex#get(File)} 
+		 * or {@link ClassIndex#store()}.
+		 * 
+		 * @return The classes contained in the jar file or <code>null</code> 
+		 * if the record is broken.
+		 */
+		synchronized List<ClassFile> classes() {
+			decode();
+			return broken ? null : classes;
+		}
+		
+	}
+	
+	/** Constructs a new in-memory {@code ClassIndex} instance. */
+	public ClassIndex() {
+		file = null;
+	}
+	
+	/**
+	 * Returns the in-memory {@code ClassIndex} shared in the process. The 
+	 * {@code ClassResolver}s built by the factory methods (e.g. 
+	 * {@link JLCClassResolver#of(ClassLoader)}) record the jar files in it. 
+	 * The records are kept until {@link #clear()} is invoked.
+	 * 
+	 * @return The shared {@code ClassIndex}.
+	 */
+	public static ClassIndex shared() {
+		return shared;
+	}
+	
+	/**
+	 * Constructs a new {@code ClassIndex} instance backed by the specified 
+	 * index file. If the file exists, it is memory-mapped and the records in 
+	 * it are available. If the file is not a valid index file (e.g. written by 
+	 * an incompatible version or corrupted), it is ignored and overwritten on 
+	 * {@link #store()}. A corrupted record found later is dropped and the 
+	 * jar file is scanned again.
+	 * 
+	 * @param file The index file.
+	 * @throws IOException If any I/O access fails while reading the index file.
+	 */
+	public ClassIndex(File file) throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException("'file' must not be [" + file + "]");
+		}
+		
+		this.file = file;
+		
+		if (file.isFile()) {
+			FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			ByteBuffer buffer;
+			
+			try {
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			} finally {
+				channel.close();
+			}
+			
+			try {
+				map(buffer);
+			} catch (IOException e) {
+				// Invalid index file.
+				entries.clear();
+			} catch (RuntimeException e) {
+				entries.clear();
+			}
+		}
+	}
+	
+	private void map(ByteBuffer buffer) throws IOException {
+		DataInputStream input = new DataInputStream(new BufferInputStream(buffer));
+		
+		if (buffer.remaining() < 8 || input.readInt() != MAGIC || input.readInt() != VERSION) {
+			return;
+		}
+		
+		int count = input.readInt();
+		
+		if (count < 0 || count > buffer.remaining()) {
+			throw new IOException("Invalid record count [" + count + "]");
+		}
+		
+		String[] paths = new String[count];
+		long[] sizes = new long[count];
+		long[] lastModifieds = new long[count];
+		int[] offsets = new int[count + 1];
+		
+		for (int i = 0; i < count; i++) {
+			paths[i] = input.readUTF();
+			sizes[i] = input.readLong();
+			lastModifieds[i] = input.readLong();
+			offsets[i] = input.readInt();
+		}
+		
+		offsets[count] = input.readInt();
+		int data = buffer.position();
+		
+		for (int i = 0; i <= count; i++) {
+			if (offsets[i] < 0 || offsets[i] > buffer.limit() - data 
+					|| (i < count && offsets[i] > offsets[i + 1])) {
+				throw new IOException("Invalid record offset [" + offsets[i] + "]");
+			}
+		}
+		
+		for (int i = 0; i < count; i++) {
+			ByteBuffer slice = buffer.duplicate();
+			slice.limit(data + offsets[i + 1]);
+			slice.position(data + offsets[i]);
+			entries.put(paths[i], new Entry(sizes[i], lastModifieds[i], slice.slice()));
+		}
+	}
+	
+	/**
+	 * Returns the record of the specified jar file if the jar file has not been 
+	 * changed since it was recorded.
+	 * 
+	 * @param jar The jar file.
+	 * @return The record of the specified jar file or <code>null</code> if it 
+	 * is not recorded, it has been changed or the record is broken.
+	 */
+	synchronized Entry get(File jar) {
+		String key = key(jar);
+		Entry entry = entries.get(key);
+		
+		if (entry != null && entry.size == jar.length()
+				&& entry.lastModified == jar.lastModified()) {
+			entry.summarize();
+			
+			if (!entry.broken) {
+				return entry;
+			}
+			
+			entries.remove(key);
+			modified = true;
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Records the classes contained in the specified jar file.
+	 * 
+	 * @param jar The jar file.
+	 * @param classPath The manifest {@code Class-Path} of the jar file.
+	 * @param classes The classes contained in the jar file.
+	 */
+	void put(File jar, String classPath, List<ClassFile> classes) {
+		put(jar, classPath, 0, classes);
+	}
+	
+	/**
+	 * Records the classes contained in the specified multi-release jar file 
+	 * with the feature release of the JDK the versioned class files were 
+	 * selected for.
+	 * 
+	 * @param jar The jar file.
+	 * @param classPath The manifest {@code Class-Path} of the jar file.
+	 * @param release The feature release or <code>0</code> if the jar file is 
+	 * not a multi-release jar file.
+	 * @param classes The classes contained in the jar file.
+	 */
+	synchronized void put(File jar, String classPath, int release, List<ClassFile> classes) {
+		entries.put(key(jar), new Entry(jar.length(), jar.lastModified(), classPath, release, 
+				Collections.unmodifiableList(new ArrayList<ClassFile>(classes))));
+		modified = true;
+	}
+	
+	private static String key(File jar) {
+		return jar.toPath().toAbsolutePath().normalize().toString();
+	}
+	
+	/**
+	 * Writes the records to the index file if they have been modified since 
+	 * this {@code ClassIndex} was loaded or stored. The index file is replaced 
+	 * as a whole. This method does nothing on the in-memory 
+	 * {@code ClassIndex}.
+	 * 
+	 * @throws IOException If any I/O access fails while writing the index file.
+	 */
+	public synchronized void store() throws IOException {
+		if (file == null || !modified) {
+			return;
+		}
+		
+		for (Iterator<Entry> i = entries.values().iterator(); i.hasNext(); ) {
+			if (i.next().classes() == null) {
+				// Broken record.
+				i.remove();
+			}
+		}
+		
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		DataOutputStream dataOutput = new DataOutputStream(data);
+		List<Integer> offsets = new ArrayList<Integer>(entries.size());
+		
+		for (Entry entry : entries.values()) {
+			offsets.add(dataOutput.size());
+			entry.encode(dataOutput);
+		}
+		
+		dataOutput.flush();
+		// Unique in the same directory, so concurrent stores do not share the 
+		// temporary file and the move stays on the same file system.
+		File temporary = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+		boolean moved = false;
+		
+		try {
+			OutputStream stream = new BufferedOutputStream(new FileOutputStream(temporary));
+			
+			try {
+				DataOutputStream output = new DataOutputStream(stream);
+				output.writeInt(MAGIC);
+				output.writeInt(VERSION);
+				output.writeInt(entries.size());
+				int i = 0;
+				
+				for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+					output.writeUTF(entry.getKey());
+					output.writeLong(entry.getValue().size);
+					output.writeLong(entry.getValue().lastModified);
+					output.writeInt(offsets.get(i++));
+				}
+				
+				output.writeInt(data.size());
+				data.writeTo(output);
+				output.flush();
+			} finally {
+				stream.close();
+			}
+			
+			Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			moved = true;
+		} finally {
+			if (!moved) {
+				temporary.delete();
+			}
+		}
+		
+		modified = false;
+	}
+	
+	/**
+	 * Returns the number of the jar files recorded.
+	 * 
+	 * @return The number of the jar files recorded.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+	
+	/**
+	 * Removes all the records.
+	 */
+	public synchronized void clear() {
+		modified = modified || !entries.isEmpty();
+		entries.clear();
+	}
+	
+	/**
+	 * Returns the index file.
+	 * 
+	 * @return The index file or <code>null</code> if this {@code ClassIndex} is 
+	 * in-memory.
+	 */
+	public File file() {
+		return file;
+	}
+	
+	/**
+	 * Writes the specified {@code ClassFile} metadata to the specified 
+	 * {@code DataOutput}.
+	 * 
+	 * @param output {@code DataOutput}.
+	 * @param clazz {@code ClassFile} to be written.
+	 * @throws IOException If any I/O access fails while writing.
+	 */
+	static void write(DataOutput output, ClassFile clazz) throws IOException {
+		output.writeUTF(clazz.name());
+		output.writeInt(clazz.access());
+		output.writeUTF((clazz.superclass() == null) ? "" : clazz.superclass());
+		output.writeShort(clazz.interfaces().size());
+		
+		for (String i : clazz.interfaces()) {
+			output.writeUTF(i);
+		}
+		
+		write(output, clazz.annotations());
+		output.writeShort(clazz.members().size());
+		
+		for (Member member : clazz.members()) {
+			output.writeUTF(member.name());
+			output.writeUTF(member.descriptor());
+			output.writeShort(member.access());
+			write(output, member.annotations());
+		}
+	}
+	
+	private static void write(DataOutput output, List<String> annotations) throws IOException {
+		output.writeShort(annotations.size());
+		
+		for (String a : annotations) {
+			output.writeUTF(a);
+		}
+	}
+	
+	/**
+	 * Reads {@code ClassFile} metadata from the specified {@code DataInput}.
+	 * 
+	 * @param input {@code DataInput}.
+	 * @return {@code ClassFile} read.
+	 * @throws IOException If any I/O access fails while reading.
+	 */
+	static ClassFile read(DataInput input) throws IOException {
+		String name = input.readUTF();
+		int access = input.readInt();
+		String superclass = input.readUTF();
+		int count = input.readUnsignedShort();
+		List<String> interfaces = new ArrayList<String>(count);
+		
+		for (int i = 0; i < count; i++) {
+			interfaces.add(input.readUTF());
+		}
+		
+		List<String> annotations = annotations(input);
+		count = input.readUnsignedShort();
+		List<Member> members = new ArrayList<Member>(count);
+		
+		for (int i = 0; i < count; i++) {
+			members.add(new Member(name, input.readUTF(), input.readUTF(), 
+					input.readUnsignedShort(), annotations(input)));
+		}
+		
+		return new ClassFile(name, access, superclass.isEmpty() ? null : superclass,
+				interfaces, annotations, members);
+	}
+	
+	private static List<String> annotations(DataInput input) throws IOException {
+		int count = input.readUnsignedShort();
+		List<String> annotations = new ArrayList<String>(count);
+		
+		for (int i = 0; i < count; i++) {
+			annotations.add(input.readUTF());
+		}
+		
+		return annotations;
+	}
+	
+}
@@ -0,0 +1,423 @@
+/*
+ * Copyright (C) 2019 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.reverb.lang;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * {@code ClassIndexProcessor} is the annotation processor which writes the 
+ * build-time class index (<code>META-INF/reverb/index</code>, see 
+ * {@link ClassIndexer}) of the compiled classes into the class output 
+ * directory, so the jar file packaged from it carries the index.
+ * The processor is not registered as a service (it would run on every 
+ * compilation with Reverb on the class path), so it is specified 
+ * explicitly: 
+ * <pre>
+ * &lt;plugin&gt; 
+ *   &lt;artifactId&gt;maven-compiler-plugin&lt;/artifactId&gt; 
+ *   &lt;configuration&gt; 
+ *     &lt;annotationProcessors&gt; 
+ *       &lt;annotationProcessor&gt;org.eiichiro.reverb.lang.ClassIndexProcessor&lt;/annotationProcessor&gt; 
+ *     &lt;/annotationProcessors&gt; 
+ *   &lt;/configuration&gt; 
+ * &lt;/plugin&gt; 
+ * </pre>
+ * The index lists the classes compiled in the compilation, merged with the 
+ * index left in the class output directory by the previous compilation, so 
+ * the incremental compilation of a part of the sources keeps the others (the 
+ * records of the deleted sources are kept until the clean build). The local 
+ * and anonymous classes are not visible to the annotation processor and are 
+ * not listed; use {@code ClassIndexer} on the class directory to list them. 
+ * {@link ClassResolver} ignores the index which does not list all the class 
+ * files in the jar file and scans the jar file instead.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+@SupportedAnnotationTypes("*")
+public class ClassIndexProcessor extends AbstractProcessor {
+
+	private static final int ACC_PUBLIC = 0x0001;
+	
+	private static final int ACC_PRIVATE = 0x0002;
+	
+	private static final int ACC_PROTECTED = 0x0004;
+	
+	private static final int ACC_STATIC = 0x0008;
+	
+	private static final int ACC_FINAL = 0x0010;
+	
+	private static final int ACC_SUPER = 0x0020;
+	
+	private static final int ACC_SYNCHRONIZED = 0x0020;
+	
+	private static final int ACC_VOLATILE = 0x0040;
+	
+	private static final int ACC_TRANSIENT = 0x0080;
+	
+	private static final int ACC_VARARGS = 0x0080;
+	
+	private static final int ACC_NATIVE = 0x0100;
+	
+	private static final int ACC_STRICT = 0x0800;
+	
+	private final Map<String, ClassFile> classes = new TreeMap<String, ClassFile>();
+	
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+	
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		if (roundEnv.processingOver()) {
+			write();
+			return false;
+		}
+		
+		for (Element element : roundEnv.getRootElements()) {
+			if (element instanceof TypeElement) {
+				add((TypeElement) element);
+			}
+		}
+		
+		return false;
+	}
+	
+	private void add(TypeElement type) {
+		String name = name(type);
+		int access = 0;
+		Set<Modifier> modifiers = type.getModifiers();
+		
+		if (modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.PROTECTED)) {
+			access |= ACC_PUBLIC;
+		}
+		
+		if (type.getKind() == ElementKind.ANNOTATION_TYPE) {
+			access |= ClassFile.ACC_INTERFACE | ClassFile.ACC_ABSTRACT | ClassFile.ACC_ANNOTATION;
+		} else if (type.getKind() == ElementKind.INTERFACE) {
+			access |= ClassFile.ACC_INTERFACE | ClassFile.ACC_ABSTRACT;
+		} else {
+			access |= ACC_SUPER;
+			
+			if (type.getKind() == ElementKind.ENUM) {
+				access |= ClassFile.ACC_ENUM;
+			}
+			
+			if (modifiers.contains(Modifier.FINAL)) {
+				access |= ACC_FINAL;
+			}
+			
+			if (modifiers.contains(Modifier.ABSTRACT)) {
+				access |= ClassFile.ACC_ABSTRACT;
+			}
+		}
+		
+		String superclass = null;
+		
+		if (type.getSuperclass().getKind() == TypeKind.NONE) {
+			if (type.getKind().isInterface()) {
+				superclass = Object.class.getName();
+			}
+			
+		} else {
+			superclass = name(type.getSuperclass());
+		}
+		
+		List<String> interfaces = new ArrayList<String>(type.getInterfaces().size());
+		
+		for (TypeMirror i : type.getInterfaces()) {
+			interfaces.add(name(i));
+		}
+		
+		List<Member> fields = new ArrayList<Member>(0);
+		List<Member> methods = new ArrayList<Member>(0);
+		
+		for (Element element : type.getEnclosedElements()) {
+			if (element instanceof TypeElement) {
+				add((TypeElement) element);
+				continue;
+			}
+			
+			List<String> annotations = annotations(element);
+			
+			if (annotations.isEmpty()) {
+				continue;
+			}
+			
+			if (element instanceof VariableElement) {
+				fields.add(new Member(name, element.getSimpleName().toString(),
+						descriptor(element.asType()), access((VariableElement) element), annotations));
+			} else if (element instanceof ExecutableElement) {
+				ExecutableElement method = (ExecutableElement) element;
+				methods.add(new Member(name, method.getSimpleName().toString(),
+						descriptor(type, method), access(method), annotations));
+			}
+		}
+		
+		List<Member> members = new ArrayList<Member>(fields.size() + methods.size());
+		members.addAll(fields);
+		members.addAll(methods);
+		classes.put(name, new ClassFile(name, access, superclass, interfaces, annotations(type), members));
+	}
+	
+	/** Returns the runtime visible annotations of the specified element. */
+	private List<String> annotations(Element element) {
+		List<String> annotations = Collections.emptyList();
+		
+		for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+			Element type = annotation.getAnnotationType().asElement();
+			Retention retention = type.getAnnotation(Retention.class);
+			
+			if (retention != null && retention.value() == RetentionPolicy.RUNTIME) {
+				if (annotations.isEmpty()) {
+					annotations = new ArrayList<String>();
+				}
+				
+				annotations.add(name((TypeElement) type));
+			}
+		}
+		
+		return annotations;
+	}
+	
+	private static int access(VariableElement field) {
+		int access = access(field.getModifiers());
+		
+		if (field.getKind() == ElementKind.ENUM_CONSTANT) {
+			access |= ClassFile.ACC_ENUM;
+		}
+		
+		if (field.getModifiers().contains(Modifier.VOLATILE)) {
+			access |= ACC_VOLATILE;
+		}
+		
+		if (field.getModifiers().contains(Modifier.TRANSIENT)) {
+			access |= ACC_TRANSIENT;
+		}
+		
+		return access;
+	}
+	
+	private static int access(ExecutableElement method) {
+		Set<Modifier> modifiers = method.getModifiers();
+		int access = access(modifiers);
+		
+		if (modifiers.contains(Modifier.SYNCHRONIZED)) {
+			access |= ACC_SYNCHRONIZED;
+		}
+		
+		if (modifiers.contains(Modifier.NATIVE)) {
+			access |= ACC_NATIVE;
+		}
+		
+		if (modifiers.contains(Modifier.ABSTRACT)) {
+			access |= ClassFile.ACC_ABSTRACT;
+		}
+		
+		if (modifiers.contains(Modifier.STRICTFP)) {
+			access |= ACC_STRICT;
+		}
+		
+		if (method.isVarArgs()) {
+			access |= ACC_VARARGS;
+		}
+		
+		return access;
+	}
+	
+	private static int access(Set<Modifier> modifiers) {
+		int access = 0;
+		
+		if (modifiers.contains(Modifier.PUBLIC)) {
+			access |= ACC_PUBLIC;
+		}
+		
+		if (modifiers.contains(Modifier.PRIVATE)) {
+			access |= ACC_PRIVATE;
+		}
+		
+		if (modifiers.contains(Modifier.PROTECTED)) {
+			access |= ACC_PROTECTED;
+		}
+		
+		if (modifiers.contains(Modifier.STATIC)) {
+			access |= ACC_STATIC;
+		}
+		
+		if (modifiers.contains(Modifier.FINAL)) {
+			access |= ACC_FINAL;
+		}
+		
+		return access;
+	}
+	
+	/**
+	 * Returns the method descriptor of the specified method. The constructor 
+	 * of the inner class and the enum takes the implicit parameters (the 
+	 * enclosing instance, the name and the ordinal) first.
+	 */
+	private String descriptor(TypeElement type, ExecutableElement method) {
+		StringBuilder descriptor = new StringBuilder("(");
+		
+		if (method.getKind() == ElementKind.CONSTRUCTOR) {
+			if (type.getKind() == ElementKind.ENUM) {
+				descriptor.append("Ljava/lang/String;I");
+			} else if (type.getNestingKind() == NestingKind.MEMBER
+					&& type.getKind() == ElementKind.CLASS
+					&& !type.getModifiers().contains(Modifier.STATIC)
+					&& !type.getEnclosingElement().getKind().isInterface()) {
+				descriptor.append(descriptor(type.getEnclosingElement().asType()));
+			}
+		}
+		
+		for (VariableElement parameter : method.getParameters()) {
+			descriptor.append(descriptor(parameter.asType()));
+		}
+		
+		return descriptor.append(')').append(descriptor(method.getReturnType())).toString();
+	}
+	
+	private String descriptor(TypeMirror type) {
+		type = processingEnv.getTypeUtils().erasure(type);
+		
+		switch (type.getKind()) {
+		case BOOLEAN:
+			return "Z";
+		case BYTE:
+			return "B";
+		case CHAR:
+			return "C";
+		case SHORT:
+			return "S";
+		case INT:
+			return "I";
+		case LONG:
+			return "J";
+		case FLOAT:
+			return "F";
+		case DOUBLE:
+			return "D";
+		case VOID:
+			return "V";
+		case ARRAY:
+			return "[" + descriptor(((ArrayType) type).getComponentType());
+		default:
+			return "L" + name(type).replace('.', '/') + ";";
+		}
+	}
+	
+	private String name(TypeMirror type) {
+		return name((TypeElement) processingEnv.getTypeUtils().asElement(
+				processingEnv.getTypeUtils().erasure(type)));
+	}
+	
+	private String name(TypeElement type) {
+		return processingEnv.getElementUtils().getBinaryName(type).toString();
+	}
+	
+	private void write() {
+		if (classes.isEmpty()) {
+			return;
+		}
+		
+		merge();
+		
+		try {
+			FileObject file = processingEnv.getFiler().createResource(
+					StandardLocation.CLASS_OUTPUT, "", ClassIndexer.INDEX);
+			OutputStream stream = file.openOutputStream();
+			
+			try {
+				ClassIndexer.write(stream, classes.values());
+			} finally {
+				stream.close();
+			}
+			
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Kind.WARNING,
+					"Class index [" + ClassIndexer.INDEX + "] cannot be written: " + e.getMessage());
+		}
+		
+		classes.clear();
+	}
+	
+	/**
+	 * Adds the classes in the index written by the previous compilation into 
+	 * the same output directory, so the incremental compilation of a part of 
+	 * the sources keeps the records of the others. The classes compiled in 
+	 * this compilation replace the previous records.
+	 */
+	private void merge() {
+		List<ClassFile> previous = null;
+		
+		try {
+			FileObject file = processingEnv.getFiler().getResource(
+					StandardLocation.CLASS_OUTPUT, "", ClassIndexer.INDEX);
+			InputStream stream = file.openInputStream();
+			
+			try {
+				previous = ClassIndexer.read(stream);
+			} finally {
+				stream.close();
+			}
+			
+		} catch (IOException e) {
+			// Not written yet.
+		} catch (IllegalArgumentException e) {
+			// Not supported by the output location.
+		}
+		
+		if (previous == null) {
+			return;
+		}
+		
+		for (ClassFile classFile : previous) {
+			if (!classes.containsKey(classFile.name())) {
+				classes.put(classFile.name(), classFile);
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2019 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.reverb.lang;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.eiichiro.reverb.lang.Source.DirectorySource;
+import org.eiichiro.reverb.lang.Source.JarSource;
+
+/**
+ * {@code ClassIndexer} writes the build-time class index 
+ * (<code>META-INF/reverb/index</code>) into the class directories and the jar 
+ * files. The index lists the classes in the jar file with their 
+ * superclasses, interfaces, annotations and annotated members (as 
+ * {@link ClassFile}), and {@link ClassResolver} answers the queries from the 
+ * index of the jar file without opening any class file in it. So the 
+ * discovery costs one entry per jar file instead of one entry per class.
+ * The index is written at the build time by this indexer or by 
+ * {@link ClassIndexProcessor} on the compilation. This indexer runs on the 
+ * class directory before the jar file is packaged, e.g. with the 
+ * <code>exec-maven-plugin</code> in <code>process-classes</code> phase: 
+ * <pre>
+ * &lt;plugin&gt; 
+ *   &lt;groupId&gt;org.codehaus.mojo&lt;/groupId&gt; 
+ *   &lt;artifactId&gt;exec-maven-plugin&lt;/artifactId&gt; 
+ *   &lt;executions&gt; 
+ *     &lt;execution&gt; 
+ *       &lt;phase&gt;process-classes&lt;/phase&gt; 
+ *       &lt;goals&gt;&lt;goal&gt;java&lt;/goal&gt;&lt;/goals&gt; 
+ *       &lt;configuration&gt; 
+ *         &lt;mainClass&gt;org.eiichiro.reverb.lang.ClassIndexer&lt;/mainClass&gt; 
+ *         &lt;arguments&gt;&lt;argument&gt;${project.build.outputDirectory}&lt;/argument&gt;&lt;/arguments&gt; 
+ *       &lt;/configuration&gt; 
+ *     &lt;/execution&gt; 
+ *   &lt;/executions&gt; 
+ * &lt;/plugin&gt; 
+ * </pre>
+ * or on the packaged jar file, which is rewritten with the index (the 
+ * classes in the nested jar files of the fat jar are also listed). The index 
+ * must be written after the last change of the classes in the jar file 
+ * (e.g. after shading). The index of the multi-release jar file is ignored, 
+ * as the class files are selected for the running JDK.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public final class ClassIndexer {
+
+	/** The path of the build-time class index in the jar file. */
+	public static final String INDEX = "META-INF/reverb/index";
+	
+	private static final int MAGIC = 0x52564a58;	// "RVJX"
+	
+	private static final int VERSION = 1;
+	
+	private ClassIndexer() {}
+	
+	/**
+	 * Writes the index into the specified class directories or jar files.
+	 * 
+	 * @param args The class directories or jar files.
+	 * @throws IOException If any I/O access fails while writing the index.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("Usage: java " + ClassIndexer.class.getName() + " <directory|jar>...");
+			return;
+		}
+		
+		for (String arg : args) {
+			File file = new File(arg);
+			System.out.println(index(file).size() + " class(es) indexed into [" + file + "]");
+		}
+	}
+	
+	/**
+	 * Writes the index of the classes in the specified class directory or jar 
+	 * file into it. The index of the class directory is written to 
+	 * <code>META-INF/reverb/index</code> under the directory. The jar file is 
+	 * rewritten with the index; the existing index is replaced and the other 
+	 * entries are copied as they are. The bytes prepended to the jar file 
+	 * (e.g. the launch script of the executable jar) are not copied, so the 
+	 * launch script must be prepended after indexing.
+	 * 
+	 * @param file The class directory or jar file.
+	 * @return The classes indexed.
+	 * @throws IOException If any I/O access fails while reading the classes or 
+	 * writing the index.
+	 */
+	public static List<ClassFile> index(File file) throws IOException {
+		if (file == null || !file.exists()) {
+			throw new IllegalArgumentException("'file' must not be [" + file + "]");
+		}
+		
+		List<ClassFile> classes = classes(file);
+		
+		if (file.isDirectory()) {
+			File index = new File(file, INDEX);
+			File parent = index.getParentFile();
+			
+			if (!parent.isDirectory() && !parent.mkdirs()) {
+				throw new IOException("Directory [" + parent + "] cannot be created");
+			}
+			
+			OutputStream stream = new BufferedOutputStream(new FileOutputStream(index));
+			
+			try {
+				write(stream, classes);
+			} finally {
+				stream.close();
+			}
+			
+		} else {
+			rewrite(file, classes);
+		}
+		
+		return classes;
+	}
+	
+	private static List<ClassFile> classes(File file) throws IOException {
+		JarFilePool pool = new JarFilePool(0);
+		Source source = file.isDirectory()
+				? new DirectorySource(file.toURI().toURL(), file, PackageFilter.ALL)
+				: new JarSource(file.toURI().toURL(), file, null, PackageFilter.ALL, pool, false);
+		Map<String, ClassFile> classes = new TreeMap<String, ClassFile>();
+		
+		try {
+			for (Resource resource : source) {
+				ClassFile classFile = resource.classFile();
+				
+				if (classFile == null) {
+					InputStream stream = resource.open();
+					
+					try {
+						classFile = ClassFile.read(stream);
+					} finally {
+						stream.close();
+					}
+				}
+				
+				if (classFile != null) {
+					classes.put(classFile.name(), classFile);
+				}
+			}
+			
+		} catch (UncheckedException e) {
+			if (e.cause instanceof IOException) {
+				throw (IOException) e.cause;
+			}
+			
+			throw e;
+		} finally {
+			source.close();
+		}
+		
+		return new ArrayList<ClassFile>(classes.values());
+	}
+	
+	private static void rewrite(File jar, List<ClassFile> classes) throws IOException {
+		File temporary = new File(jar.getPath() + ".tmp");
+		boolean moved = false;
+		
+		try {
+			copy(jar, temporary, classes);
+			Files.move(temporary.toPath(), jar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			moved = true;
+		} finally {
+			if (!moved) {
+				temporary.delete();
+			}
+		}
+	}
+	
+	private static void copy(File jar, File temporary, List<ClassFile> classes) throws IOException {
+		ZipFile zipFile = new ZipFile(jar);
+		
+		try {
+			ZipOutputStream output = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+			
+			try {
+				byte[] buffer = new byte[8192];
+				Enumeration<? extends ZipEntry> entries = zipFile.entries();
+				
+				while (entries.hasMoreElements()) {
+					ZipEntry entry = entries.nextElement();
+					
+					if (entry.getName().equals(INDEX)) {
+						continue;
+					}
+					
+					ZipEntry copy = new ZipEntry(entry);
+					
+					if (copy.getMethod() == ZipEntry.DEFLATED) {
+						copy.setCompressedSize(-1);
+					}
+					
+					output.putNextEntry(copy);
+					InputStream input = zipFile.getInputStream(entry);
+					
+					try {
+						for (int read; (read = input.read(buffer)) != -1; ) {
+							output.write(buffer, 0, read);
+						}
+						
+					} finally {
+						input.close();
+					}
+					
+					output.closeEntry();
+				}
+				
+				output.putNextEntry(new ZipEntry(INDEX));
+				write(output, classes);
+				output.closeEntry();
+			} finally {
+				output.close();
+			}
+			
+		} finally {
+			zipFile.close();
+		}
+	}
+	
+	/**
+	 * Writes the index of the specified classes to the specified 
+	 * {@code OutputStream}. The {@code OutputStream} is flushed but not 
+	 * closed.
+	 * 
+	 * @param stream {@code OutputStream} to write the index to.
+	 * @param classes The classes to be indexed.
+	 * @throws IOException If any I/O access fails while writing the index.
+	 */
+	public static void write(OutputStream stream, Collection<ClassFile> classes) throws IOException {
+		if (stream == null) {
+			throw new IllegalArgumentException("'stream' must not be [" + stream + "]");
+		}
+		
+		if (classes == null) {
+			throw new IllegalArgumentException("'classes' must not be [" + classes + "]");
+		}
+		
+		DataOutputStream output = new DataOutputStream(stream);
+		output.writeInt(MAGIC);
+		output.writeInt(VERSION);
+		output.writeInt(classes.size());
+		
+		for (ClassFile clazz : classes) {
+			ClassIndex.write(output, clazz);
+		}
+		
+		output.flush();
+	}
+	
+	/**
+	 * Reads the index from the specified {@code InputStream}.
+	 * 
+	 * @param stream {@code InputStream} to read the index from.
+	 * @return The classes indexed or <code>null</code> if the stream is not a 
+	 * valid index (e.g. written by an incompatible version, truncated or 
+	 * corrupted), so the jar file is scanned instead.
+	 */
+	static List<ClassFile> read(InputStream stream) {
+		DataInputStream input = new DataInputStream(stream);
+		
+		try {
+			if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+				return null;
+			}
+			
+			int count = input.readInt();
+			
+			if (count < 0) {
+				return null;
+			}
+			
+			List<ClassFile> classes = new ArrayList<ClassFile>(Math.min(count, 1024));
+			
+			for (int i = 0; i < count; i++) {
+				classes.add(ClassIndex.read(input));
+			}
+			
+			return classes;
+		} catch (IOException e) {
+			// Truncated or corrupted index (e.g. malformed modified UTF-8).
+			return null;
+		} catch (RuntimeException e) {
+			return null;
+		}
+	}
+	
+}
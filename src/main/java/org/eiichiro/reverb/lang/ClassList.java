@@ -0,0 +1,340 @@
+/*
+ * Copyright (C) 2019 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.reverb.lang;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.annotation.Annotation;
+import java.lang.annotation.Inherited;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * {@code ClassList} is the list of the classes resolved by 
+ * {@link ClassResolver} which is written in the formats used to speed up the 
+ * JVM startup: the AppCDS class list (<code>-XX:SharedClassListFile</code>) 
+ * and the GraalVM native-image <code>reflect-config.json</code>.
+ * The classes found by scanning (e.g. plugins) cannot be listed by hand, so 
+ * they are added from the type hierarchy graph of {@code ClassResolver} (see 
+ * {@link ClassResolver#hierarchy()}) without loading them and written at the 
+ * build time: 
+ * <pre>
+ * ClassList list = new ClassList(resolver); 
+ * list.addByAnnotation(Plugin.class).addByInterface(Extension.class); 
+ * list.writeClassList(new File("app.classlist")); 
+ * list.writeReflectConfig(new File("META-INF/native-image/reflect-config.json")); 
+ * </pre>
+ * The classes are written in the order of the names, so the same search path 
+ * produces the same files.
+ * This class is not thread-safe.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class ClassList {
+
+	private static final String UTF_8 = "UTF-8";
+	
+	private final ClassResolver<?> resolver;
+	
+	private final Set<String> classes = new TreeSet<String>();
+	
+	/**
+	 * Constructs a new {@code ClassList} instance with the specified 
+	 * {@code ClassResolver}.
+	 * 
+	 * @param resolver {@code ClassResolver} to resolve the classes.
+	 */
+	public ClassList(ClassResolver<?> resolver) {
+		if (resolver == null) {
+			throw new IllegalArgumentException("'resolver' must not be [" + resolver + "]");
+		}
+		
+		this.resolver = resolver;
+	}
+	
+	/**
+	 * Adds the classes on the search path that are annotated by the specified 
+	 * annotation. If the specified annotation is {@code Inherited}, the 
+	 * subclasses of the annotated classes are also added.
+	 * 
+	 * @param annotation The annotation the class being annotated.
+	 * @return This {@code ClassList}.
+	 * @throws IOException If any I/O access fails while traversing the search 
+	 * path.
+	 */
+	public ClassList addByAnnotation(Class<? extends Annotation> annotation) throws IOException {
+		if (annotation == null) {
+			throw new IllegalArgumentException("'annotation' must not be [" + annotation + "]");
+		}
+		
+		classes.addAll(resolver.hierarchy().annotated(annotation.getName(),
+				annotation.isAnnotationPresent(Inherited.class)));
+		return this;
+	}
+	
+	/**
+	 * Adds the classes on the search path that implement the specified 
+	 * interface directly or indirectly.
+	 * 
+	 * @param interfaceClass The interface the class implementing.
+	 * @return This {@code ClassList}.
+	 * @throws IOException If any I/O access fails while traversing the search 
+	 * path.
+	 */
+	public ClassList addByInterface(Class<?> interfaceClass) throws IOException {
+		if (interfaceClass == null) {
+			throw new IllegalArgumentException("'interfaceClass' must not be [" + interfaceClass + "]");
+		}
+		
+		classes.addAll(resolver.hierarchy().subtypes(interfaceClass.getName()));
+		return this;
+	}
+	
+	/**
+	 * Adds the classes on the search path that inherit the specified class 
+	 * directly or indirectly.
+	 * 
+	 * @param superclass The superclass the class inheriting.
+	 * @return This {@code ClassList}.
+	 * @throws IOException If any I/O access fails while traversing the search 
+	 * path.
+	 */
+	public ClassList addBySuperclass(Class<?> superclass) throws IOException {
+		if (superclass == null) {
+			throw new IllegalArgumentException("'superclass' must not be [" + superclass + "]");
+		}
+		
+		classes.addAll(resolver.hierarchy().subclasses(superclass.getName()));
+		return this;
+	}
+	
+	/**
+	 * Adds the classes of the specified names (e.g. the names of the classes 
+	 * resolved by {@link ClassResolver#resolve(ClassResolver.Matcher)}).
+	 * 
+	 * @param names The binary names of the classes.
+	 * @return This {@code ClassList}.
+	 */
+	public ClassList add(Iterable<String> names) {
+		if (names == null) {
+			throw new IllegalArgumentException("'names' must not be [" + names + "]");
+		}
+		
+		for (String name : names) {
+			classes.add(name);
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Returns the binary names of the added classes in the order of the names.
+	 * 
+	 * @return The binary names of the added classes.
+	 */
+	public Set<String> classes() {
+		return Collections.unmodifiableSet(classes);
+	}
+	
+	/**
+	 * Writes the AppCDS class list of the added classes to the specified 
+	 * {@code Writer}. The list is one internal name (e.g.
+	 * <code>com/example/Plugin</code>) per line, and the supertypes of each 
+	 * class which are found on the search path or from the 
+	 * {@code ClassLoader} of the {@code ClassResolver} are listed before the 
+	 * class so the classes are loaded in the order they are defined in when 
+	 * the archive is dumped. The classes found neither on the search path 
+	 * nor from the {@code ClassLoader} (e.g. the names added by 
+	 * {@link #add(Iterable)}) are listed as they are without the supertypes.
+	 * The {@code Writer} is flushed but not closed.
+	 * 
+	 * @param writer {@code Writer} to write the class list to.
+	 * @throws IOException If any I/O access fails while writing the list.
+	 */
+	public void writeClassList(Writer writer) throws IOException {
+		if (writer == null) {
+			throw new IllegalArgumentException("'writer' must not be [" + writer + "]");
+		}
+		
+		TypeHierarchy hierarchy = resolver.hierarchy();
+		Set<String> written = new HashSet<String>();
+		
+		for (String name : classes) {
+			writeClassList(writer, hierarchy, name, written);
+		}
+		
+		writer.flush();
+	}
+	
+	private void writeClassList(Writer writer, TypeHierarchy hierarchy, String name,
+			Set<String> written) throws IOException {
+		if (!written.add(name)) {
+			return;
+		}
+		
+		ClassFile clazz = hierarchy.get(name);
+		
+		if (clazz == null) {
+			// Not on the search path nor the supertype of the classes on it.
+			clazz = classFile(name);
+		}
+		
+		if (clazz != null) {
+			if (clazz.superclass() != null) {
+				writeClassList(writer, hierarchy, clazz.superclass(), written);
+			}
+			
+			for (String i : clazz.interfaces()) {
+				writeClassList(writer, hierarchy, i, written);
+			}
+		}
+		
+		writer.write(name.replace('.', '/'));
+		writer.write('\n');
+	}
+	
+	/** Reads the class file of the specified class from the {@code ClassLoader}. */
+	private ClassFile classFile(String name) {
+		ClassLoader classLoader = resolver.classLoader();
+		String resource = name.replace('.', '/') + ".class";
+		InputStream stream = (classLoader == null)
+				? ClassLoader.getSystemResourceAsStream(resource)
+				: classLoader.getResourceAsStream(resource);
+				
+		if (stream == null) {
+			return null;
+		}
+		
+		try {
+			return ClassFile.read(stream);
+		} catch (IOException e) {
+			// Unreadable. Treated as not found.
+			return null;
+		} finally {
+			try {
+				stream.close();
+			} catch (IOException e) {}
+		}
+	}
+	
+	/**
+	 * Writes the AppCDS class list of the added classes to the specified file 
+	 * (see {@link #writeClassList(Writer)}).
+	 * 
+	 * @param file The class list file.
+	 * @throws IOException If any I/O access fails while writing the file.
+	 */
+	public void writeClassList(File file) throws IOException {
+		Writer writer = writer(file);
+		
+		try {
+			writeClassList(writer);
+		} finally {
+			writer.close();
+		}
+	}
+	
+	/**
+	 * Writes the GraalVM native-image reflection configuration of the added 
+	 * classes to the specified {@code Writer}. The declared constructors, 
+	 * methods and fields of each class are registered for the reflection, as 
+	 * the classes found by scanning are instantiated and introspected by 
+	 * reflection. The {@code Writer} is flushed but not closed.
+	 * 
+	 * @param writer {@code Writer} to write the configuration to.
+	 * @throws IOException If any I/O access fails while writing the 
+	 * configuration.
+	 */
+	public void writeReflectConfig(Writer writer) throws IOException {
+		if (writer == null) {
+			throw new IllegalArgumentException("'writer' must not be [" + writer + "]");
+		}
+		
+		writer.write("[");
+		String separator = "\n";
+		
+		for (String name : classes) {
+			writer.write(separator);
+			writer.write("  {\n");
+			writer.write("    \"name\" : \"" + escape(name) + "\",\n");
+			writer.write("    \"allDeclaredConstructors\" : true,\n");
+			writer.write("    \"allDeclaredMethods\" : true,\n");
+			writer.write("    \"allDeclaredFields\" : true\n");
+			writer.write("  }");
+			separator = ",\n";
+		}
+		
+		writer.write("\n]\n");
+		writer.flush();
+	}
+	
+	/**
+	 * Writes the GraalVM native-image reflection configuration of the added 
+	 * classes to the specified file (see {@link #writeReflectConfig(Writer)}).
+	 * 
+	 * @param file The configuration file.
+	 * @throws IOException If any I/O access fails while writing the file.
+	 */
+	public void writeReflectConfig(File file) throws IOException {
+		Writer writer = writer(file);
+		
+		try {
+			writeReflectConfig(writer);
+		} finally {
+			writer.close();
+		}
+	}
+	
+	private static Writer writer(File file) throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException("'file' must not be [" + file + "]");
+		}
+		
+		File parent = file.getAbsoluteFile().getParentFile();
+		
+		if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Directory [" + parent + "] cannot be created");
+		}
+		
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF_8));
+	}
+	
+	private static String escape(String string) {
+		StringBuilder builder = new StringBuilder(string.length());
+		
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			
+			if (c == '"' || c == '\\') {
+				builder.append('\\').append(c);
+			} else if (c < 0x20) {
+				builder.append(String.format("\\u%04x", (int) c));
+			} else {
+				builder.append(c);
+			}
+		}
+		
+		return builder.toString();
+	}
+	
+}
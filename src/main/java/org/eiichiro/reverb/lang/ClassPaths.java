@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2019 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.reverb.lang;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLDecoder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.StringTokenizer;
+
+/**
+ * {@code ClassPaths} derives the search paths of {@link ClassResolver} from 
+ * the actual runtime: the class path (<code>java.class.path</code>), the 
+ * module path (<code>jdk.module.path</code>) and the 
+ * {@code URLClassLoader} hierarchy of a {@code ClassLoader}.
+ * The search paths are normalized into the <code>file:</code> URLs of the 
+ * existing jar files and directories (a directory URL ends with 
+ * <code>/</code>) without duplication, so the {@code ClassResolver}s built 
+ * on the same runtime share the records of the same jar files in 
+ * {@link ClassIndex#shared()} and the open jar files in 
+ * {@link JarFilePool#shared()}: 
+ * <pre>
+ * JLCClassResolver resolver = JLCClassResolver.of(classLoader); 
+ * </pre>
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public final class ClassPaths {
+
+	private ClassPaths() {}
+	
+	/**
+	 * Returns the search paths of the class path of this JVM 
+	 * (<code>java.class.path</code> system property).
+	 * 
+	 * @return The search paths of the class path.
+	 */
+	public static List<URL> classPath() {
+		List<URL> paths = new ArrayList<URL>();
+		add(paths, new HashSet<String>(), System.getProperty("java.class.path"), false);
+		return paths;
+	}
+	
+	/**
+	 * Returns the search paths of the module path of this JVM 
+	 * (<code>jdk.module.path</code> system property). The directory on the 
+	 * module path which is not an exploded module (does not contain 
+	 * <code>module-info.class</code>) is expanded into the jar files in it.
+	 * 
+	 * @return The search paths of the module path.
+	 */
+	public static List<URL> modulePath() {
+		List<URL> paths = new ArrayList<URL>();
+		add(paths, new HashSet<String>(), System.getProperty("jdk.module.path"), true);
+		return paths;
+	}
+	
+	/**
+	 * Returns the search paths of the specified {@code ClassLoader} and its 
+	 * parents. The URLs of each {@code URLClassLoader} in the hierarchy are 
+	 * added from the root in the order of the delegation. The system class 
+	 * loader which is not a {@code URLClassLoader} (Java 9 and later) 
+	 * contributes the class path and the module path. The other class loaders 
+	 * (e.g. the platform class loader) are skipped.
+	 * 
+	 * @param classLoader The {@code ClassLoader} to derive the search paths 
+	 * from.
+	 * @return The search paths of the specified {@code ClassLoader}.
+	 */
+	public static List<URL> of(ClassLoader classLoader) {
+		if (classLoader == null) {
+			throw new IllegalArgumentException("'classLoader' must not be [" + classLoader + "]");
+		}
+		
+		Deque<ClassLoader> classLoaders = new ArrayDeque<ClassLoader>();
+		
+		for (ClassLoader c = classLoader; c != null; c = c.getParent()) {
+			classLoaders.push(c);
+		}
+		
+		ClassLoader system = ClassLoader.getSystemClassLoader();
+		List<URL> paths = new ArrayList<URL>();
+		Set<String> added = new HashSet<String>();
+		
+		for (ClassLoader c : classLoaders) {
+			if (c instanceof URLClassLoader) {
+				for (URL url : ((URLClassLoader) c).getURLs()) {
+					File file = file(url);
+					
+					if (file != null) {
+						add(paths, added, file, false);
+					}
+				}
+			} else if (c == system) {
+				add(paths, added, System.getProperty("java.class.path"), false);
+				add(paths, added, System.getProperty("jdk.module.path"), true);
+			}
+		}
+		
+		return paths;
+	}
+	
+	private static void add(List<URL> paths, Set<String> added, String path, boolean modules) {
+		if (path == null) {
+			return;
+		}
+		
+		StringTokenizer stringTokenizer = new StringTokenizer(path, File.pathSeparator);
+		
+		while (stringTokenizer.hasMoreTokens()) {
+			add(paths, added, new File(stringTokenizer.nextToken()), modules);
+		}
+	}
+	
+	private static void add(List<URL> paths, Set<String> added, File file, boolean modules) {
+		if (modules && file.isDirectory() && !new File(file, "module-info.class").isFile()) {
+			File[] jars = file.listFiles(new FileFilter() {
+				
+				public boolean accept(File pathname) {
+					return pathname.isFile() && pathname.getName().endsWith(".jar");
+				}
+				
+			});
+			
+			if (jars != null) {
+				Arrays.sort(jars);
+				
+				for (File jar : jars) {
+					add(paths, added, jar, false);
+				}
+			}
+			
+			return;
+		}
+		
+		if (!file.exists()) {
+			return;
+		}
+		
+		try {
+			File canonical = file.getCanonicalFile();
+			
+			if (added.add(canonical.getPath())) {
+				paths.add(canonical.toURI().toURL());
+			}
+		} catch (MalformedURLException e) {
+			throw new UncheckedException(e);
+		} catch (IOException e) {
+			// Unresolvable path. Skipped.
+		}
+	}
+	
+	private static File file(URL url) {
+		if (!"file".equals(url.getProtocol())) {
+			return null;
+		}
+		
+		try {
+			return new File(url.toURI());
+		} catch (URISyntaxException e) {
+			try {
+				return new File(URLDecoder.decode(url.getPath(), "UTF-8"));
+			} catch (UnsupportedEncodingException u) {
+				throw new UncheckedException(u);
+			}
+		} catch (IllegalArgumentException e) {
+			// URL with authority or query.
+			return null;
+		}
+	}
+	
+}
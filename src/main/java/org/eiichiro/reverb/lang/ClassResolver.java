@@ -15,24 +15,59 @@
  */
 package org.eiichiro.reverb.lang;
 
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URI;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.ProviderNotFoundException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Enumeration;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.StringTokenizer;
-import java.util.jar.Attributes;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import java.util.jar.Manifest;
-import java.util.jar.Attributes.Name;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.eiichiro.reverb.lang.Source.DirectorySource;
+import org.eiichiro.reverb.lang.Source.JarSource;
 
 /**
  * {@code ClassResolver} is a base class for the component that resolves classes 
@@ -43,21 +78,51 @@ import java.util.jar.Attributes.Name;
  * <li>By superclass</li>
  * <li>By interface</li>
  * <li>By annotation</li>
- * <li>By {@code Matcher&lt;T&gt;}</li>
+ * <li>By reference to a type, a field or a method (read from the constant 
+ * pool without loading the classes)</li>
+ * <li>By {@code Matcher&lt;T&gt;} (and by name before loading with 
+ * {@code NameMatcher&lt;T&gt;})</li>
  * </ul>
  * Type parameter <code>T</code> is the type of class representation. So the sub 
  * class must override {@code #load(String, InputStream)} method to load a class 
  * from the specified {@code InputStream} as its own type of class 
  * representation and the methods described above according to the type of class 
  * representation. By default, {@link JLCClassResolver} is provided, which 
- * represents the loaded class as {@code java.lang.Class}.
+ * represents the loaded class as {@code java.lang.Class}, and 
+ * {@link BytecodeClassResolver} is provided, which represents the class as 
+ * {@link ClassFile} read from the class file without loading it.
+ * The annotated fields and methods are also resolved from the class files as 
+ * {@link Member} by {@link #resolveMembers(Class)} without loading the 
+ * declaring classes.
+ * The search path consists of the directories, the jar files (including the 
+ * multi-release jar files) and the modules of the <code>jrt:/</code> module 
+ * image (e.g. <code>jrt:/java.base</code>).
+ * The jar files on the search path are acquired from {@link JarFilePool} and 
+ * released after each traversal. {@link #close()} releases the jar files 
+ * still held by this {@code ClassResolver}.
  * 
  * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
  */
-public abstract class ClassResolver<T> {
+public abstract class ClassResolver<T> implements Closeable {
 
+	private static final int BATCH = 128;
+	
 	private Iterable<URL> paths = new ArrayList<URL>();
 	
+	private volatile ExecutorService executor;
+	
+	private volatile ClassIndex index;
+	
+	private volatile PackageFilter filter = PackageFilter.ALL;
+	
+	private volatile JarFilePool pool = JarFilePool.shared();
+	
+	private final Set<Source> opened = Collections.synchronizedSet(new HashSet<Source>());
+	
+	private Snapshot snapshot;
+	
+	private Names names;
+	
 	/**
 	 * {@code Matcher} indicates whether the specified class matches to some 
 	 * condition or not.
@@ -79,6 +144,54 @@ public abstract class ClassResolver<T> {
 		
 	}
 	
+	/**
+	 * {@code NameMatcher} is a {@code Matcher} which can reject the classes by 
+	 * name before they are loaded. {@code ClassResolver} tests the binary name 
+	 * of each class on the search path with {@link #accepts(String)} first, and 
+	 * loads the class and tests it with {@link #matches(Object)} only if it is 
+	 * accepted. So the condition which can be decided from the name should be 
+	 * implemented in {@link #accepts(String)}.
+	 * 
+	 * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+	 */
+	public static interface NameMatcher<T> extends Matcher<T> {
+		
+		/**
+		 * Indicates whether the class of the specified name can match to some 
+		 * condition or not. The class is neither loaded nor tested with 
+		 * {@link #matches(Object)} unless this method returns 
+		 * <code>true</code>.
+		 * 
+		 * @param name The binary name of the class to be tested.
+		 * @return <code>true</code> If the class of the specified name can 
+		 * match to some condition.
+		 */
+		public boolean accepts(String name);
+		
+	}
+	
+	/**
+	 * {@code Progress} is notified of the progress of the asynchronous 
+	 * resolution (see 
+	 * {@link ClassResolver#resolveAsync(Matcher, Executor, Progress)}).
+	 * 
+	 * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+	 */
+	public static interface Progress {
+		
+		/**
+		 * Notifies that a class file on the search path has been processed. 
+		 * This method is invoked from the thread the class file is processed 
+		 * on (the worker threads in parallel mode), so it must be thread-safe.
+		 * 
+		 * @param entries The number of the class files processed so far.
+		 * @param bytes The number of the bytes read from the class files so 
+		 * far. The class files answered from {@link ClassIndex} are not read.
+		 */
+		public void progress(long entries, long bytes);
+		
+	}
+	
 	/**
 	 * Constructs a new {@code ClassResolver} instance with the specified search 
 	 * paths.
@@ -100,6 +213,59 @@ public abstract class ClassResolver<T> {
 	 */
 	protected abstract T load(String clazz, InputStream stream);
 	
+	/**
+	 * Notifies that the specified class has matched to a query and returns 
+	 * the class to be returned as the result. This method is invoked for 
+	 * each matched class before it is added to the result (from the worker 
+	 * threads in parallel mode). By default, this method returns the 
+	 * specified class as it is; the sub class can override this method to 
+	 * prepare the matched classes (e.g. {@link JLCClassResolver} initializes 
+	 * them) or to exclude them by returning <code>null</code>.
+	 * 
+	 * @param clazz The matched class.
+	 * @return The class to be returned as the result or <code>null</code> to 
+	 * exclude it.
+	 */
+	protected T matched(T clazz) {
+		return clazz;
+	}
+	
+	/**
+	 * Notifies that the class file of the specified class has been changed, 
+	 * so the memo of the class taken from the previous class file must be 
+	 * discarded before the class is loaded again. By default, this method 
+	 * does nothing; {@link JLCClassResolver} forgets the load failure of the 
+	 * class (see {@link LoadFailures}).
+	 * 
+	 * @param clazz The binary name of the changed class.
+	 */
+	protected void changed(String clazz) {}
+	
+	private void add(Set<T> classes, T clazz) {
+		T matched = matched(clazz);
+		
+		if (matched != null) {
+			classes.add(matched);
+		}
+	}
+	
+	/**
+	 * Loads the class from the specified class file metadata and returns 
+	 * loaded class representation as the type of <code>T</code>. 
+	 * This method is invoked instead of {@link #load(String, InputStream)} when 
+	 * the class file metadata is already known (e.g. answered from 
+	 * {@link ClassIndex}), so the sub class can avoid reading the class file. 
+	 * By default, this method returns <code>null</code> and the class file is 
+	 * read and passed to {@link #load(String, InputStream)}.
+	 * 
+	 * @param classFile The class file metadata of the class to be loaded.
+	 * @return The loaded class representation as <code>T</code> or 
+	 * <code>null</code> if the class cannot be loaded only from the metadata.
+	 */
+	protected T load(ClassFile classFile) {
+		return null;
+	}
+	
 	/**
 	 * Resolves the {@code Class}es that contains the specified name.
 	 * 
@@ -142,146 +308,1866 @@ public abstract class ClassResolver<T> {
 	
 	/**
 	 * Resolves the {@code Class}es that matches to the specified {@code Matcher}.
+	 * If this {@code ClassResolver} is in parallel mode, the search path is 
+	 * traversed concurrently on the {@code ExecutorService} (see 
+	 * {@link #parallel(ExecutorService)}).
 	 * 
 	 * @param matcher {@code Matcher}.
 	 * @return {@code Class}es that matches to the specified {@code Matcher}.
 	 * @throws IOException If any I/O access fails while traversing the search 
 	 * path.
 	 */
-	public Set<T> resolve(Matcher<T> matcher) throws IOException {
+	public Set<T> resolve(final Matcher<T> matcher) throws IOException {
+		if (executor != null) {
+			return resolve(matcher, executor);
+		}
+		
 		Set<T> classes = new HashSet<T>();
+		traverse(visitor(matcher, classes), null);
+		return classes;
+	}
+	
+	/**
+	 * Resolves the {@code Class}es that matches to the specified {@code Matcher} 
+	 * by traversing the search path concurrently on the specified 
+	 * {@code ExecutorService}. Jar files and directory subtrees are read and 
+	 * loaded at the same time and the matches are merged into a concurrent 
+	 * result set. {@link #load(String, InputStream)} and 
+	 * {@link Matcher#matches(Object)} are invoked from the worker threads, so 
+	 * they must be thread-safe.
+	 * 
+	 * @param matcher {@code Matcher}.
+	 * @param executor {@code ExecutorService} to run the traversal on.
+	 * @return {@code Class}es that matches to the specified {@code Matcher}.
+	 * @throws IOException If any I/O access fails while traversing the search 
+	 * path.
+	 */
+	public Set<T> resolve(Matcher<T> matcher, ExecutorService executor) throws IOException {
+		return resolve(sources(), matcher, executor);
+	}
+	
+	/**
+	 * Resolves the {@code Class}es that matches to the specified {@code Matcher} 
+	 * from the specified search path entries.
+	 * 
+	 * @param sources The search path entries to be traversed.
+	 * @param matcher {@code Matcher}.
+	 * @param executor {@code ExecutorService} to run the traversal on or 
+	 * <code>null</code> to run it on the calling thread.
+	 * @return {@code Class}es that matches to the specified {@code Matcher}.
+	 * @throws IOException If any I/O access fails while traversing the search 
+	 * path.
+	 */
+	Set<T> resolve(List<Source> sources, Matcher<T> matcher, 
+			ExecutorService executor) throws IOException {
+		Set<T> classes = Collections.newSetFromMap(new ConcurrentHashMap<T, Boolean>());
+		traverse(sources, visitor(matcher, classes), executor);
+		return classes;
+	}
+	
+	/**
+	 * Resolves the {@code Class}es that matches to the specified 
+	 * {@code Matcher} asynchronously on the specified {@code Executor} (see 
+	 * {@link #resolveAsync(Matcher, Executor, Progress)}).
+	 * 
+	 * @param matcher {@code Matcher}.
+	 * @param executor {@code Executor} to run the resolution on.
+	 * @return {@code CompletableFuture} of the {@code Class}es that matches 
+	 * to the specified {@code Matcher}.
+	 */
+	public CompletableFuture<Set<T>> resolveAsync(Matcher<T> matcher, Executor executor) {
+		return resolveAsync(matcher, executor, null);
+	}
+	
+	/**
+	 * Resolves the {@code Class}es that matches to the specified 
+	 * {@code Matcher} asynchronously on the specified {@code Executor}, so the 
+	 * caller can go on (e.g. start accepting requests) while the search path 
+	 * is traversed: 
+	 * <pre>
+	 * CompletableFuture&lt;Set&lt;Class&lt;?&gt;&gt;&gt; plugins = resolver.resolveAsync(matcher, executor, progress); 
+	 * </pre>
+	 * The returned {@code CompletableFuture} is completed with the result, or 
+	 * completed exceptionally with the {@code IOException} if any I/O access 
+	 * fails while traversing the search path. Cancelling it stops the 
+	 * traversal cooperatively; the traversal checks the cancellation before 
+	 * each class file and gives up the rest of the search path. If this 
+	 * {@code ClassResolver} is in parallel mode, the class files are processed 
+	 * on its {@code ExecutorService} (see {@link #parallel(ExecutorService)}).
+	 * 
+	 * @param matcher {@code Matcher}.
+	 * @param executor {@code Executor} to run the resolution on.
+	 * @param progress {@code Progress} to be notified of the progress or 
+	 * <code>null</code>.
+	 * @return {@code CompletableFuture} of the {@code Class}es that matches 
+	 * to the specified {@code Matcher}.
+	 */
+	public CompletableFuture<Set<T>> resolveAsync(final Matcher<T> matcher, Executor executor, 
+			final Progress progress) {
+		if (matcher == null) {
+			throw new IllegalArgumentException("'matcher' must not be [" + matcher + "]");
+		}
 		
-		for (URL url : paths) {
-			if (url.toString().endsWith(".jar")) {
-//				System.out.println(url);
-				JarFile jarFile = new JarFile(URLDecoder.decode(url.getPath(), "UTF-8"));
-				Manifest manifest = jarFile.getManifest();
-				
-				if (manifest != null) {
-//					System.out.println(manifest);
-					Attributes mainAttributes = manifest.getMainAttributes();
+		if (executor == null) {
+			throw new IllegalArgumentException("'executor' must not be [" + executor + "]");
+		}
+		
+		final CompletableFuture<Set<T>> future = new CompletableFuture<Set<T>>();
+		
+		try {
+			executor.execute(new Runnable() {
+				
+				public void run() {
+					if (future.isDone()) {
+						// Cancelled before started.
+						return;
+					}
 					
-					if (mainAttributes != null) {
-//						System.out.println(mainAttributes);
-						String classpath = mainAttributes.getValue(Name.CLASS_PATH);
-						
-						if (classpath != null) {
-//							System.out.println(classpath);
-							StringTokenizer stringTokenizer = new StringTokenizer(classpath);
-							
-							while (stringTokenizer.hasMoreTokens()) {
-								String token = stringTokenizer.nextToken();
-								URL entry = new URL(url, token);
-
-								try {
-									if (entry.toString().endsWith("/")) {
-//										System.out.println(entry);
-										classes.addAll(getMatchedClasses(matcher, new File(URLDecoder.decode(entry.getPath(), "UTF-8"))));
-									} else {
-//										System.out.println(entry);
-										classes.addAll(getMatchedClasses(matcher, new JarFile(URLDecoder.decode(entry.getPath(), "UTF-8"))));
-									}
-								} catch (Exception e) {
-									// File does not exist.
-									// e.printStackTrace();
-								}								
-							}
-						}
+					try {
+						future.complete(resolve(matcher, future, progress));
+					} catch (CancellationException e) {
+						// Cancelled while traversing.
+					} catch (Throwable e) {
+						future.completeExceptionally(e);
 					}
 				}
 				
-				classes.addAll(getMatchedClasses(matcher, jarFile));
-			} else {
-				File base = new File(URLDecoder.decode(url.getPath(), "UTF-8"));
-				classes.addAll(getMatchedClasses(matcher, base));
-			}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
 		}
 		
-		return classes;
+		return future;
 	}
 	
-	private Set<T> getMatchedClasses(Matcher<T> matcher, File base) throws IOException {
-		List<File> files = getClasses(base);
-		Set<T> classes = new HashSet<T>();
-		
-		for (File file : files) {
-			String path = file.getPath();
-//			System.out.println(path);
-			InputStream stream = null;
+	private Set<T> resolve(Matcher<T> matcher, final Future<?> future, 
+			final Progress progress) throws IOException {
+		Set<T> classes = Collections.newSetFromMap(new ConcurrentHashMap<T, Boolean>());
+		final Visitor visitor = visitor(matcher, classes);
+		final AtomicLong entries = new AtomicLong();
+		final AtomicLong bytes = new AtomicLong();
+		traverse(new Visitor() {
 			
-			try {
-				stream = new FileInputStream(file);
-				T clazz = load(path.substring(base.getPath().length() + 1, path.length() - 6).replace(File.separatorChar, '.'), stream);
-				
-				if (clazz != null && matcher.matches(clazz)) {
-					classes.add(clazz);
+			public void visit(Resource resource) throws IOException {
+				if (future.isCancelled()) {
+					throw new CancellationException();
 				}
 				
-			} finally {
-				if (stream != null) {
-					stream.close();
+				if (progress == null) {
+					visitor.visit(resource);
+					return;
 				}
+				
+				visitor.visit(counting(resource, bytes));
+				progress.progress(entries.incrementAndGet(), bytes.get());
 			}
-		}
-		
+			
+		}, executor);
 		return classes;
 	}
 	
-	private List<File> getClasses(File base) {
-		// System.out.println(directory);
-		List<File> classes = new ArrayList<File>();
-		
-		if (base.isDirectory()) {
-			File[] files = base.listFiles();
+	private Visitor visitor(final Matcher<T> matcher, final Set<T> classes) {
+		return new Visitor() {
 			
-			for (File file : files) {
-				if (file.isDirectory()) {
-					classes.addAll(getClasses(file));
-				} else {
-					if (file.getPath().endsWith(".class")) {
-						classes.add(file);
-					}
+			public void visit(Resource resource) throws IOException {
+				if (!accepts(matcher, resource.name())) {
+					skip(resource);
+					return;
+				}
+				
+				T clazz = load(resource);
+				
+				if (clazz != null && matcher.matches(clazz)) {
+					add(classes, clazz);
 				}
 			}
 			
-		} else {
-			if (base.getPath().endsWith(".class")) {
-				classes.add(base);
+		};
+	}
+	
+	/**
+	 * Returns the {@code Resource} which delegates to the specified 
+	 * {@code Resource} and adds the number of the bytes read from it to the 
+	 * specified counter.
+	 */
+	private static Resource counting(final Resource resource, final AtomicLong bytes) {
+		return new Resource() {
+			
+			@Override
+			String name() {
+				return resource.name();
+			}
+			
+			@Override
+			InputStream open() throws IOException {
+				return new FilterInputStream(resource.open()) {
+					
+					@Override
+					public int read() throws IOException {
+						int b = super.read();
+						
+						if (b != -1) {
+							bytes.incrementAndGet();
+						}
+						
+						return b;
+					}
+					
+					@Override
+					public int read(byte[] b, int off, int len) throws IOException {
+						int read = super.read(b, off, len);
+						
+						if (read > 0) {
+							bytes.addAndGet(read);
+						}
+						
+						return read;
+					}
+					
+				};
+			}
+			
+			@Override
+			ClassFile classFile() {
+				return resource.classFile();
+			}
+			
+			@Override
+			Source source() {
+				return resource.source();
+			}
+			
+			@Override
+			int entry() {
+				return resource.entry();
+			}
+			
+			@Override
+			boolean recording() {
+				return resource.recording();
+			}
+			
+			@Override
+			void record(ClassFile classFile) {
+				resource.record(classFile);
 			}
+			
+		};
+	}
+	
+	/**
+	 * Starts watching the classes that matches to the specified 
+	 * {@code Matcher}. The search path is traversed once and then the 
+	 * directories on the search path are watched for the added, modified and 
+	 * removed class files, which are read again and notified to the specified 
+	 * {@code Listener} (see {@link ClassWatcher}). The returned 
+	 * {@code ClassWatcher} must be closed when it is no longer used.
+	 * 
+	 * @param matcher {@code Matcher}.
+	 * @param listener {@code Listener} to be notified of the changes.
+	 * @return {@code ClassWatcher} which keeps the matched classes.
+	 * @throws IOException If any I/O access fails while traversing the search 
+	 * path.
+	 */
+	public ClassWatcher<T> watch(Matcher<T> matcher, ClassWatcher.Listener<T> listener) throws IOException {
+		if (matcher == null) {
+			throw new IllegalArgumentException("'matcher' must not be [" + matcher + "]");
 		}
 		
-		return classes;
+		if (listener == null) {
+			throw new IllegalArgumentException("'listener' must not be [" + listener + "]");
+		}
+		
+		ClassWatcher<T> watcher = new ClassWatcher<T>(this, matcher, listener);
+		watcher.start();
+		return watcher;
 	}
 	
-	private Set<T> getMatchedClasses(Matcher<T> matcher, JarFile jarFile) throws IOException {
-		Enumeration<JarEntry> entries = jarFile.entries();
-		Set<T> classes = new HashSet<T>();
+	/**
+	 * Returns the lazy iterator over the {@code Class}es that matches to the 
+	 * specified {@code Matcher}. The search path is traversed as the iterator 
+	 * proceeds; no jar file is opened and no class is loaded before it is 
+	 * needed to answer {@code Iterator#hasNext()}, so the traversal stops as 
+	 * soon as the caller stops iterating. The same class is never returned 
+	 * twice. The search path entries which are traversed to the end are 
+	 * recorded in {@link ClassIndex} (if set); the partially traversed entry 
+	 * is not. If any I/O access fails while traversing the search path, the 
+	 * iterator throws {@link UncheckedException} wrapping the 
+	 * {@code IOException}.
+	 * The jar file being traversed stays acquired from {@link JarFilePool} 
+	 * until the iterator is iterated to the end. The returned iterator is 
+	 * also {@code Closeable}; if the caller stops iterating early, close it 
+	 * (or this {@code ClassResolver}) to release the jar file.
+	 * 
+	 * @param matcher {@code Matcher}.
+	 * @return The lazy iterator over the {@code Class}es that matches to the 
+	 * specified {@code Matcher}.
+	 */
+	public Iterator<T> iterate(Matcher<T> matcher) {
+		if (matcher == null) {
+			throw new IllegalArgumentException("'matcher' must not be [" + matcher + "]");
+		}
 		
-		while (entries.hasMoreElements()) {
-			JarEntry entry = entries.nextElement();
-			String name = entry.getName();
-//			System.out.println(name);
-			
-			if (name.endsWith(".class")) {
-				InputStream stream = null;
+		return new Traversal(matcher);
+	}
+	
+	/**
+	 * Returns the lazy sequential {@code Stream} of the {@code Class}es that 
+	 * matches to the specified {@code Matcher}. The search path is traversed 
+	 * as the {@code Stream} is consumed (see {@link #iterate(Matcher)}), so 
+	 * the short-circuiting operations like {@code findFirst()} or 
+	 * {@code limit(long)} stop the traversal early. In that case, the jar 
+	 * file being traversed stays acquired until the {@code Stream} is closed 
+	 * (e.g. with try-with-resources), so close the {@code Stream} unless it 
+	 * is consumed to the end.
+	 * 
+	 * @param matcher {@code Matcher}.
+	 * @return The lazy {@code Stream} of the {@code Class}es that matches to 
+	 * the specified {@code Matcher}.
+	 */
+	public Stream<T> stream(Matcher<T> matcher) {
+		if (matcher == null) {
+			throw new IllegalArgumentException("'matcher' must not be [" + matcher + "]");
+		}
+		
+		final Traversal traversal = new Traversal(matcher);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+				traversal, Spliterator.DISTINCT | Spliterator.NONNULL), false).onClose(new Runnable() {
 				
-				try {
-					stream = jarFile.getInputStream(entry);
-					T clazz = load(name.substring(0, name.length() - 6).replace('/', '.'), stream);
+			public void run() {
+				traversal.close();
+			}
+			
+		});
+	}
+	
+	/**
+	 * {@code Traversal} is the lazy iterator behind {@link #iterate(Matcher)} 
+	 * and {@link #stream(Matcher)}. {@link #close()} releases the search path 
+	 * entry being traversed without recording it in {@link ClassIndex} and 
+	 * ends the traversal.
+	 */
+	private class Traversal implements Iterator<T>, Closeable {
+		
+		private final Deque<Source> sources = new ArrayDeque<Source>();
+		
+		private final Set<String> expanded = new HashSet<String>();
+		
+		private final Set<T> classes = new HashSet<T>();
+		
+		private final Matcher<T> matcher;
+		
+		private final Iterator<URL> paths = ClassResolver.this.paths.iterator();
+		
+		private Source source;
+		
+		private Iterator<Resource> resources;
+		
+		private T next;
+		
+		private boolean closed;
+		
+		private Traversal(Matcher<T> matcher) {
+			this.matcher = matcher;
+		}
+		
+		public boolean hasNext() {
+			if (closed) {
+				return false;
+			}
+			
+			try {
+				while (next == null) {
+					if (resources != null && resources.hasNext()) {
+						Resource resource = resources.next();
+						
+						if (!accepts(matcher, resource.name())) {
+							skip(resource);
+							continue;
+						}
+						
+						T clazz = load(resource);
+						
+						if (clazz != null && matcher.matches(clazz)) {
+							clazz = matched(clazz);
+							
+							if (clazz != null && classes.add(clazz)) {
+								next = clazz;
+							}
+						}
+						
+						continue;
+					}
 					
-					if (clazz != null && matcher.matches(clazz)) {
-						classes.add(clazz);
+					if (source != null) {
+						source.commit();
+						source.close();
+						opened.remove(source);
+						source = null;
+						resources = null;
 					}
 					
-				} finally {
-					if (stream != null) {
-						stream.close();
+					if (sources.isEmpty()) {
+						if (!paths.hasNext()) {
+							return false;
+						}
+						
+						List<Source> list = sources(paths.next(), expanded);
+						opened.addAll(list);
+						sources.addAll(list);
+						continue;
 					}
+					
+					source = sources.poll();
+					resources = source.iterator();
 				}
+				
+				return true;
+			} catch (IOException e) {
+				throw new UncheckedException(e);
 			}
 		}
 		
-		return classes;
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			
+			T clazz = next;
+			next = null;
+			return clazz;
+		}
+		
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+		
+		public void close() {
+			if (source != null) {
+				source.close();
+				opened.remove(source);
+				source = null;
+				resources = null;
+			}
+			
+			for (Source pending : sources) {
+				pending.close();
+				opened.remove(pending);
+			}
+			
+			sources.clear();
+			next = null;
+			closed = true;
+		}
+		
+	}
+	
+	
+	/**
+	 * Resolves the {@code Class}es that matches to each of the specified 
+	 * {@code Matcher}s with one traversal of the search path. Each class file 
+	 * on the search path is read and loaded only once and tested against all 
+	 * the {@code Matcher}s, so asking several questions at once costs about 
+	 * the same as asking one. If this {@code ClassResolver} is in parallel 
+	 * mode, the search path is traversed concurrently (see 
+	 * {@link #resolve(Map, ExecutorService)}).
+	 * 
+	 * @param matchers {@code Matcher}s keyed by the name of the query.
+	 * @return {@code Class}es that matches to each {@code Matcher} keyed by the 
+	 * name of the query (in the iteration order of the specified map).
+	 * @throws IOException If any I/O access fails while traversing the search 
+	 * path.
+	 */
+	public Map<String, Set<T>> resolve(Map<String, ? extends Matcher<T>> matchers) throws IOException {
+		if (executor != null) {
+			return resolve(matchers, executor);
+		}
+		
+		return match(matchers, null);
+	}
+	
+	/**
+	 * Resolves the {@code Class}es that matches to each of the specified 
+	 * {@code Matcher}s with one traversal of the search path on the specified 
+	 * {@code ExecutorService}. {@link #load(String, InputStream)} and 
+	 * {@link Matcher#matches(Object)} are invoked from the worker threads, so 
+	 * they must be thread-safe.
+	 * 
+	 * @param matchers {@code Matcher}s keyed by the name of the query.
+	 * @param executor {@code ExecutorService} to run the traversal on.
+	 * @return {@code Class}es that matches to each {@code Matcher} keyed by the 
+	 * name of the query (in the iteration order of the specified map).
+	 * @throws IOException If any I/O access fails while traversing the search 
+	 * path.
+	 */
+	public Map<String, Set<T>> resolve(Map<String, ? extends Matcher<T>> matchers, 
+			ExecutorService executor) throws IOException {
+		return match(matchers, executor);
+	}
+	
+	private Map<String, Set<T>> match(Map<String, ? extends Matcher<T>> matchers, 
+			ExecutorService executor) throws IOException {
+		if (matchers == null) {
+			throw new IllegalArgumentException("'matchers' must not be [" + matchers + "]");
+		}
+		
+		final List<Matcher<T>> list = new ArrayList<Matcher<T>>(matchers.size());
+		final List<Set<T>> results = new ArrayList<Set<T>>(matchers.size());
+		Map<String, Set<T>> classes = new LinkedHashMap<String, Set<T>>();
+		
+		for (Map.Entry<String, ? extends Matcher<T>> entry : matchers.entrySet()) {
+			Set<T> set = (executor == null) ? new HashSet<T>() 
+					: Collections.newSetFromMap(new ConcurrentHashMap<T, Boolean>());
+			list.add(entry.getValue());
+			results.add(set);
+			classes.put(entry.getKey(), set);
+		}
+		
+		if (list.isEmpty()) {
+			return classes;
+		}
+		
+		traverse(new Visitor() {
+			
+			public void visit(Resource resource) throws IOException {
+				String name = resource.name();
+				boolean[] accepted = new boolean[list.size()];
+				boolean any = false;
+				
+				for (int i = 0; i < list.size(); i++) {
+					accepted[i] = accepts(list.get(i), name);
+					any |= accepted[i];
+				}
+				
+				if (!any) {
+					skip(resource);
+					return;
+				}
+				
+				T clazz = load(resource);
+				
+				if (clazz == null) {
+					return;
+				}
+				
+				any = false;
+				
+				for (int i = 0; i < list.size(); i++) {
+					accepted[i] = accepted[i] && list.get(i).matches(clazz);
+					any |= accepted[i];
+				}
+				
+				if (!any || (clazz = matched(clazz)) == null) {
+					return;
+				}
+				
+				for (int i = 0; i < list.size(); i++) {
+					if (accepted[i]) {
+						results.get(i).add(clazz);
+					}
+				}
+			}
+			
+		}, executor);
+		return classes;
+	}
+	
+	static boolean accepts(Matcher<?> matcher, String name) {
+		return !(matcher instanceof NameMatcher) || ((NameMatcher<?>) matcher).accepts(name);
+	}
+	
+	/**
+	 * Skips the specified class file without loading it. The class file 
+	 * metadata is still read if the jar file is being recorded to 
+	 * {@link ClassIndex}, so the record of the jar file is never committed 
+	 * partially.
+	 */
+	private void skip(Resource resource) throws IOException {
+		if (resource.recording()) {
+			read(resource);
+		}
+	}
+	
+	/**
+	 * Resolves the fields and methods that are annotated by the specified 
+	 * annotation. The annotations are read from the class files, so neither 
+	 * the declaring classes are loaded nor their members are reflected. The 
+	 * query is answered from the type hierarchy graph (see 
+	 * {@link #hierarchy()}).
+	 * 
+	 * @param annotation The annotation the member being annotated.
+	 * @return The fields and methods that are annotated by the specified 
+	 * annotation.
+	 * @throws IOException If any I/O access fails while traversing the search 
+	 * path.
+	 */
+	public Set<Member> resolveMembers(Class<? extends Annotation> annotation) throws IOException {
+		if (annotation == null) {
+			throw new IllegalArgumentException("'annotation' must not be [" + annotation + "]");
+		}
+		
+		return hierarchy().members(annotation.getName());
+	}
+	
+	/**
+	 * Resolves the annotated fields and methods that match to the specified 
+	 * {@code Matcher}. Only the members which have at least one runtime 
+	 * visible annotation are tested. If the {@code Matcher} is a 
+	 * {@code NameMatcher}, the declaring class name is tested with 
+	 * {@link NameMatcher#accepts(String)} first.
+	 * 
+	 * @param matcher {@code Matcher} to test each annotated member.
+	 * @return The annotated fields and methods that match to the specified 
+	 * {@code Matcher}.
+	 * @throws IOException If any I/O access fails while traversing the search 
+	 * path.
+	 */
+	public Set<Member> resolveMembers(Matcher<Member> matcher) throws IOException {
+		if (matcher == null) {
+			throw new IllegalArgumentException("'matcher' must not be [" + matcher + "]");
+		}
+		
+		TypeHierarchy hierarchy = hierarchy();
+		Set<Member> members = new HashSet<Member>();
+		
+		for (String name : hierarchy.classes()) {
+			if (!accepts(matcher, name)) {
+				continue;
+			}
+			
+			for (Member member : hierarchy.get(name).members()) {
+				if (matcher.matches(member)) {
+					members.add(member);
+				}
+			}
+		}
+		
+		return members;
+	}
+	
+	/**
+	 * Resolves the classes that refer to the specified type; that is, the 
+	 * classes whose constant pool names the type or whose descriptors or 
+	 * signatures (field types, method parameter and return types, 
+	 * annotations, type arguments) contain it. The references are found on 
+	 * the raw constant pool bytes of each class file, so only the referring 
+	 * classes are loaded. The type itself is not returned.
+	 * 
+	 * @param type The type being referred to.
+	 * @return The classes that refer to the specified type.
+	 * @throws IOException If any I/O access fails while traversing the search 
+	 * path.
+	 */
+	public Set<T> resolveByReference(Class<?> type) throws IOException {
+		if (type == null) {
+			throw new IllegalArgumentException("'type' must not be [" + type + "]");
+		}
+		
+		return resolveByReference(type.getName());
+	}
+	
+	/**
+	 * Resolves the classes that refer to the type of the specified binary 
+	 * name. The type does not have to be on the search path (e.g. the type 
+	 * removed from a library). See {@link #resolveByReference(Class)}.
+	 * 
+	 * @param type The binary name of the type being referred to.
+	 * @return The classes that refer to the specified type.
+	 * @throws IOException If any I/O access fails while traversing the search 
+	 * path.
+	 */
+	public Set<T> resolveByReference(String type) throws IOException {
+		if (type == null || type.isEmpty()) {
+			throw new IllegalArgumentException("'type' must not be [" + type + "]");
+		}
+		
+		return references(type, ConstantPool.utf8(type.replace('.', '/')), null, null);
+	}
+	
+	/**
+	 * Resolves the classes that access the specified field or invoke the 
+	 * specified method or constructor; that is, the classes whose constant 
+	 * pool has the field or method reference to it (including the method 
+	 * handles and the method references). The owner of the reference is the 
+	 * static type of the receiver chosen by the compiler, so the accesses 
+	 * through a subclass (e.g. <code>Sub.inheritedMethod()</code>) are not 
+	 * found by the declaring class. Only the referring classes are loaded.
+	 * 
+	 * @param member The field, method or constructor being referred to.
+	 * @return The classes that refer to the specified member.
+	 * @throws IOException If any I/O access fails while traversing the search 
+	 * path.
+	 */
+	public Set<T> resolveByReference(java.lang.reflect.Member member) throws IOException {
+		if (member == null) {
+			throw new IllegalArgumentException("'member' must not be [" + member + "]");
+		}
+		
+		String descriptor;
+		String name = member.getName();
+		
+		if (member instanceof Field) {
+			descriptor = descriptor(((Field) member).getType());
+		} else if (member instanceof Method) {
+			descriptor = descriptor(((Method) member).getParameterTypes(), 
+					((Method) member).getReturnType());
+		} else if (member instanceof Constructor) {
+			name = "<init>";
+			descriptor = descriptor(((Constructor<?>) member).getParameterTypes(), void.class);
+		} else {
+			throw new IllegalArgumentException("'member' must not be [" + member + "]");
+		}
+		
+		return resolveByReference(member.getDeclaringClass().getName(), name, descriptor);
+	}
+	
+	/**
+	 * Resolves the classes that refer to the field or method of the specified 
+	 * owner class, name and descriptor. The member does not have to be on the 
+	 * search path. See {@link #resolveByReference(java.lang.reflect.Member)}.
+	 * 
+	 * @param owner The binary name of the owner class of the member.
+	 * @param name The name of the member (<code>&lt;init&gt;</code> for 
+	 * constructors).
+	 * @param descriptor The field or method descriptor of the member (e.g. 
+	 * <code>(Ljava/lang/String;)V</code>) or <code>null</code> to match any 
+	 * descriptor (e.g. all the overloads of a method).
+	 * @return The classes that refer to the specified member.
+	 * @throws IOException If any I/O access fails while traversing the search 
+	 * path.
+	 */
+	public Set<T> resolveByReference(String owner, String name, String descriptor) throws IOException {
+		if (owner == null || owner.isEmpty()) {
+			throw new IllegalArgumentException("'owner' must not be [" + owner + "]");
+		}
+		
+		if (name == null || name.isEmpty()) {
+			throw new IllegalArgumentException("'name' must not be [" + name + "]");
+		}
+		
+		return references(null, ConstantPool.utf8(owner.replace('.', '/')), 
+				ConstantPool.utf8(name), 
+				(descriptor == null) ? null : ConstantPool.utf8(descriptor));
+	}
+	
+	private Set<T> references(final String self, final byte[] type, 
+			final byte[] name, final byte[] descriptor) throws IOException {
+		final Set<T> classes = Collections.newSetFromMap(new ConcurrentHashMap<T, Boolean>());
+		traverse(new Visitor() {
+			
+			public void visit(Resource resource) throws IOException {
+				if (resource.name().equals(self)) {
+					skip(resource);
+					return;
+				}
+				
+				byte[] bytes;
+				InputStream stream = resource.open();
+				
+				try {
+					bytes = ClassFile.bytes(stream);
+				} finally {
+					stream.close();
+				}
+				
+				ClassFile classFile = resource.classFile();
+				
+				if (classFile == null && resource.recording()) {
+					classFile = ClassFile.read(bytes);
+					
+					if (classFile != null) {
+						resource.record(classFile);
+					}
+				}
+				
+				ConstantPool pool = ConstantPool.read(bytes);
+				
+				if (pool == null || !((name == null) 
+						? pool.references(type) : pool.references(type, name, descriptor))) {
+					return;
+				}
+				
+				T clazz = (classFile == null) ? null : load(classFile);
+				
+				if (clazz == null) {
+					clazz = load(resource.name(), new ByteArrayInputStream(bytes));
+				}
+				
+				if (clazz != null) {
+					add(classes, clazz);
+				}
+			}
+			
+		}, executor);
+		return classes;
+	}
+	
+	private static String descriptor(Class<?>[] parameters, Class<?> result) {
+		StringBuilder descriptor = new StringBuilder("(");
+		
+		for (Class<?> parameter : parameters) {
+			descriptor.append(descriptor(parameter));
+		}
+		
+		return descriptor.append(')').append(descriptor(result)).toString();
+	}
+	
+	private static String descriptor(Class<?> type) {
+		if (type.isArray()) {
+			// "[Ljava.lang.String;" -> "[Ljava/lang/String;"
+			return type.getName().replace('.', '/');
+		} else if (!type.isPrimitive()) {
+			return "L" + type.getName().replace('.', '/') + ";";
+		}
+		
+		if (type == boolean.class) {
+			return "Z";
+		} else if (type == byte.class) {
+			return "B";
+		} else if (type == char.class) {
+			return "C";
+		} else if (type == short.class) {
+			return "S";
+		} else if (type == int.class) {
+			return "I";
+		} else if (type == long.class) {
+			return "J";
+		} else if (type == float.class) {
+			return "F";
+		} else if (type == double.class) {
+			return "D";
+		}
+		
+		return "V";
+	}
+	
+	/**
+	 * Returns the type hierarchy graph of the classes on the search path. 
+	 * The graph is built from the class file metadata with one traversal of 
+	 * the search path on the first invocation and reused until 
+	 * {@link #refresh()} is invoked.
+	 * 
+	 * @return The type hierarchy graph of the classes on the search path.
+	 * @throws IOException If any I/O access fails while traversing the search 
+	 * path.
+	 */
+	public TypeHierarchy hierarchy() throws IOException {
+		Snapshot snapshot = snapshot();
+		return snapshot.hierarchy;
+	}
+	
+	/**
+	 * Returns the index over the names of the classes on the search path. 
+	 * The index is built from the entry names alone with one traversal of 
+	 * the search path on the first invocation, independently of 
+	 * {@link #hierarchy()} (no class file is read), and reused until 
+	 * {@link #refresh()} is invoked, so the repeated name queries are 
+	 * answered without traversing the search path.
+	 * 
+	 * @return The index over the names of the classes on the search path.
+	 * @throws IOException If any I/O access fails while traversing the search 
+	 * path.
+	 */
+	public NameIndex names() throws IOException {
+		return table().index;
+	}
+	
+	/**
+	 * Discards the type hierarchy graph and the name index built from the 
+	 * search path, so the search path is traversed again on the next query 
+	 * which needs them.
+	 */
+	public void refresh() {
+		Snapshot snapshot;
+		Names names;
+		
+		synchronized (this) {
+			snapshot = this.snapshot;
+			this.snapshot = null;
+			names = this.names;
+			this.names = null;
+		}
+		
+		if (snapshot != null) {
+			close(snapshot.sources);
+		}
+		
+		if (names != null) {
+			close(names.sources);
+		}
+	}
+	
+	/**
+	 * Releases the jar files held by this {@code ClassResolver} to 
+	 * {@link JarFilePool} and discards the type hierarchy graph and the name 
+	 * index (see {@link #refresh()}). The jar files which are held by the 
+	 * lazy iterators not iterated to the end (see {@link #iterate(Matcher)}) 
+	 * are also released. This {@code ClassResolver} can still be used after 
+	 * it is closed; the jar files are acquired again as needed.
+	 */
+	public void close() {
+		refresh();
+		List<Source> sources;
+		
+		synchronized (opened) {
+			sources = new ArrayList<Source>(opened);
+			opened.clear();
+		}
+		
+		close(sources);
+	}
+	
+	private static void close(List<Source> sources) {
+		for (Source source : sources) {
+			source.close();
+		}
+	}
+	
+	/**
+	 * Returns the classes of the specified names on the search path as the 
+	 * type of <code>T</code>. The names which are not on the search path or 
+	 * cannot be loaded are ignored. The class files are looked up in the 
+	 * same table as {@link #names()}, so the type hierarchy graph is not 
+	 * built.
+	 * 
+	 * @param names The binary names of the classes.
+	 * @return The classes of the specified names as <code>T</code>.
+	 * @throws IOException If any I/O access fails while reading the classes.
+	 */
+	protected Set<T> classes(Iterable<String> names) throws IOException {
+		Names table = table();
+		Set<T> classes = new HashSet<T>();
+		
+		try {
+			for (String name : names) {
+				Resource resource = table.resource(name);
+				
+				if (resource != null) {
+					T clazz = load(resource);
+					
+					if (clazz != null) {
+						add(classes, clazz);
+					}
+				}
+			}
+			
+		} finally {
+			close(table.sources);
+		}
+		
+		return classes;
+	}
+	
+	private Set<T> classes(Snapshot snapshot, Iterable<String> names) throws IOException {
+		Set<T> classes = new HashSet<T>();
+		
+		try {
+			for (String name : names) {
+				Resource resource = snapshot.resource(name);
+				
+				if (resource != null) {
+					T clazz = load(resource);
+					
+					if (clazz != null) {
+						add(classes, clazz);
+					}
+				}
+			}
+			
+		} finally {
+			close(snapshot.sources);
+		}
+		
+		return classes;
+	}
+	
+	private Snapshot snapshot() throws IOException {
+		synchronized (this) {
+			if (snapshot != null) {
+				return snapshot;
+			}
+		}
+		
+		Snapshot snapshot = snapshot(sources());
+		
+		synchronized (this) {
+			if (this.snapshot == null) {
+				this.snapshot = snapshot;
+			}
+			
+			return this.snapshot;
+		}
+	}
+	
+	/**
+	 * Returns the table of the class files on the search path by name, 
+	 * listing the search path on the first invocation. The class files are 
+	 * listed by their entry names and never read, and the jar files are not 
+	 * recorded to {@link ClassIndex} by the listing (the recorded ones are 
+	 * still used). Each class file is kept as the ordinals of its search path 
+	 * entry and of itself in the entry.
+	 */
+	private Names table() throws IOException {
+		synchronized (this) {
+			if (names != null) {
+				return names;
+			}
+		}
+		
+		List<Source> sources = sources();
+		// The ordinals of the search path entry (upper) and the class file (lower).
+		Map<String, Long> resources = new HashMap<String, Long>();
+		
+		try {
+			for (int i = 0; i < sources.size(); i++) {
+				for (Resource resource : sources.get(i)) {
+					if (!resources.containsKey(resource.name())) {
+						resources.put(resource.name(), ((long) i << 32) | (resource.entry() & 0xFFFFFFFFL));
+					}
+				}
+			}
+			
+		} catch (UncheckedException e) {
+			if (e.cause instanceof IOException) {
+				throw (IOException) e.cause;
+			}
+			
+			throw e;
+		} finally {
+			close(sources);
+		}
+		
+		NameIndex index = new NameIndex(resources.keySet());
+		int[] owners = new int[index.size()];
+		int[] entries = new int[index.size()];
+		
+		for (Map.Entry<String, Long> entry : resources.entrySet()) {
+			int id = index.id(entry.getKey());
+			owners[id] = (int) (entry.getValue() >>> 32);
+			entries[id] = (int) entry.getValue().longValue();
+		}
+		
+		Names names = new Names(index, owners, entries, sources);
+		
+		synchronized (this) {
+			if (this.names == null) {
+				this.names = names;
+			}
+			
+			return this.names;
+		}
+	}
+	
+	/**
+	 * Takes the snapshot of the specified search path entries. Each class 
+	 * file is kept as the ordinals of its search path entry and of itself in 
+	 * the entry (see {@link #table()}).
+	 */
+	private Snapshot snapshot(List<Source> sources) throws IOException {
+		final Map<Source, Integer> ordinals = new IdentityHashMap<Source, Integer>();
+		
+		for (int i = 0; i < sources.size(); i++) {
+			ordinals.put(sources.get(i), i);
+		}
+		
+		final Map<String, Long> resources = new ConcurrentHashMap<String, Long>();
+		final Map<String, ClassFile> classes = new ConcurrentHashMap<String, ClassFile>();
+		traverse(sources, new Visitor() {
+			
+			public void visit(Resource resource) throws IOException {
+				ClassFile classFile = read(resource);
+				
+				if (classFile != null && classes.putIfAbsent(classFile.name(), classFile) == null) {
+					resources.put(classFile.name(), ((long) ordinals.get(resource.source()) << 32) 
+							| (resource.entry() & 0xFFFFFFFFL));
+				}
+			}
+			
+		}, executor);
+		TypeHierarchy hierarchy = new TypeHierarchy(classes.values(), classLoader());
+		classes.clear();
+		int[] owners = new int[hierarchy.ids()];
+		int[] entries = new int[hierarchy.ids()];
+		
+		for (Map.Entry<String, Long> entry : resources.entrySet()) {
+			int id = hierarchy.id(entry.getKey());
+			owners[id] = (int) (entry.getValue() >>> 32);
+			entries[id] = (int) entry.getValue().longValue();
+		}
+		
+		return new Snapshot(hierarchy, owners, entries, sources);
+	}
+	
+	/**
+	 * Resolves the subtypes (or the subclasses) of the specified type on the 
+	 * search path. If the type hierarchy graph has not been built yet, the 
+	 * jar files which can never contain the subtypes are skipped by their 
+	 * summaries in {@link ClassIndex} (see {@link #sources(String, boolean)}) 
+	 * and the graph is built only over the rest for this query. The graph is 
+	 * kept for the following queries only if no jar file has been skipped.
+	 * 
+	 * @param type The binary name of the type.
+	 * @param interfaces <code>true</code> to resolve the subtypes through the 
+	 * interfaces or <code>false</code> to resolve the subclasses.
+	 * @return The subtypes of the specified type.
+	 * @throws IOException If any I/O access fails while traversing the search 
+	 * path.
+	 */
+	Set<T> resolveBySupertype(String type, boolean interfaces) throws IOException {
+		Snapshot snapshot;
+		
+		synchronized (this) {
+			snapshot = this.snapshot;
+		}
+		
+		if (snapshot == null) {
+			List<Source> sources = sources();
+			List<Source> candidates = select(sources, type, true);
+			
+			if (candidates.size() == sources.size()) {
+				snapshot = snapshot(candidates);
+				
+				synchronized (this) {
+					if (this.snapshot == null) {
+						this.snapshot = snapshot;
+					}
+					
+					snapshot = this.snapshot;
+				}
+				
+			} else {
+				snapshot = snapshot(candidates);
+			}
+		}
+		
+		TypeHierarchy hierarchy = snapshot.hierarchy;
+		return classes(snapshot, interfaces ? hierarchy.subtypes(type) : hierarchy.subclasses(type));
+	}
+	
+	/**
+	 * {@code Snapshot} is the class file metadata of the search path taken by 
+	 * one traversal.
+	 */
+	private static class Snapshot {
+		
+		private final TypeHierarchy hierarchy;
+		
+		/**
+		 * The ordinals of the search path entries of the class files indexed 
+		 * by the ids of {@link TypeHierarchy}.
+		 */
+		private final int[] owners;
+		
+		/**
+		 * The ordinals of the class files in their search path entries 
+		 * indexed by the ids of {@link TypeHierarchy}.
+		 */
+		private final int[] entries;
+		
+		private final List<Source> sources;
+		
+		private Snapshot(TypeHierarchy hierarchy, int[] owners, int[] entries, 
+				List<Source> sources) {
+			this.hierarchy = hierarchy;
+			this.owners = owners;
+			this.entries = entries;
+			this.sources = sources;
+		}
+		
+		/**
+		 * Returns the class file of the specified class with its metadata 
+		 * rebuilt from the type hierarchy graph, so neither the class file nor 
+		 * the metadata is retained per class.
+		 */
+		private Resource resource(String name) {
+			int id = hierarchy.id(name);
+			
+			if (id < 0) {
+				return null;
+			}
+			
+			Resource resource = sources.get(owners[id]).resource(name, entries[id]);
+			return (resource.classFile() == null) ? Resource.of(resource, hierarchy.get(name)) : resource;
+		}
+		
+	}
+	
+	/**
+	 * {@code Names} is the class files on the search path by name, listed by 
+	 * one traversal without reading them. The class files are kept as the 
+	 * ordinals indexed by the ids of {@link NameIndex}, not as 
+	 * {@code Resource}s.
+	 */
+	private static class Names {
+		
+		private final NameIndex index;
+		
+		/** The ordinals of the search path entries of the class files. */
+		private final int[] owners;
+		
+		/** The ordinals of the class files in their search path entries. */
+		private final int[] entries;
+		
+		private final List<Source> sources;
+		
+		private Names(NameIndex index, int[] owners, int[] entries, List<Source> sources) {
+			this.index = index;
+			this.owners = owners;
+			this.entries = entries;
+			this.sources = sources;
+		}
+		
+		/**
+		 * Returns the class file of the specified class or <code>null</code> 
+		 * if it is not on the search path.
+		 */
+		private Resource resource(String name) {
+			int id = index.id(name);
+			return (id < 0) ? null : sources.get(owners[id]).resource(name, entries[id]);
+		}
+		
+	}
+	
+	/**
+	 * {@code Visitor} visits each class file on the search path.
+	 */
+	interface Visitor {
+		
+		/**
+		 * Visits the specified class file.
+		 * 
+		 * @param resource The class file.
+		 * @throws IOException If any I/O access fails while reading the class 
+		 * file.
+		 */
+		void visit(Resource resource) throws IOException;
+		
+	}
+	
+	/**
+	 * Traverses the search path with the specified {@code Visitor}. If the 
+	 * {@code ExecutorService} is specified, the class files are enumerated on 
+	 * the calling thread and visited in batches on the {@code ExecutorService}.
+	 * 
+	 * @param visitor {@code Visitor} to visit each class file.
+	 * @param executor {@code ExecutorService} to visit the class files on or 
+	 * <code>null</code> to visit them on the calling thread.
+	 * @throws IOException If any I/O access fails while traversing the search 
+	 * path.
+	 */
+	void traverse(Visitor visitor, ExecutorService executor) throws IOException {
+		traverse(sources(), visitor, executor);
+	}
+	
+	/**
+	 * Traverses the specified search path entries with the specified 
+	 * {@code Visitor}. The search path entries are closed after the traversal.
+	 * 
+	 * @param sources The search path entries to be traversed.
+	 * @param visitor {@code Visitor} to visit each class file.
+	 * @param executor {@code ExecutorService} to visit the class files on or 
+	 * <code>null</code> to visit them on the calling thread.
+	 * @throws IOException If any I/O access fails while traversing the search 
+	 * path.
+	 */
+	void traverse(List<Source> sources, Visitor visitor, ExecutorService executor) throws IOException {
+		try {
+			visit(sources, visitor, executor);
+		} finally {
+			close(sources);
+		}
+	}
+	
+	private void visit(List<Source> sources, Visitor visitor, ExecutorService executor) throws IOException {
+		if (executor == null) {
+			try {
+				for (Source source : sources) {
+					for (Resource resource : source) {
+						visitor.visit(resource);
+					}
+					
+					source.commit();
+				}
+				
+			} catch (UncheckedException e) {
+				if (e.cause instanceof IOException) {
+					throw (IOException) e.cause;
+				}
+				
+				throw e;
+			}
+			
+			return;
+		}
+		
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		
+		try {
+			for (Source source : sources) {
+				List<Resource> batch = new ArrayList<Resource>(BATCH);
+				
+				for (Resource resource : source) {
+					batch.add(resource);
+					
+					if (batch.size() == BATCH) {
+						futures.add(executor.submit(task(visitor, batch)));
+						batch = new ArrayList<Resource>(BATCH);
+					}
+				}
+				
+				if (!batch.isEmpty()) {
+					futures.add(executor.submit(task(visitor, batch)));
+				}
+			}
+			
+			for (Future<?> future : futures) {
+				future.get();
+			}
+			
+			for (Source source : sources) {
+				source.commit();
+			}
+			
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while resolving classes");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			
+			if (cause instanceof UncheckedException 
+					&& ((UncheckedException) cause).cause instanceof IOException) {
+				throw (IOException) ((UncheckedException) cause).cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			
+			throw new IOException(cause);
+		} finally {
+			for (Future<?> future : futures) {
+				future.cancel(false);
+			}
+		}
+	}
+	
+	private Runnable task(final Visitor visitor, final List<Resource> resources) {
+		return new Runnable() {
+			
+			public void run() {
+				for (Resource resource : resources) {
+					try {
+						visitor.visit(resource);
+					} catch (IOException e) {
+						throw new UncheckedException(e);
+					}
+				}
+			}
+			
+		};
+	}
+	
+	/**
+	 * Reads the class file metadata of the specified class file.
+	 * 
+	 * @param resource The class file.
+	 * @return The class file metadata or <code>null</code> if the class file 
+	 * is malformed.
+	 * @throws IOException If any I/O access fails while reading the class file.
+	 */
+	ClassFile read(Resource resource) throws IOException {
+		ClassFile classFile = resource.classFile();
+		
+		if (classFile != null) {
+			return classFile;
+		}
+		
+		InputStream stream = resource.open();
+		
+		try {
+			classFile = ClassFile.read(stream);
+		} finally {
+			stream.close();
+		}
+		
+		if (classFile != null && resource.recording()) {
+			resource.record(classFile);
+		}
+		
+		return classFile;
+	}
+	
+	private T load(Resource resource) throws IOException {
+		ClassFile classFile = resource.classFile();
+		
+		if (classFile != null) {
+			T clazz = load(classFile);
+			
+			if (clazz != null) {
+				return clazz;
+			}
+		}
+		
+		InputStream stream = resource.open();
+		
+		try {
+			if (classFile == null && resource.recording()) {
+				byte[] bytes = ClassFile.bytes(stream);
+				classFile = ClassFile.read(bytes);
+				
+				if (classFile != null) {
+					resource.record(classFile);
+					T clazz = load(classFile);
+					
+					if (clazz != null) {
+						return clazz;
+					}
+				}
+				
+				return load(resource.name(), new ByteArrayInputStream(bytes));
+			}
+			
+			return load(resource.name(), stream);
+		} finally {
+			stream.close();
+		}
+	}
+	
+	/**
+	 * Expands the search paths into the directories and jar files to be 
+	 * traversed. The {@code Class-Path} attribute in the manifest of each jar 
+	 * file is also expanded recursively. Each directory or jar file is 
+	 * traversed only once even if it is reachable from several search paths 
+	 * or manifests, and the cyclic references between manifests are ignored.
+	 * 
+	 * @return The directories and jar files to be traversed.
+	 * @throws IOException If any I/O access fails while opening jar file.
+	 */
+	List<Source> sources() throws IOException {
+		List<Source> sources = new ArrayList<Source>();
+		Set<String> expanded = new HashSet<String>();
+		
+		for (URL url : paths) {
+			sources.addAll(sources(url, expanded));
+		}
+		
+		return sources;
+	}
+	
+	/**
+	 * Expands the search paths into the directories and jar files which may 
+	 * contain the classes referring to the specified type (see 
+	 * {@link #select(List, String, boolean)}). The others are closed.
+	 * 
+	 * @param type The binary name of the type.
+	 * @param supertype <code>true</code> if the classes refer to the 
+	 * specified type as their direct or indirect supertype.
+	 * @return The directories and jar files to be traversed.
+	 * @throws IOException If any I/O access fails while opening jar file.
+	 */
+	List<Source> sources(String type, boolean supertype) throws IOException {
+		return select(sources(), type, supertype);
+	}
+	
+	/**
+	 * Selects the directories and jar files which may contain the classes 
+	 * referring to the specified type as their annotation (including the 
+	 * annotations of the members) or direct supertype, or as their indirect 
+	 * supertype if <code>supertype</code> is <code>true</code>. The jar files 
+	 * recorded in {@link ClassIndex} are summarized by the Bloom filter of the 
+	 * referred types and the list of the supertypes declared out of them, so 
+	 * the jar file is skipped without being opened if its filter rules out 
+	 * the type and none of the supertypes declared out of it is the subtype 
+	 * of the type. Those supertypes are read from {@link #classLoader()}; the 
+	 * one which cannot be read is assumed to be the subtype. The directories 
+	 * and the jar files not recorded are always selected. The others are 
+	 * closed.
+	 */
+	private List<Source> select(List<Source> sources, String type, boolean supertype) {
+		List<Source> selected = new ArrayList<Source>(sources.size());
+		Map<String, Boolean> subtypes = new HashMap<String, Boolean>();
+		
+		for (Source source : sources) {
+			ClassIndex.Entry entry = (source instanceof JarSource) ? ((JarSource) source).entry() : null;
+			
+			if (entry == null || entry.mightRefer(type) 
+					|| (supertype && subtype(entry.supertypes(), type, subtypes))) {
+				selected.add(source);
+			} else {
+				source.close();
+			}
+		}
+		
+		return selected;
+	}
+	
+	private boolean subtype(List<String> names, String type, Map<String, Boolean> subtypes) {
+		for (String name : names) {
+			if (subtype(name, type, subtypes)) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Indicates whether the specified class is the specified type or its 
+	 * subtype by reading the class files from {@link #classLoader()}.
+	 */
+	private boolean subtype(String name, String type, Map<String, Boolean> subtypes) {
+		if (name.equals(type)) {
+			return true;
+		}
+		
+		Boolean subtype = subtypes.get(name);
+		
+		if (subtype != null) {
+			return subtype;
+		}
+		
+		subtypes.put(name, false);
+		ClassFile clazz = null;
+		ClassLoader classLoader = classLoader();
+		String resource = name.replace('.', '/') + ".class";
+		InputStream stream = (classLoader == null)
+				? ClassLoader.getSystemResourceAsStream(resource)
+				: classLoader.getResourceAsStream(resource);
+				
+		if (stream != null) {
+			try {
+				clazz = ClassFile.read(stream);
+			} catch (IOException e) {
+				// Unreadable. Treated as not found.
+			} finally {
+				try {
+					stream.close();
+				} catch (IOException e) {}
+			}
+		}
+		
+		subtype = (clazz == null) 
+				|| (clazz.superclass() != null && subtype(clazz.superclass(), type, subtypes)) 
+				|| subtype(clazz.interfaces(), type, subtypes);
+		subtypes.put(name, subtype);
+		return subtype;
+	}
+	
+	/**
+	 * Expands the specified search path into the directories and jar files to 
+	 * be traversed, except the ones which have already been expanded.
+	 * 
+	 * @param url The search path.
+	 * @param expanded The canonical paths of the directories and jar files 
+	 * which have already been expanded. The paths expanded by this invocation 
+	 * are added.
+	 * @return The directories and jar files to be traversed.
+	 * @throws IOException If any I/O access fails while opening jar file.
+	 */
+	List<Source> sources(URL url, Set<String> expanded) throws IOException {
+		List<Source> sources = new ArrayList<Source>();
+		
+		if (url.getProtocol().equals("jrt")) {
+			if (expanded.add(url.toString())) {
+				modules(url, sources);
+			}
+			
+			return sources;
+		}
+		
+		File file = new File(URLDecoder.decode(url.getPath(), "UTF-8"));
+		
+		if (!expanded.add(canonicalPath(file))) {
+			return sources;
+		}
+		
+		if (url.toString().endsWith(".jar")) {
+//			System.out.println(url);
+			JarSource source = new JarSource(url, file, index, filter, pool);
+			expand(source, expanded, sources);
+			sources.add(source);
+		} else {
+			sources.add(new DirectorySource(url, file, filter));
+		}
+		
+		return sources;
+	}
+	
+	/**
+	 * Expands the <code>jrt:/</code> URL into the modules in the module image 
+	 * of the running JDK (<code>jrt:/</code> for all the modules or 
+	 * <code>jrt:/module</code> for the specified module). Each module is 
+	 * traversed as a directory on the <code>jrt</code> {@code FileSystem}. 
+	 * Nothing is expanded on the JDK without the module image (Java 8).
+	 */
+	private void modules(URL url, List<Source> sources) throws IOException {
+		FileSystem jrt;
+		
+		try {
+			jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+		} catch (ProviderNotFoundException e) {
+			return;
+		} catch (FileSystemNotFoundException e) {
+			return;
+		}
+		
+		Path modules = jrt.getPath("/modules");
+		String module = url.getPath().replace("/", "");
+		
+		if (!module.isEmpty()) {
+			Path path = modules.resolve(module);
+			
+			if (Files.isDirectory(path)) {
+				sources.add(new DirectorySource(url, path, filter));
+			}
+			
+			return;
+		}
+		
+		List<Path> paths = new ArrayList<Path>();
+		DirectoryStream<Path> stream = Files.newDirectoryStream(modules);
+		
+		try {
+			for (Path path : stream) {
+				paths.add(path);
+			}
+			
+		} finally {
+			stream.close();
+		}
+		
+		Collections.sort(paths);
+		
+		for (Path path : paths) {
+			sources.add(new DirectorySource(new URL("jrt:/" + path.getFileName()), path, filter));
+		}
+	}
+	
+	/**
+	 * Expands the {@code Class-Path} attribute in the manifest of the 
+	 * specified jar file recursively (depth-first, the referenced entries 
+	 * precede the referencing jar file).
+	 */
+	private void expand(JarSource source, Set<String> expanded, List<Source> sources) throws IOException {
+		String classpath = source.classPath();
+		
+		if (classpath == null) {
+			return;
+		}
+		
+//		System.out.println(classpath);
+		StringTokenizer stringTokenizer = new StringTokenizer(classpath);
+		
+		while (stringTokenizer.hasMoreTokens()) {
+			String token = stringTokenizer.nextToken();
+			
+			try {
+				URL entry = new URL(source.url(), token);
+				File file = new File(URLDecoder.decode(entry.getPath(), "UTF-8"));
+				
+				if (!expanded.add(canonicalPath(file))) {
+					continue;
+				}
+				
+				if (entry.toString().endsWith("/")) {
+//					System.out.println(entry);
+					sources.add(new DirectorySource(entry, file, filter));
+				} else {
+//					System.out.println(entry);
+					JarSource jarSource = new JarSource(entry, file, index, filter, pool);
+					
+					try {
+						expand(jarSource, expanded, sources);
+					} catch (IOException e) {
+						// File does not exist.
+						jarSource.close();
+						continue;
+					}
+					
+					sources.add(jarSource);
+				}
+				
+			} catch (MalformedURLException e) {
+				// Invalid Class-Path entry.
+				// e.printStackTrace();
+			}
+		}
+	}
+	
+	private static String canonicalPath(File file) {
+		try {
+			return file.getCanonicalPath();
+		} catch (IOException e) {
+			return file.getAbsolutePath();
+		}
+	}
+	
+	/**
+	 * Sets this {@code ClassResolver} into parallel mode on the common 
+	 * {@code ForkJoinPool}.
+	 * 
+	 * @return This {@code ClassResolver}.
+	 * @see #parallel(ExecutorService)
+	 */
+	public ClassResolver<T> parallel() {
+		return parallel(ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Sets this {@code ClassResolver} into parallel mode on the specified 
+	 * {@code ExecutorService}. In parallel mode, every resolution traverses the 
+	 * search path concurrently (see {@link #resolve(Matcher, ExecutorService)}). 
+	 * Passing <code>null</code> sets this {@code ClassResolver} back into 
+	 * sequential mode. The {@code ExecutorService} is not shut down by this 
+	 * {@code ClassResolver}.
+	 * 
+	 * @param executor {@code ExecutorService} to run the traversal on.
+	 * @return This {@code ClassResolver}.
+	 */
+	public ClassResolver<T> parallel(ExecutorService executor) {
+		this.executor = executor;
+		return this;
+	}
+	
+	/**
+	 * Sets the {@code ClassIndex} the jar files on the search path are recorded 
+	 * in. The jar files which have been recorded and not been changed since then 
+	 * are answered from the specified {@code ClassIndex} without being opened. 
+	 * The other jar files are recorded into the {@code ClassIndex} after they 
+	 * are traversed. Passing <code>null</code> disables the index.
+	 * 
+	 * @param index {@code ClassIndex} the jar files are recorded in.
+	 * @return This {@code ClassResolver}.
+	 */
+	public ClassResolver<T> index(ClassIndex index) {
+		this.index = index;
+		return this;
+	}
+	
+	/**
+	 * Adds the specified include patterns to the search condition. Once any 
+	 * include pattern is added, only the classes matching to one of them are 
+	 * read from the search path; the other directory subtrees are not walked 
+	 * and the other jar entries are skipped by name before they are read. 
+	 * A pattern is a package prefix (e.g. <code>com.example.plugins</code>) 
+	 * or a glob over the binary class name, where <code>*</code> matches any 
+	 * characters except '.' and <code>**</code> matches any characters (e.g. 
+	 * <code>com.example.plugins.*</code>). A pattern matches a class when it 
+	 * matches the class name or any of the enclosing package names. 
+	 * While any pattern is in effect, the jar files are not recorded in 
+	 * {@link ClassIndex} (the recorded ones are still used).
+	 * 
+	 * @param patterns The include patterns.
+	 * @return This {@code ClassResolver}.
+	 */
+	public ClassResolver<T> include(String... patterns) {
+		synchronized (this) {
+			filter = filter.include(patterns);
+			snapshot = null;
+			names = null;
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Adds the specified exclude patterns to the search condition. The classes 
+	 * matching to any exclude pattern are never read from the search path, 
+	 * even if they match to an include pattern. See 
+	 * {@link #include(String...)} for the pattern syntax.
+	 * 
+	 * @param patterns The exclude patterns.
+	 * @return This {@code ClassResolver}.
+	 */
+	public ClassResolver<T> exclude(String... patterns) {
+		synchronized (this) {
+			filter = filter.exclude(patterns);
+			snapshot = null;
+			names = null;
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Returns the include patterns.
+	 * 
+	 * @return The include patterns.
+	 */
+	public List<String> includes() {
+		return filter.includes();
+	}
+	
+	/**
+	 * Returns the exclude patterns.
+	 * 
+	 * @return The exclude patterns.
+	 */
+	public List<String> excludes() {
+		return filter.excludes();
+	}
+	
+	/**
+	 * Sets the {@code JarFilePool} the jar files on the search path are 
+	 * acquired from. By default, the {@code JarFilePool} shared by all the 
+	 * {@code ClassResolver}s is used (see {@link JarFilePool#shared()}).
+	 * 
+	 * @param pool {@code JarFilePool} the jar files are acquired from.
+	 * @return This {@code ClassResolver}.
+	 */
+	public ClassResolver<T> pool(JarFilePool pool) {
+		if (pool == null) {
+			throw new IllegalArgumentException("'pool' must not be [" + pool + "]");
+		}
+		
+		close();
+		this.pool = pool;
+		return this;
+	}
+	
+	/**
+	 * Returns the {@code JarFilePool} the jar files on the search path are 
+	 * acquired from.
+	 * 
+	 * @return The {@code JarFilePool}.
+	 */
+	public JarFilePool pool() {
+		return pool;
+	}
+	
+	/**
+	 * Returns the {@code ClassIndex} the jar files on the search path are 
+	 * recorded in.
+	 * 
+	 * @return The {@code ClassIndex} or <code>null</code> if the index is 
+	 * disabled.
+	 */
+	public ClassIndex index() {
+		return index;
+	}
+	
+	/**
+	 * Returns the {@code ExecutorService} the search path is traversed on in 
+	 * parallel mode.
+	 * 
+	 * @return The {@code ExecutorService} or <code>null</code> if this 
+	 * {@code ClassResolver} is in sequential mode.
+	 */
+	public ExecutorService executor() {
+		return executor;
+	}
+	
+	/**
+	 * Returns the {@code ClassLoader} to read the class files of the 
+	 * supertypes which are not on the search path (see 
+	 * {@link #hierarchy()}). By default, this method returns the context class 
+	 * loader of the current thread.
+	 * 
+	 * @return The {@code ClassLoader} to read the class files of the 
+	 * supertypes.
+	 */
+	public ClassLoader classLoader() {
+		return Thread.currentThread().getContextClassLoader();
 	}
 	
 	/**
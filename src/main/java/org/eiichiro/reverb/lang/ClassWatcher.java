@@ -0,0 +1,513 @@
+/*
+ * Copyright (C) 2019 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.reverb.lang;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eiichiro.reverb.lang.ClassResolver.Matcher;
+import org.eiichiro.reverb.lang.Source.DirectorySource;
+
+/**
+ * {@code ClassWatcher} keeps the classes which match to a {@code Matcher} on 
+ * the search path of {@link ClassResolver} up to date, by watching the 
+ * directories on the search path with {@code java.nio.file.WatchService}.
+ * After the first traversal of the whole search path, only the class files 
+ * which are added, modified or removed under the directories are read again 
+ * and the changes are notified to {@link Listener}. The jar files and the 
+ * modules of the <code>jrt:/</code> module image on the search path are 
+ * traversed only once and are not watched.
+ * {@code ClassWatcher} is started by 
+ * {@link ClassResolver#watch(Matcher, Listener)} and watches on its own 
+ * daemon thread until it is closed: 
+ * <pre>
+ * ClassWatcher&lt;Class&lt;?&gt;&gt; watcher = resolver.watch(matcher, new Listener&lt;Class&lt;?&gt;&gt;() {
+ * 
+ *     public void changed(Set&lt;Class&lt;?&gt;&gt; added, Set&lt;Class&lt;?&gt;&gt; modified, Set&lt;Class&lt;?&gt;&gt; removed) { 
+ *         ...
+ *     }
+ * 
+ * }); 
+ * Set&lt;Class&lt;?&gt;&gt; classes = watcher.classes(); 
+ * ...
+ * watcher.close(); 
+ * </pre>
+ * The changes are coalesced for a short delay, so a build which rewrites 
+ * many class files at once is notified as one change. The type hierarchy 
+ * graph and the name index of the {@code ClassResolver} are discarded (see 
+ * {@link ClassResolver#refresh()}) on each change, and the changed classes 
+ * are notified to {@link ClassResolver#changed(String)} before they are 
+ * loaded again (e.g. {@link JLCClassResolver} forgets their load failures).
+ * Note that {@link JLCClassResolver} cannot observe the redefinition of a 
+ * class: the {@code ClassLoader} returns the class it has already defined, 
+ * so the modified class is notified as the class defined first and matched 
+ * as it was. Use {@link BytecodeClassResolver} (or a new 
+ * {@code ClassLoader} on each change) to observe the modified class files.
+ * This class is thread-safe.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class ClassWatcher<T> implements Closeable {
+
+	private static final long DELAY = 100;
+	
+	private final ClassResolver<T> resolver;
+	
+	private final Matcher<T> matcher;
+	
+	private final Listener<T> listener;
+	
+	private final WatchService service;
+	
+	private final Map<WatchKey, Path> keys = new HashMap<WatchKey, Path>();
+	
+	private final Map<Path, DirectorySource> directories = new HashMap<Path, DirectorySource>();
+	
+	/** The class files by their directories. */
+	private final Map<Path, Map<Path, Entry<T>>> files = new HashMap<Path, Map<Path, Entry<T>>>();
+	
+	private final Set<T> fixed = new HashSet<T>();
+	
+	private final Thread thread;
+	
+	private volatile boolean closed;
+	
+	/**
+	 * {@code Entry} is the state of a class file under the watched directories.
+	 */
+	private static class Entry<T> {
+		
+		private final FileTime lastModified;
+		
+		private final long size;
+		
+		/** The class or <code>null</code> if it does not match. */
+		private final T clazz;
+		
+		private Entry(FileTime lastModified, long size, T clazz) {
+			this.lastModified = lastModified;
+			this.size = size;
+			this.clazz = clazz;
+		}
+		
+	}
+	
+	/**
+	 * {@code Listener} is notified of the changes of the classes watched by 
+	 * {@code ClassWatcher}. The listener is invoked on the watching thread, 
+	 * so the next changes are not read until it returns.
+	 * 
+	 * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+	 */
+	public static interface Listener<T> {
+		
+		/**
+		 * Notifies the changes of the classes which match to the 
+		 * {@code Matcher}. A class which does not match any longer after its 
+		 * class file is modified is notified as removed, and vice versa.
+		 * 
+		 * @param added The classes which have been added.
+		 * @param modified The classes whose class files have been modified.
+		 * @param removed The classes which have been removed.
+		 */
+		public void changed(Set<T> added, Set<T> modified, Set<T> removed);
+		
+	}
+	
+	/**
+	 * Constructs a new {@code ClassWatcher} with the specified 
+	 * {@code ClassResolver}, {@code Matcher} and {@code Listener}. The search 
+	 * path is traversed and the directories are registered to the 
+	 * {@code WatchService}, but they are not watched until 
+	 * {@link #start()} is invoked.
+	 * 
+	 * @param resolver {@code ClassResolver} which has the search path.
+	 * @param matcher {@code Matcher} to test each class.
+	 * @param listener {@code Listener} to be notified of the changes.
+	 * @throws IOException If any I/O access fails while traversing the search 
+	 * path.
+	 */
+	ClassWatcher(ClassResolver<T> resolver, Matcher<T> matcher, Listener<T> listener) throws IOException {
+		this.resolver = resolver;
+		this.matcher = matcher;
+		this.listener = listener;
+		service = FileSystems.getDefault().newWatchService();
+		List<Source> sources = new ArrayList<Source>();
+		
+		try {
+			for (Source source : resolver.sources()) {
+				if (source instanceof DirectorySource
+						&& ((DirectorySource) source).base().getFileSystem() == FileSystems.getDefault()
+						&& Files.isDirectory(((DirectorySource) source).base())) {
+					DirectorySource directory = (DirectorySource) source;
+					Path base = directory.base();
+					directories.put(base, directory);
+					update(base, directory, null, null, null);
+				} else {
+					sources.add(source);
+				}
+			}
+			
+			fixed.addAll(resolver.resolve(sources, matcher, resolver.executor()));
+		} catch (IOException e) {
+			service.close();
+			throw e;
+		}
+		
+		thread = new Thread(new Runnable() {
+			
+			public void run() {
+				watch();
+			}
+			
+		}, "reverb-class-watcher");
+		thread.setDaemon(true);
+	}
+	
+	/** Starts watching the directories. */
+	void start() {
+		thread.start();
+	}
+	
+	private void watch() {
+		try {
+			while (!closed) {
+				Set<Path> changed = new LinkedHashSet<Path>();
+				poll(service.take(), changed);
+				WatchKey key;
+				
+				while ((key = service.poll(DELAY, TimeUnit.MILLISECONDS)) != null) {
+					poll(key, changed);
+				}
+				
+				update(changed);
+			}
+			
+		} catch (InterruptedException e) {
+			// Closed.
+		} catch (ClosedWatchServiceException e) {
+			// Closed.
+		}
+	}
+	
+	private void poll(WatchKey key, Set<Path> changed) {
+		Path directory;
+		
+		synchronized (keys) {
+			directory = keys.get(key);
+		}
+		
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (directory == null) {
+				continue;
+			}
+			
+			if (event.kind() == OVERFLOW) {
+				// Some events are lost. The whole directory is read again.
+				changed.add(directory);
+			} else {
+				changed.add(directory.resolve((Path) event.context()));
+			}
+		}
+		
+		if (!key.reset()) {
+			synchronized (keys) {
+				keys.remove(key);
+			}
+		}
+	}
+	
+	private void update(Set<Path> changed) {
+		Set<T> added = new HashSet<T>();
+		Set<T> modified = new HashSet<T>();
+		Set<T> removed = new HashSet<T>();
+		
+		for (Path path : changed) {
+			DirectorySource source = source(path);
+			
+			if (source == null) {
+				continue;
+			}
+			
+			remove(path, removed);
+			
+			try {
+				if (Files.exists(path)) {
+					update(path, source, added, modified, removed);
+				}
+				
+			} catch (IOException e) {
+				// Being written or removed. The next event will follow.
+			}
+		}
+		
+		if (added.isEmpty() && modified.isEmpty() && removed.isEmpty()) {
+			return;
+		}
+		
+		resolver.refresh();
+		
+		try {
+			listener.changed(Collections.unmodifiableSet(added),
+					Collections.unmodifiableSet(modified), Collections.unmodifiableSet(removed));
+		} catch (RuntimeException e) {
+			// The listener's failure must not stop watching.
+		}
+	}
+	
+	private DirectorySource source(Path path) {
+		for (Map.Entry<Path, DirectorySource> entry : directories.entrySet()) {
+			if (path.startsWith(entry.getKey())) {
+				return entry.getValue();
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Reads the specified class file (or the class files under the specified 
+	 * directory) if it has been changed and records the changes. The 
+	 * directories are registered to the {@code WatchService}.
+	 */
+	private void update(Path path, DirectorySource source, Set<T> added,
+			Set<T> modified, Set<T> removed) throws IOException {
+		if (Files.isDirectory(path)) {
+			List<Path> paths = new ArrayList<Path>();
+			walk(path, source, paths);
+			
+			for (Path p : paths) {
+				update(p, source, added, modified, removed);
+			}
+			
+			return;
+		}
+		
+		String name = source.name(path);
+		
+		if (!path.getFileName().toString().endsWith(".class") || !source.filter.accepts(name)) {
+			return;
+		}
+		
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		Entry<T> previous;
+		
+		synchronized (files) {
+			Map<Path, Entry<T>> entries = files.get(path.getParent());
+			previous = (entries == null) ? null : entries.get(path);
+		}
+		
+		if (previous != null && previous.lastModified.equals(attributes.lastModifiedTime())
+				&& previous.size == attributes.size()) {
+			return;
+		}
+		
+		T clazz = null;
+		
+		if (ClassResolver.accepts(matcher, name)) {
+			if (added != null) {
+				// Changed after the first traversal.
+				resolver.changed(name);
+			}
+			
+			clazz = resolver.load(name, new ByteArrayInputStream(Files.readAllBytes(path)));
+			
+			clazz = (clazz != null && matcher.matches(clazz)) ? resolver.matched(clazz) : null;
+		}
+		
+		synchronized (files) {
+			Map<Path, Entry<T>> entries = files.get(path.getParent());
+			
+			if (entries == null) {
+				entries = new HashMap<Path, Entry<T>>();
+				files.put(path.getParent(), entries);
+			}
+			
+			entries.put(path, new Entry<T>(attributes.lastModifiedTime(), attributes.size(), clazz));
+		}
+		
+		if (added == null) {
+			return;
+		}
+		
+		T old = (previous == null) ? null : previous.clazz;
+		
+		if (clazz == null) {
+			if (old != null) {
+				removed.add(old);
+			}
+			
+		} else if (old == null) {
+			added.add(clazz);
+		} else {
+			modified.add(clazz);
+		}
+	}
+	
+	/**
+	 * Registers the specified directory and its subdirectories and lists the 
+	 * files under them.
+	 */
+	private void walk(Path directory, final DirectorySource source, final List<Path> paths) throws IOException {
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+			
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				if (!dir.equals(source.base())
+						&& !source.filter.visits(source.name(dir))) {
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+				
+				synchronized (keys) {
+					// The same key is returned if the directory is already registered.
+					keys.put(dir.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+				}
+				
+				return FileVisitResult.CONTINUE;
+			}
+			
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				paths.add(file);
+				return FileVisitResult.CONTINUE;
+			}
+			
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException exc) {
+				// Removed while walking.
+				return FileVisitResult.CONTINUE;
+			}
+			
+		});
+	}
+	
+	/**
+	 * Removes the classes of the class files which no longer exist at the 
+	 * specified path (or under the specified directory). The class file is 
+	 * looked up directly; only the directories (not the class files) are 
+	 * scanned for the path which is not a known class file.
+	 */
+	private void remove(Path path, Set<T> removed) {
+		synchronized (files) {
+			Map<Path, Entry<T>> entries = files.get(path.getParent());
+			
+			if (entries != null && entries.containsKey(path)) {
+				if (!Files.exists(path)) {
+					remove(entries.remove(path), removed);
+					
+					if (entries.isEmpty()) {
+						files.remove(path.getParent());
+					}
+				}
+				
+				return;
+			}
+			
+			for (Iterator<Map.Entry<Path, Map<Path, Entry<T>>>> i = files.entrySet().iterator(); i.hasNext();) {
+				Map.Entry<Path, Map<Path, Entry<T>>> directory = i.next();
+				
+				if (!directory.getKey().startsWith(path)) {
+					continue;
+				}
+				
+				for (Iterator<Map.Entry<Path, Entry<T>>> iterator = directory.getValue().entrySet().iterator(); iterator.hasNext();) {
+					Map.Entry<Path, Entry<T>> entry = iterator.next();
+					
+					if (!Files.exists(entry.getKey())) {
+						remove(entry.getValue(), removed);
+						iterator.remove();
+					}
+				}
+				
+				if (directory.getValue().isEmpty()) {
+					i.remove();
+				}
+			}
+		}
+	}
+	
+	private void remove(Entry<T> entry, Set<T> removed) {
+		if (entry.clazz != null) {
+			removed.add(entry.clazz);
+		}
+	}
+	
+	/**
+	 * Returns the classes which match to the {@code Matcher} on the search 
+	 * path at present.
+	 * 
+	 * @return The classes which match to the {@code Matcher}.
+	 */
+	public Set<T> classes() {
+		Set<T> classes = new HashSet<T>(fixed);
+		
+		synchronized (files) {
+			for (Map<Path, Entry<T>> entries : files.values()) {
+				for (Entry<T> entry : entries.values()) {
+					if (entry.clazz != null) {
+						classes.add(entry.clazz);
+					}
+				}
+			}
+		}
+		
+		return classes;
+	}
+	
+	/**
+	 * Stops watching the directories and releases the {@code WatchService}.
+	 * No change is notified after this method returns.
+	 */
+	public void close() throws IOException {
+		closed = true;
+		service.close();
+		
+		if (thread.isAlive() && thread != Thread.currentThread()) {
+			thread.interrupt();
+			
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+}
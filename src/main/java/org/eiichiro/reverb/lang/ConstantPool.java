@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2019 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.reverb.lang;
+
+/**
+ * {@code ConstantPool} is the constant pool of a class file (JVMS 4.4) read 
+ * from the class file bytes. Only the offsets and the tags of the entries are 
+ * computed on the construction and the entries are compared against the 
+ * queries on the raw bytes without decoding them into strings, so the 
+ * references to a class, a field or a method are found without loading the 
+ * class.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+final class ConstantPool {
+
+	private static final int MAGIC = 0xCAFEBABE;
+	
+	private static final int UTF8 = 1;
+	
+	private static final int CLASS = 7;
+	
+	private static final int STRING = 8;
+	
+	private static final int FIELDREF = 9;
+	
+	private static final int METHODREF = 10;
+	
+	private static final int INTERFACE_METHODREF = 11;
+	
+	private final byte[] bytes;
+	
+	/** The offsets of the entries (just after the tag). */
+	final int[] offsets;
+	
+	private final byte[] tags;
+	
+	/** The offset just after the constant pool. */
+	final int end;
+	
+	private ConstantPool(byte[] bytes, int[] offsets, byte[] tags, int end) {
+		this.bytes = bytes;
+		this.offsets = offsets;
+		this.tags = tags;
+		this.end = end;
+	}
+	
+	/**
+	 * Reads the constant pool from the specified class file bytes.
+	 * 
+	 * @param bytes The bytes of a class file.
+	 * @return {@code ConstantPool} read from the specified bytes or 
+	 * <code>null</code> if the bytes are not a class file.
+	 */
+	static ConstantPool read(byte[] bytes) {
+		try {
+			if (bytes.length < 10 || u4(bytes, 0) != MAGIC) {
+				return null;
+			}
+			
+			int position = 8;	// magic, minor_version, major_version
+			int count = u2(bytes, position);
+			position += 2;
+			int[] offsets = new int[count];
+			byte[] tags = new byte[count];
+			
+			for (int i = 1; i < count; i++) {
+				int tag = bytes[position++];
+				offsets[i] = position;
+				tags[i] = (byte) tag;
+				
+				switch (tag) {
+				case 1:		// CONSTANT_Utf8
+					position += 2 + u2(bytes, position);
+					break;
+				case 3:		// CONSTANT_Integer
+				case 4:		// CONSTANT_Float
+				case 9:		// CONSTANT_Fieldref
+				case 10:	// CONSTANT_Methodref
+				case 11:	// CONSTANT_InterfaceMethodref
+				case 12:	// CONSTANT_NameAndType
+				case 17:	// CONSTANT_Dynamic
+				case 18:	// CONSTANT_InvokeDynamic
+					position += 4;
+					break;
+				case 5:		// CONSTANT_Long
+				case 6:		// CONSTANT_Double
+					position += 8;
+					i++;
+					break;
+				case 7:		// CONSTANT_Class
+				case 8:		// CONSTANT_String
+				case 16:	// CONSTANT_MethodType
+				case 19:	// CONSTANT_Module
+				case 20:	// CONSTANT_Package
+					position += 2;
+					break;
+				case 15:	// CONSTANT_MethodHandle
+					position += 3;
+					break;
+				default:
+					return null;
+				}
+			}
+			
+			if (position > bytes.length) {
+				return null;
+			}
+			
+			return new ConstantPool(bytes, offsets, tags, position);
+		} catch (IndexOutOfBoundsException e) {
+			// Truncated or malformed class file.
+			return null;
+		}
+	}
+	
+	/**
+	 * Indicates whether the class file refers to the specified type or not.
+	 * The type is referred to if a {@code CONSTANT_Class} entry names it or 
+	 * any descriptor or signature (e.g. the field types, the method 
+	 * parameter and return types, the annotation types and the type 
+	 * arguments) contains it. The string literals are not taken into account.
+	 * 
+	 * @param type The internal name of the type in modified UTF-8 (e.g.
+	 * <code>java/lang/String</code>).
+	 * @return <code>true</code> If the class file refers to the specified 
+	 * type or <code>false</code> if the constant pool is malformed.
+	 */
+	boolean references(byte[] type) {
+		try {
+			boolean[] strings = new boolean[offsets.length];
+			
+			for (int i = 1; i < offsets.length; i++) {
+				if (tags[i] == CLASS && equals(u2(bytes, offsets[i]), type)) {
+					return true;
+				} else if (tags[i] == STRING) {
+					strings[u2(bytes, offsets[i])] = true;
+				}
+			}
+			
+			for (int i = 1; i < offsets.length; i++) {
+				if (tags[i] == UTF8 && !strings[i] && contains(i, type)) {
+					return true;
+				}
+			}
+			
+			return false;
+		} catch (IndexOutOfBoundsException e) {
+			// The constant pool index out of range.
+			return false;
+		}
+	}
+	
+	/**
+	 * Indicates whether the class file refers to the specified field or 
+	 * method or not. The member is referred to if a 
+	 * {@code CONSTANT_Fieldref}, {@code CONSTANT_Methodref} or 
+	 * {@code CONSTANT_InterfaceMethodref} entry (used by the field access, 
+	 * the method invocation and the method handle) names it. The owner is 
+	 * the class named in the entry by the compiler, that is, the static type 
+	 * of the receiver, which is not always the declaring class.
+	 * 
+	 * @param owner The internal name of the owner class in modified UTF-8.
+	 * @param name The name of the member in modified UTF-8.
+	 * @param descriptor The descriptor of the member in modified UTF-8 or 
+	 * <code>null</code> to match any descriptor (e.g. all the overloads).
+	 * @return <code>true</code> If the class file refers to the specified 
+	 * member or <code>false</code> if the constant pool is malformed.
+	 */
+	boolean references(byte[] owner, byte[] name, byte[] descriptor) {
+		try {
+			for (int i = 1; i < offsets.length; i++) {
+				int tag = tags[i];
+				
+				if (tag != FIELDREF && tag != METHODREF && tag != INTERFACE_METHODREF) {
+					continue;
+				}
+				
+				int nameAndType = offsets[u2(bytes, offsets[i] + 2)];
+				
+				if (equals(u2(bytes, nameAndType), name)
+						&& (descriptor == null || equals(u2(bytes, nameAndType + 2), descriptor))
+						&& equals(u2(bytes, offsets[u2(bytes, offsets[i])]), owner)) {
+					return true;
+				}
+			}
+			
+			return false;
+		} catch (IndexOutOfBoundsException e) {
+			// The constant pool index out of range.
+			return false;
+		}
+	}
+	
+	/**
+	 * Indicates whether the {@code CONSTANT_Utf8} entry of the specified 
+	 * index is the specified bytes or not.
+	 */
+	private boolean equals(int index, byte[] utf8) {
+		int offset = offsets[index];
+		
+		if (u2(bytes, offset) != utf8.length) {
+			return false;
+		}
+		
+		return matches(offset + 2, utf8);
+	}
+	
+	/**
+	 * Indicates whether the {@code CONSTANT_Utf8} entry of the specified 
+	 * index contains the specified type as a field descriptor 
+	 * (<code>Ltype;</code>) or a parameterized type signature 
+	 * (<code>Ltype&lt;</code>) or not.
+	 */
+	private boolean contains(int index, byte[] type) {
+		int offset = offsets[index];
+		int start = offset + 2;
+		int last = start + u2(bytes, offset) - type.length - 2;
+		
+		for (int i = start; i <= last; i++) {
+			if (bytes[i] == 'L' && matches(i + 1, type)) {
+				byte next = bytes[i + 1 + type.length];
+				
+				if (next == ';' || next == '<') {
+					return true;
+				}
+			}
+		}
+		
+		return false;
+	}
+	
+	private boolean matches(int offset, byte[] utf8) {
+		for (int i = 0; i < utf8.length; i++) {
+			if (bytes[offset + i] != utf8[i]) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Encodes the specified string into modified UTF-8 (JVMS 4.4.7) as the 
+	 * {@code CONSTANT_Utf8} entries are encoded.
+	 * 
+	 * @param string The string to be encoded.
+	 * @return The bytes of the specified string in modified UTF-8.
+	 */
+	static byte[] utf8(String string) {
+		int length = 0;
+		
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			length += (c >= 0x0001 && c <= 0x007F) ? 1 : (c <= 0x07FF) ? 2 : 3;
+		}
+		
+		byte[] bytes = new byte[length];
+		int position = 0;
+		
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			
+			if (c >= 0x0001 && c <= 0x007F) {
+				bytes[position++] = (byte) c;
+			} else if (c <= 0x07FF) {
+				bytes[position++] = (byte) (0xC0 | (c >> 6));
+				bytes[position++] = (byte) (0x80 | (c & 0x3F));
+			} else {
+				bytes[position++] = (byte) (0xE0 | (c >> 12));
+				bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				bytes[position++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		
+		return bytes;
+	}
+	
+	private static int u2(byte[] bytes, int offset) {
+		return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+	}
+	
+	private static int u4(byte[] bytes, int offset) {
+		return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+				| ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+	}
+	
+}
@@ -18,6 +18,7 @@ package org.eiichiro.reverb.lang;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.annotation.Annotation;
+import java.lang.annotation.Inherited;
 import java.net.URL;
 import java.util.Set;
 
@@ -26,6 +27,12 @@ import java.util.Set;
  * {@link ClassResolver} ('JLC' means {@code java.lang.Class}).
  * This class loads the class as {@code java.lang.Class} directly from the 
  * specified search path.
+ * Whether the loaded classes are initialized (their static initializers are 
+ * run) is configured with {@link Initialization} (see 
+ * {@link #initialize(Initialization)}). The classes are matched by reflection 
+ * (e.g. {@code Class#getAnnotations()}, {@code Class#getInterfaces()}) which 
+ * does not need the class to be initialized, so the classes which are never 
+ * used do not have to be initialized.
  * 
  * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
  */
@@ -33,6 +40,30 @@ public class JLCClassResolver extends ClassResolver<Class<?>> {
 
 	private ClassLoader classLoader;
 	
+	private volatile Initialization initialization = Initialization.ALWAYS;
+	
+	/**
+	 * {@code Initialization} represents when the classes loaded by 
+	 * {@code JLCClassResolver} are initialized.
+	 * 
+	 * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+	 */
+	public static enum Initialization {
+		
+		/** The classes are never initialized by {@code JLCClassResolver}. */
+		NEVER, 
+		
+		/**
+		 * Only the classes matched to the query are initialized before they 
+		 * are returned.
+		 */
+		MATCHED, 
+		
+		/** Every class on the search path is initialized as it is loaded. */
+		ALWAYS;
+		
+	}
+	
 	/**
 	 * Constructs a new {@code JLCClassResolver} instance with the specified 
 	 * search paths.
@@ -55,33 +86,134 @@ public class JLCClassResolver extends ClassResolver<Class<?>> {
 		this.classLoader = classLoader;
 	}
 	
+	/**
+	 * Constructs a new {@code JLCClassResolver} instance with the search paths 
+	 * derived from the specified {@code ClassLoader} (see 
+	 * {@link ClassPaths#of(ClassLoader)}). The jar files on the search path 
+	 * are recorded in {@link ClassIndex#shared()}, so they are read only once 
+	 * in the process even if several {@code ClassResolver}s are built over 
+	 * them.
+	 * 
+	 * @param classLoader The {@code ClassLoader} to load classes and to derive 
+	 * the search paths from.
+	 * @return {@code JLCClassResolver} over the search paths of the specified 
+	 * {@code ClassLoader}.
+	 */
+	public static JLCClassResolver of(ClassLoader classLoader) {
+		JLCClassResolver resolver = new JLCClassResolver(classLoader, ClassPaths.of(classLoader));
+		resolver.index(ClassIndex.shared());
+		return resolver;
+	}
+	
 	/**
 	 * Loads the class of the specified name from the specified 
 	 * {@code InputStream} and returns loaded class representation as 
-	 * {@code java.lang.Class}.
+	 * {@code java.lang.Class}. The class which fails to be loaded is recorded 
+	 * in {@link LoadFailures} of the {@code ClassLoader} and is not tried 
+	 * again (see {@link #failures()}) until the record is removed (e.g. by 
+	 * {@link #changed(String)}). The class which only failed to be 
+	 * initialized is still loaded unless the initialization policy is 
+	 * {@link Initialization#ALWAYS}.
 	 * 
 	 * @param clazz The name of the class to be loaded.
 	 * @param stream {@code InputStream} to load a class file.
-	 * @return The loaded class representation as {@code java.lang.Class}.
+	 * @return The loaded class representation as {@code java.lang.Class} or 
+	 * <code>null</code> if the class cannot be loaded.
 	 */
 	@Override
 	protected Class<?> load(String clazz, InputStream stream) {
-//		System.out.println(clazz);
+		LoadFailures failures = LoadFailures.of(classLoader);
+		LoadFailures.Failure failure = failures.get(clazz);
+		
+		if (failure != null && (!failure.initialization() || initialization == Initialization.ALWAYS)) {
+			return null;
+		}
+		
+		long start = System.nanoTime();
+		Class<?> loaded;
 		
 		try {
-			return Class.forName(clazz, true, classLoader);
+			loaded = Class.forName(clazz, false, classLoader);
 		} catch (Exception e) {
-//			System.out.println(e);
+			failures.put(clazz, e, System.nanoTime() - start);
 			return null;
-		} catch (NoClassDefFoundError e) {
-//			System.out.println(e);
+		} catch (LinkageError e) {
+			failures.put(clazz, e, System.nanoTime() - start);
 			return null;
 		}
+		
+		return (initialization == Initialization.ALWAYS) ? initialize(loaded, failures) : loaded;
+	}
+	
+	/**
+	 * Removes the load failure of the specified class from 
+	 * {@link LoadFailures} of the {@code ClassLoader}, so the class is tried 
+	 * to be loaded again from the changed class file.
+	 * 
+	 * @param clazz The binary name of the changed class.
+	 */
+	@Override
+	protected void changed(String clazz) {
+		LoadFailures.of(classLoader).remove(clazz);
+	}
+	
+	/**
+	 * Initializes the specified matched class if the initialization policy is 
+	 * {@link Initialization#MATCHED}. The class which fails to be initialized 
+	 * (e.g. its static initializer throws {@code ExceptionInInitializerError}) 
+	 * is recorded in {@link LoadFailures} and is excluded from the result.
+	 * 
+	 * @param clazz The matched class.
+	 * @return The matched class or <code>null</code> if the class cannot be 
+	 * initialized.
+	 */
+	@Override
+	protected Class<?> matched(Class<?> clazz) {
+		if (initialization != Initialization.MATCHED) {
+			return clazz;
+		}
+		
+		LoadFailures failures = LoadFailures.of(classLoader);
+		
+		if (failures.contains(clazz.getName())) {
+			return null;
+		}
+		
+		return initialize(clazz, failures);
+	}
+	
+	private Class<?> initialize(Class<?> clazz, LoadFailures failures) {
+		long start = System.nanoTime();
+		
+		try {
+			return Class.forName(clazz.getName(), true, clazz.getClassLoader());
+		} catch (Exception e) {
+			failures.put(clazz.getName(), e, System.nanoTime() - start, true);
+			return null;
+		} catch (LinkageError e) {
+			// ExceptionInInitializerError at first, NoClassDefFoundError after.
+			failures.put(clazz.getName(), e, System.nanoTime() - start, true);
+			return null;
+		}
+	}
+	
+	/**
+	 * Loads the class of the specified class file metadata as 
+	 * {@code java.lang.Class}. The class file is not read.
+	 * 
+	 * @param classFile The class file metadata of the class to be loaded.
+	 * @return The loaded class representation as {@code java.lang.Class}.
+	 */
+	@Override
+	protected Class<?> load(ClassFile classFile) {
+		return load(classFile.name(), null);
 	}
 	
 	/**
 	 * Resolves the classes that contains the specified name as 
-	 * {@code java.lang.Class}.
+	 * {@code java.lang.Class}. The names are 
+	 * looked up in the name index (see {@link #names()}) and only the matched 
+	 * classes are loaded.
 	 * 
 	 * @param name The part of the class name.
 	 * @return Classes that contains the specified name as 
@@ -91,19 +223,14 @@ public class JLCClassResolver extends ClassResolver<Class<?>> {
 	 */
 	@Override
 	public Set<Class<?>> resolveByName(final String name) throws IOException {
-		Matcher<Class<?>> matcher = new Matcher<Class<?>>() {
-			
-			public boolean matches(Class<?> clazz) {
-				return clazz.getName().contains(name);
-			}
-			
-		};
-		return resolve(matcher);
+		return classes(names().find(name));
 	}
 	
 	/**
 	 * Resolves the classes that inherits the specified superclass as 
-	 * {@code java.lang.Class}.
+	 * {@code java.lang.Class}. The subclasses are looked up in the type 
+	 * hierarchy graph (see {@link #hierarchy()}) and only the matched classes 
+	 * are loaded.
 	 * 
 	 * @param superclass The superclass being inherited.
 	 * @return Classes that inherits the specified superclass as 
@@ -114,28 +241,16 @@ public class JLCClassResolver extends ClassResolver<Class<?>> {
 	@Override
 	public Set<Class<?>> resolveBySuperclass(final Class<?> superclass)
 			throws IOException {
-		Matcher<Class<?>> matcher = new Matcher<Class<?>>() {
-			
-			public boolean matches(Class<?> clazz) {
-				if (clazz.getSuperclass() != null) {
-					if (clazz.getSuperclass().equals(superclass)) {
-						return true;
-					} else {
-						return matches(clazz.getSuperclass());
-					}
-					
-				} else {
-					return false;
-				}
-			}
-			
-		};
-		return resolve(matcher);
+		return resolveBySupertype(superclass.getName(), false);
 	}
 	
 	/**
 	 * Resolves the classes that implements the specified interface as 
-	 * {@code java.lang.Class}.
+	 * {@code java.lang.Class}. The classes which implement the specified 
+	 * interface through their superclasses or superinterfaces and the 
+	 * subinterfaces of the specified interface are also resolved. 
+	 * The implementors are looked up in the type hierarchy graph (see 
+	 * {@link #hierarchy()}) and only the matched classes are loaded.
 	 * 
 	 * @param interfaceClass The interface being implemented.
 	 * @return Classes that implements the specified interface as 
@@ -146,31 +261,14 @@ public class JLCClassResolver extends ClassResolver<Class<?>> {
 	@Override
 	public Set<Class<?>> resolveByInterface(final Class<?> interfaceClass)
 			throws IOException {
-		Matcher<Class<?>> matcher = new Matcher<Class<?>>() {
-			
-			public boolean matches(Class<?> clazz) {
-				Class<?>[] interfaces = clazz.getInterfaces();
-				
-				for (Class<?> c : interfaces) {
-					if (c.equals(interfaceClass)) {
-						return true;
-					}
-				}
-				
-				if (clazz.getSuperclass() != null) {
-					return matches(clazz.getSuperclass());
-				} else {
-					return false;
-				}
-			}
-			
-		};
-		return resolve(matcher);
+		return resolveBySupertype(interfaceClass.getName(), true);
 	}
 	
 	/**
 	 * Resolves the classes that is annotated by the specified annotation as 
-	 * {@code java.lang.Class}.
+	 * {@code java.lang.Class}. Unless the specified annotation is 
+	 * {@code Inherited}, the jar files whose summaries in {@link ClassIndex} 
+	 * rule out the annotation are skipped without being opened.
 	 * 
 	 * @param annotation The annotation the class being annotated.
 	 * @return Classes that is annotated by the specified annotation as 
@@ -196,7 +294,13 @@ public class JLCClassResolver extends ClassResolver<Class<?>> {
 			}
 			
 		};
-		return resolve(matcher);
+		
+		if (annotation.isAnnotationPresent(Inherited.class)) {
+			// Inherited from the superclass in any jar file.
+			return resolve(matcher);
+		}
+		
+		return resolve(sources(annotation.getName(), false), matcher, executor());
 	}
 	
 	/**
@@ -208,4 +312,42 @@ public class JLCClassResolver extends ClassResolver<Class<?>> {
 		return classLoader;
 	}
 	
+	/**
+	 * Sets the initialization policy of the loaded classes. By default, 
+	 * {@link Initialization#ALWAYS} is used; every class on the search path 
+	 * is initialized as it is loaded.
+	 * 
+	 * @param initialization The initialization policy.
+	 * @return This {@code JLCClassResolver}.
+	 */
+	public JLCClassResolver initialize(Initialization initialization) {
+		if (initialization == null) {
+			throw new IllegalArgumentException("'initialization' must not be [" + initialization + "]");
+		}
+		
+		this.initialization = initialization;
+		return this;
+	}
+	
+	/**
+	 * Returns the initialization policy of the loaded classes.
+	 * 
+	 * @return The initialization policy.
+	 */
+	public Initialization initialization() {
+		return initialization;
+	}
+	
+	/**
+	 * Returns the record of the classes which failed to be loaded by the 
+	 * {@code ClassLoader} of this {@code JLCClassResolver}. The record is 
+	 * shared by all the {@code JLCClassResolver}s with the same 
+	 * {@code ClassLoader}.
+	 * 
+	 * @return The record of the classes which failed to be loaded.
+	 */
+	public LoadFailures failures() {
+		return LoadFailures.of(classLoader);
+	}
+	
 }
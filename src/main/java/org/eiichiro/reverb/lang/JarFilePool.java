@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2019 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.reverb.lang;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@code JarFilePool} is a bounded cache of open jar files 
+ * ({@link JarReader}s) shared by {@link ClassResolver}s.
+ * A {@code JarReader} is acquired with {@link #acquire(File)} and must be 
+ * released with {@link #release(JarReader)} when it is no longer used. The 
+ * acquired {@code JarReader}s are reference counted and never closed while 
+ * they are in use. The released ones are kept open, so the next traversal 
+ * does not open the jar file and parse its central directory again, and are 
+ * closed in least recently used order when the number of the open 
+ * {@code JarReader}s exceeds the capacity. If the jar file has been 
+ * modified since it was opened, it is opened again on the next acquisition.
+ * This class is thread-safe.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class JarFilePool {
+
+	private static final JarFilePool shared = new JarFilePool(64);
+	
+	private final int capacity;
+	
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	
+	private final Map<JarReader, Entry> opened = new IdentityHashMap<JarReader, Entry>();
+	
+	private static class Entry {
+		
+		private final JarReader reader;
+		
+		private final long size;
+		
+		private final long lastModified;
+		
+		private int references;
+		
+		private boolean stale;
+		
+		private Entry(JarReader reader, long size, long lastModified) {
+			this.reader = reader;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+		
+	}
+	
+	/**
+	 * Constructs a new {@code JarFilePool} with the specified capacity.
+	 * 
+	 * @param capacity The maximum number of the {@code JarReader}s kept open 
+	 * while they are not in use.
+	 */
+	public JarFilePool(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("'capacity' must not be [" + capacity + "]");
+		}
+		
+		this.capacity = capacity;
+	}
+	
+	/**
+	 * Returns the {@code JarFilePool} shared by all the {@code ClassResolver}s 
+	 * by default.
+	 * 
+	 * @return The shared {@code JarFilePool}.
+	 */
+	public static JarFilePool shared() {
+		return shared;
+	}
+	
+	/**
+	 * Acquires the open {@code JarReader} of the specified jar file. The jar 
+	 * file is opened (see {@link JarReader#open(File)}) if it is not open yet or 
+	 * if it has been modified since it was opened. The jar file is opened 
+	 * outside the lock of this pool, so the threads acquiring the other jar 
+	 * files do not wait for it; if several threads open the same jar file at 
+	 * once, the first one opened is kept and the others are closed.
+	 * 
+	 * @param file The jar file.
+	 * @return The open {@code JarReader}.
+	 * @throws IOException If any I/O access fails while opening the jar file.
+	 */
+	public JarReader acquire(File file) throws IOException {
+		String key = file.toPath().toAbsolutePath().normalize().toString();
+		long size = file.length();
+		long lastModified = file.lastModified();
+		JarReader reader = null;
+		
+		while (true) {
+			synchronized (this) {
+				Entry entry = entries.get(key);
+				
+				if (entry != null && (entry.size != size || entry.lastModified != lastModified)) {
+					entries.remove(key);
+					entry.stale = true;
+					
+					if (entry.references == 0) {
+						close(entry);
+					}
+					
+					entry = null;
+				}
+				
+				if (entry == null && reader != null) {
+					entry = new Entry(reader, size, lastModified);
+					entries.put(key, entry);
+					opened.put(reader, entry);
+					reader = null;
+				}
+				
+				if (entry != null) {
+					entry.references++;
+					evict();
+					
+					if (reader != null) {
+						// Opened by another thread meanwhile.
+						close(reader);
+					}
+					
+					return entry.reader;
+				}
+			}
+			
+			reader = JarReader.open(file);
+		}
+	}
+	
+	/**
+	 * Releases the specified {@code JarReader} acquired from this pool. The 
+	 * {@code JarReader} is kept open until it is evicted.
+	 * 
+	 * @param reader The {@code JarReader} to be released.
+	 */
+	public synchronized void release(JarReader reader) {
+		Entry entry = opened.get(reader);
+		
+		if (entry == null || entry.references == 0) {
+			return;
+		}
+		
+		entry.references--;
+		
+		if (entry.references == 0 && entry.stale) {
+			close(entry);
+		} else {
+			evict();
+		}
+	}
+	
+	/**
+	 * Closes all the {@code JarReader}s which are not in use. The ones in use 
+	 * are closed when they are released.
+	 */
+	public synchronized void clear() {
+		for (Entry entry : entries.values()) {
+			entry.stale = true;
+			
+			if (entry.references == 0) {
+				close(entry);
+			}
+		}
+		
+		entries.clear();
+	}
+	
+	/**
+	 * Returns the number of the open {@code JarReader}s in this pool 
+	 * (including the ones in use).
+	 * 
+	 * @return The number of the open {@code JarReader}s.
+	 */
+	public synchronized int size() {
+		return opened.size();
+	}
+	
+	/**
+	 * Returns the maximum number of the {@code JarReader}s kept open while 
+	 * they are not in use.
+	 * 
+	 * @return The capacity of this pool.
+	 */
+	public int capacity() {
+		return capacity;
+	}
+	
+	private void evict() {
+		Iterator<Entry> iterator = entries.values().iterator();
+		int size = entries.size();
+		
+		while (size > capacity && iterator.hasNext()) {
+			Entry entry = iterator.next();
+			
+			if (entry.references == 0) {
+				iterator.remove();
+				close(entry);
+				size--;
+			}
+		}
+	}
+	
+	private void close(Entry entry) {
+		opened.remove(entry.reader);
+		close(entry.reader);
+	}
+	
+	private static void close(JarReader reader) {
+		try {
+			reader.close();
+		} catch (IOException e) {
+			// Nothing to do.
+		}
+	}
+	
+}
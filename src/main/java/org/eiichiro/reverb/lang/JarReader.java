@@ -0,0 +1,593 @@
+/*
+ * Copyright (C) 2019 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.reverb.lang;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * {@code JarReader} is a read-only reader of jar files for {@link ClassResolver}.
+ * {@link #open(File)} memory-maps the jar file and parses its central 
+ * directory directly, so listing the entries needs no per-entry object and 
+ * reading an entry needs neither {@code JarFile} verification nor a stream 
+ * chain: stored entries are read straight from the mapping and deflated ones 
+ * are inflated in one shot into an array of the exact size with an 
+ * {@code Inflater} taken from a shared pool. If the jar file cannot be mapped 
+ * or uses the format this reader does not support (e.g. ZIP64), it is read 
+ * through {@code JarFile} instead. The mapping is released only when it is 
+ * garbage collected, so the jar file is read through {@code JarFile} where 
+ * the deterministic release matters (see {@link #open(File)}).
+ * The entries are addressed by the index in the central directory.
+ * This class is thread-safe.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public abstract class JarReader implements Closeable {
+
+	private static final String MANIFEST = "META-INF/MANIFEST.MF";
+	
+	/** Whether the jar files are memory-mapped or not. */
+	private static final boolean MAPPED = Boolean.parseBoolean(System.getProperty(
+			JarReader.class.getName() + ".mapped", 
+			String.valueOf(!System.getProperty("os.name", "").startsWith("Windows"))));
+	
+	private final File file;
+	
+	private Map<String, Integer> indexes;
+	
+	/**
+	 * Constructs a new {@code JarReader} of the specified jar file.
+	 * 
+	 * @param file The jar file.
+	 */
+	JarReader(File file) {
+		this.file = file;
+	}
+	
+	/**
+	 * Opens the specified jar file. The jar file is memory-mapped if it is 
+	 * possible. The mapping is not released deterministically on 
+	 * {@link #close()} but when it is garbage collected, and the mapped file 
+	 * cannot be replaced or deleted until then on Windows; so the jar file 
+	 * is read through {@code JarFile}, which is released on {@code close()}, 
+	 * on Windows or if the system property 
+	 * <code>org.eiichiro.reverb.lang.JarReader.mapped</code> is 
+	 * <code>false</code> (the property set to <code>true</code> enables the 
+	 * mapping on Windows).
+	 * 
+	 * @param file The jar file.
+	 * @return {@code JarReader} of the specified jar file.
+	 * @throws IOException If any I/O access fails while opening the jar file.
+	 */
+	public static JarReader open(File file) throws IOException {
+		if (!MAPPED) {
+			return new JarFileReader(file);
+		}
+		
+		try {
+			return new MappedJarReader(file);
+		} catch (ZipException e) {
+			// Not supported by the mapped reader (or not a zip file).
+		} catch (IndexOutOfBoundsException e) {
+			// Malformed central directory.
+		} catch (IllegalArgumentException e) {
+			// Malformed central directory.
+		}
+		
+		return new JarFileReader(file);
+	}
+	
+	/**
+	 * Opens the jar file in the specified buffer (e.g. the nested jar file in 
+	 * the fat jar, sliced from the mapping of the outer jar file or read into 
+	 * memory), so its entries are read at random without streaming the jar 
+	 * file.
+	 * 
+	 * @param file The jar file the buffer was read from.
+	 * @param buffer The bytes of the jar file.
+	 * @return {@code JarReader} of the specified buffer or <code>null</code> 
+	 * if the buffer cannot be read by this reader (e.g. ZIP64).
+	 */
+	static JarReader open(File file, ByteBuffer buffer) {
+		try {
+			return new MappedJarReader(file, buffer);
+		} catch (ZipException e) {
+			return null;
+		} catch (IndexOutOfBoundsException e) {
+			return null;
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Returns the jar file.
+	 * 
+	 * @return The jar file.
+	 */
+	public File file() {
+		return file;
+	}
+	
+	/**
+	 * Returns the number of the entries.
+	 * 
+	 * @return The number of the entries.
+	 */
+	public abstract int size();
+	
+	/**
+	 * Returns the name of the entry at the specified index.
+	 * 
+	 * @param index The index of the entry.
+	 * @return The name of the entry.
+	 */
+	public abstract String name(int index);
+	
+	/**
+	 * Opens the entry at the specified index.
+	 * 
+	 * @param index The index of the entry.
+	 * @return The {@code InputStream} of the entry.
+	 * @throws IOException If any I/O access fails while reading the entry.
+	 */
+	public abstract InputStream open(int index) throws IOException;
+	
+	/**
+	 * Returns the bytes of the entry at the specified index as they are in 
+	 * the jar file if the entry is stored uncompressed and the jar file is 
+	 * memory-mapped, so the entry (e.g. the nested jar file) is read in place 
+	 * without being copied.
+	 * 
+	 * @param index The index of the entry.
+	 * @return The read-only bytes of the entry or <code>null</code> if the 
+	 * entry cannot be read in place.
+	 * @throws IOException If any I/O access fails while reading the entry.
+	 */
+	ByteBuffer buffer(int index) throws IOException {
+		return null;
+	}
+	
+	/**
+	 * Returns the index of the entry of the specified name.
+	 * 
+	 * @param name The name of the entry.
+	 * @return The index of the entry or <code>-1</code> if the entry is not 
+	 * found.
+	 */
+	public int find(String name) {
+		Map<String, Integer> indexes;
+		
+		synchronized (this) {
+			if (this.indexes == null) {
+				this.indexes = new HashMap<String, Integer>(size() * 2);
+				
+				for (int i = size() - 1; i >= 0; i--) {
+					this.indexes.put(name(i), i);
+				}
+			}
+			
+			indexes = this.indexes;
+		}
+		
+		Integer index = indexes.get(name);
+		return (index == null) ? -1 : index;
+	}
+	
+	/**
+	 * Returns the manifest of the jar file.
+	 * 
+	 * @return The manifest or <code>null</code> if the jar file does not have 
+	 * it.
+	 * @throws IOException If any I/O access fails while reading the manifest.
+	 */
+	public Manifest manifest() throws IOException {
+		int index = find(MANIFEST);
+		
+		if (index == -1) {
+			return null;
+		}
+		
+		InputStream stream = open(index);
+		
+		try {
+			return new Manifest(stream);
+		} finally {
+			stream.close();
+		}
+	}
+	
+	/**
+	 * {@code MappedJarReader} reads the memory-mapped jar file.
+	 * 
+	 * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+	 */
+	static class MappedJarReader extends JarReader {
+		
+		private static final int LOCAL = 0x04034b50;
+		
+		private static final int CENTRAL = 0x02014b50;
+		
+		private static final int END = 0x06054b50;
+		
+		private static final int STORED = 0;
+		
+		private static final int DEFLATED = 8;
+		
+		/** The entries larger than this are inflated as a stream. */
+		private static final int STREAM = 1024 * 1024;
+		
+		private static final int INFLATERS = 16;
+		
+		private static final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<Inflater>();
+		
+		private static final AtomicInteger pooled = new AtomicInteger();
+		
+		private static final Charset UTF_8 = Charset.forName("UTF-8");
+		
+		private static final ThreadLocal<byte[]> inputs = new ThreadLocal<byte[]>();
+		
+		private volatile ByteBuffer buffer;
+		
+		private final String[] names;
+		
+		private final int[] methods;
+		
+		private final int[] compressed;
+		
+		private final int[] sizes;
+		
+		private final int[] offsets;
+		
+		/**
+		 * Maps the specified jar file and parses its central directory.
+		 * 
+		 * @param file The jar file.
+		 * @throws ZipException If the jar file is not supported by this reader.
+		 * @throws IOException If any I/O access fails while reading the jar 
+		 * file.
+		 */
+		MappedJarReader(File file) throws IOException {
+			this(file, map(file));
+		}
+		
+		/**
+		 * Parses the central directory of the jar file in the specified 
+		 * buffer.
+		 * 
+		 * @param file The jar file.
+		 * @param buffer The bytes of the jar file.
+		 * @throws ZipException If the jar file is not supported by this reader.
+		 */
+		MappedJarReader(File file, ByteBuffer buffer) throws ZipException {
+			super(file);
+			this.buffer = buffer;
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			int end = end();
+			int count = buffer.getShort(end + 10) & 0xFFFF;
+			long length = buffer.getInt(end + 12) & 0xFFFFFFFFL;
+			long offset = buffer.getInt(end + 16) & 0xFFFFFFFFL;
+			
+			if (count == 0xFFFF || offset == 0xFFFFFFFFL) {
+				throw new ZipException("ZIP64 is not supported [" + file + "]");
+			}
+			
+			// The bytes prepended to the zip file (e.g. a launch script) shift 
+			// all the offsets.
+			int prefix = (int) (end - length - offset);
+			
+			if (prefix < 0) {
+				throw new ZipException("Invalid central directory [" + file + "]");
+			}
+			
+			names = new String[count];
+			methods = new int[count];
+			compressed = new int[count];
+			sizes = new int[count];
+			offsets = new int[count];
+			int position = (int) offset + prefix;
+			byte[] bytes = new byte[256];
+			
+			for (int i = 0; i < count; i++) {
+				if (position + 46 > buffer.limit() || buffer.getInt(position) != CENTRAL) {
+					throw new ZipException("Invalid central directory [" + file + "]");
+				}
+				
+				methods[i] = buffer.getShort(position + 10) & 0xFFFF;
+				compressed[i] = buffer.getInt(position + 20);
+				sizes[i] = buffer.getInt(position + 24);
+				offsets[i] = buffer.getInt(position + 42) + prefix;
+				int name = buffer.getShort(position + 28) & 0xFFFF;
+				int extra = buffer.getShort(position + 30) & 0xFFFF;
+				int comment = buffer.getShort(position + 32) & 0xFFFF;
+				
+				if (compressed[i] < 0 || sizes[i] < 0 || offsets[i] < 0) {
+					throw new ZipException("ZIP64 is not supported [" + file + "]");
+				}
+				
+				if (offsets[i] + 30L > buffer.limit() || position + 46L + name > buffer.limit()) {
+					throw new ZipException("Invalid central directory [" + file + "]");
+				}
+				
+				if (bytes.length < name) {
+					bytes = new byte[name];
+				}
+				
+				ByteBuffer duplicate = buffer.duplicate();
+				duplicate.position(position + 46);
+				duplicate.get(bytes, 0, name);
+				names[i] = new String(bytes, 0, name, UTF_8);
+				position += 46 + name + extra + comment;
+			}
+		}
+		
+		private static MappedByteBuffer map(File file) throws IOException {
+			FileInputStream stream = new FileInputStream(file);
+			
+			try {
+				FileChannel channel = stream.getChannel();
+				
+				if (channel.size() > Integer.MAX_VALUE) {
+					throw new ZipException("Too large to be mapped [" + file + "]");
+				}
+				
+				return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			} finally {
+				stream.close();
+			}
+		}
+		
+		/** Finds the end of central directory record. */
+		private int end() throws ZipException {
+			int limit = buffer.limit();
+			
+			for (int position = limit - 22; position >= Math.max(0, limit - 22 - 0xFFFF); position--) {
+				if (buffer.getInt(position) == END) {
+					return position;
+				}
+			}
+			
+			throw new ZipException("End of central directory not found [" + file() + "]");
+		}
+		
+		@Override
+		public int size() {
+			return names.length;
+		}
+		
+		@Override
+		public String name(int index) {
+			return names[index];
+		}
+		
+		@Override
+		public InputStream open(int index) throws IOException {
+			ByteBuffer data = data(index);
+			
+			if (methods[index] == STORED) {
+				return new BufferInputStream(data.slice());
+			} else if (methods[index] != DEFLATED) {
+				throw new ZipException("Unsupported compression method ["
+						+ methods[index] + "] [" + names[index] + "]");
+			}
+			
+			if (sizes[index] > STREAM) {
+				final Inflater inflater = inflater();
+				return new InflaterInputStream(new BufferInputStream(data.slice()), inflater, 8192) {
+					
+					private boolean closed = false;
+					
+					@Override
+					public void close() throws IOException {
+						if (!closed) {
+							closed = true;
+							release(inflater);
+						}
+					}
+					
+				};
+			}
+			
+			return new BufferInputStream(ByteBuffer.wrap(inflate(data, sizes[index])));
+		}
+		
+		@Override
+		ByteBuffer buffer(int index) throws IOException {
+			return (methods[index] == STORED) ? data(index).slice().asReadOnlyBuffer() : null;
+		}
+		
+		/** Returns the buffer positioned at the (compressed) data of the entry. */
+		private ByteBuffer data(int index) throws IOException {
+			ByteBuffer buffer = this.buffer;
+			
+			if (buffer == null) {
+				throw new IOException("Closed [" + file() + "]");
+			}
+			
+			int offset = offsets[index];
+			
+			if (offset + 30 > buffer.limit() || buffer.getInt(offset) != LOCAL) {
+				throw new ZipException("Invalid local header [" + names[index] + "]");
+			}
+			
+			int position = offset + 30 + (buffer.getShort(offset + 26) & 0xFFFF)
+					+ (buffer.getShort(offset + 28) & 0xFFFF);
+					
+			// The sizes in the central directory are not trusted to be within 
+			// the buffer (e.g. a truncated or corrupt jar file).
+			if (position + (long) compressed[index] > buffer.limit()) {
+				throw new ZipException("Truncated entry [" + names[index] + "]");
+			}
+			
+			ByteBuffer data = buffer.duplicate();
+			data.position(position);
+			data.limit(position + compressed[index]);
+			return data;
+		}
+		
+		private byte[] inflate(ByteBuffer data, int size) throws IOException {
+			int length = data.remaining();
+			byte[] input = inputs.get();
+			
+			if (input == null || input.length < length + 1) {
+				input = new byte[Math.max(length + 1, 8192)];
+				inputs.set(input);
+			}
+			
+			data.get(input, 0, length);
+			// The extra dummy byte is required by the 'nowrap' Inflater.
+			input[length] = 0;
+			// Not pooled: the array is handed out as the entry's bytes and may 
+			// be held after the next entry is read on the same thread.
+			byte[] output = new byte[size];
+			Inflater inflater = inflater();
+			
+			try {
+				inflater.setInput(input, 0, length + 1);
+				int inflated = 0;
+				
+				while (inflated < size && !inflater.finished()) {
+					int n = inflater.inflate(output, inflated, size - inflated);
+					
+					if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+						throw new ZipException("Truncated entry");
+					}
+					
+					inflated += n;
+				}
+				
+				if (inflated != size) {
+					throw new ZipException("Invalid entry size");
+				}
+				
+				return output;
+			} catch (DataFormatException e) {
+				throw new ZipException(e.getMessage());
+			} finally {
+				release(inflater);
+			}
+		}
+		
+		private static Inflater inflater() {
+			Inflater inflater = inflaters.poll();
+			
+			if (inflater == null) {
+				return new Inflater(true);
+			}
+			
+			pooled.decrementAndGet();
+			return inflater;
+		}
+		
+		private static void release(Inflater inflater) {
+			inflater.reset();
+			
+			if (pooled.incrementAndGet() <= INFLATERS) {
+				inflaters.offer(inflater);
+			} else {
+				pooled.decrementAndGet();
+				inflater.end();
+			}
+		}
+		
+		/**
+		 * Drops the reference to the mapping, so no entry is opened any 
+		 * longer. The mapping itself is unmapped when it and the streams 
+		 * opened from it are garbage collected (Java has no safe way to 
+		 * unmap it explicitly), so the jar file may stay locked until then 
+		 * on some platforms (see {@link JarReader#open(File)}).
+		 */
+		public void close() {
+			buffer = null;
+		}
+		
+	}
+	
+	/**
+	 * {@code JarFileReader} reads the jar file through {@code JarFile}.
+	 * 
+	 * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+	 */
+	static class JarFileReader extends JarReader {
+		
+		private final JarFile jarFile;
+		
+		private final List<JarEntry> entries;
+		
+		JarFileReader(File file) throws IOException {
+			super(file);
+			jarFile = new JarFile(file);
+			Enumeration<JarEntry> entries = jarFile.entries();
+			List<JarEntry> list = new ArrayList<JarEntry>();
+			
+			while (entries.hasMoreElements()) {
+				list.add(entries.nextElement());
+			}
+			
+			this.entries = Collections.unmodifiableList(list);
+		}
+		
+		@Override
+		public int size() {
+			return entries.size();
+		}
+		
+		@Override
+		public String name(int index) {
+			return entries.get(index).getName();
+		}
+		
+		@Override
+		public InputStream open(int index) throws IOException {
+			return jarFile.getInputStream(entries.get(index));
+		}
+		
+		@Override
+		public Manifest manifest() throws IOException {
+			return jarFile.getManifest();
+		}
+		
+		public void close() throws IOException {
+			jarFile.close();
+		}
+		
+	}
+	
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2019 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.reverb.lang;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code LoadFailures} is the record of the classes which failed to be loaded 
+ * by a {@code ClassLoader} on {@link JLCClassResolver}.
+ * The failed class loading (e.g. the missing dependency) is the slowest part 
+ * of the traversal because of the linkage and the stack trace creation, and 
+ * it fails again on every traversal. So {@code JLCClassResolver} records the 
+ * failed class names with the reasons per {@code ClassLoader} and never tries 
+ * to load them again with the same {@code ClassLoader}. The record is kept as 
+ * long as the {@code ClassLoader} is reachable, and {@link #clear()} or 
+ * {@link #remove(String)} makes the classes tried again. The record must not 
+ * outlive a change of the classes it was taken from: when the class files 
+ * or their dependencies visible to the {@code ClassLoader} are changed (e.g. 
+ * the missing dependency has been added), the failures must be removed, or 
+ * the fixed classes are never loaded (see 
+ * {@link ClassResolver#changed(String)}).
+ * The record is also a diagnostics report of the failures, which lists the 
+ * failed classes in descending order of the time spent: 
+ * <pre>
+ * LoadFailures.of(classLoader).to(System.out); 
+ * </pre>
+ * This class is thread-safe.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class LoadFailures {
+
+	private static final Map<ClassLoader, LoadFailures> loaders = new WeakHashMap<ClassLoader, LoadFailures>();
+	
+	private static final LoadFailures bootstrap = new LoadFailures();
+	
+	private final Map<String, Failure> failures = new ConcurrentHashMap<String, Failure>();
+	
+	/**
+	 * {@code Failure} is the failure of the class loading.
+	 * 
+	 * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+	 */
+	public static class Failure {
+		
+		private final String name;
+		
+		private final String reason;
+		
+		private final long elapsed;
+		
+		private final boolean initialization;
+		
+		private Failure(String name, Throwable cause, long elapsed, boolean initialization) {
+			this.name = name;
+			this.reason = (cause.getMessage() == null) ? cause.getClass().getName()
+					: cause.getClass().getName() + ": " + cause.getMessage();
+			this.elapsed = elapsed;
+			this.initialization = initialization;
+		}
+		
+		/**
+		 * Returns the binary name of the class.
+		 * 
+		 * @return The binary name of the class.
+		 */
+		public String name() {
+			return name;
+		}
+		
+		/**
+		 * Returns the reason of the failure (the class name and the message of 
+		 * the thrown exception or error).
+		 * 
+		 * @return The reason of the failure.
+		 */
+		public String reason() {
+			return reason;
+		}
+		
+		/**
+		 * Returns the time spent to fail the class loading in nanoseconds.
+		 * 
+		 * @return The time spent to fail in nanoseconds.
+		 */
+		public long elapsed() {
+			return elapsed;
+		}
+		
+		/**
+		 * Indicates whether the class has been loaded but failed to be 
+		 * initialized (e.g. its static initializer has thrown an exception) 
+		 * or not. The class which failed to be initialized can still be 
+		 * loaded without initialization.
+		 * 
+		 * @return <code>true</code> If the class failed to be initialized.
+		 */
+		public boolean initialization() {
+			return initialization;
+		}
+		
+		@Override
+		public String toString() {
+			return name + " (" + TimeUnit.NANOSECONDS.toMicros(elapsed) + "us): " + reason;
+		}
+		
+	}
+	
+	LoadFailures() {}
+	
+	/**
+	 * Returns the {@code LoadFailures} of the specified {@code ClassLoader}.
+	 * 
+	 * @param classLoader The {@code ClassLoader} or <code>null</code> for the 
+	 * bootstrap class loader.
+	 * @return The {@code LoadFailures} of the specified {@code ClassLoader}.
+	 */
+	public static LoadFailures of(ClassLoader classLoader) {
+		if (classLoader == null) {
+			return bootstrap;
+		}
+		
+		synchronized (loaders) {
+			LoadFailures failures = loaders.get(classLoader);
+			
+			if (failures == null) {
+				failures = new LoadFailures();
+				loaders.put(classLoader, failures);
+			}
+			
+			return failures;
+		}
+	}
+	
+	/**
+	 * Indicates whether the class of the specified name has failed to be 
+	 * loaded or not.
+	 * 
+	 * @param name The binary name of the class.
+	 * @return <code>true</code> If the class has failed to be loaded.
+	 */
+	public boolean contains(String name) {
+		return failures.containsKey(name);
+	}
+	
+	/**
+	 * Returns the failure of the class of the specified name.
+	 * 
+	 * @param name The binary name of the class.
+	 * @return The failure or <code>null</code> if the class has not failed.
+	 */
+	public Failure get(String name) {
+		return failures.get(name);
+	}
+	
+	/**
+	 * Records the failure of the class of the specified name.
+	 * 
+	 * @param name The binary name of the class.
+	 * @param cause The exception or error thrown.
+	 * @param elapsed The time spent to fail in nanoseconds.
+	 */
+	void put(String name, Throwable cause, long elapsed) {
+		put(name, cause, elapsed, false);
+	}
+	
+	/**
+	 * Records the failure of the class of the specified name.
+	 * 
+	 * @param name The binary name of the class.
+	 * @param cause The exception or error thrown.
+	 * @param elapsed The time spent to fail in nanoseconds.
+	 * @param initialization Whether the class has been loaded but failed to 
+	 * be initialized.
+	 */
+	void put(String name, Throwable cause, long elapsed, boolean initialization) {
+		failures.put(name, new Failure(name, cause, elapsed, initialization));
+	}
+	
+	/**
+	 * Removes the failure of the class of the specified name, so the class is 
+	 * tried to be loaded again.
+	 * 
+	 * @param name The binary name of the class.
+	 * @return <code>true</code> If the failure has been removed.
+	 */
+	public boolean remove(String name) {
+		return failures.remove(name) != null;
+	}
+	
+	/** Removes all the failures, so the classes are tried to be loaded again. */
+	public void clear() {
+		failures.clear();
+	}
+	
+	/**
+	 * Returns the number of the failed classes.
+	 * 
+	 * @return The number of the failed classes.
+	 */
+	public int size() {
+		return failures.size();
+	}
+	
+	/**
+	 * Returns the failures in descending order of the time spent.
+	 * 
+	 * @return The failures.
+	 */
+	public List<Failure> failures() {
+		List<Failure> failures = new ArrayList<Failure>(this.failures.values());
+		Collections.sort(failures, new Comparator<Failure>() {
+			
+			public int compare(Failure o1, Failure o2) {
+				return (o1.elapsed == o2.elapsed) ? o1.name.compareTo(o2.name)
+						: (o1.elapsed < o2.elapsed) ? 1 : -1;
+			}
+			
+		});
+		return failures;
+	}
+	
+	/**
+	 * Prints the diagnostics report of the failures to the specified 
+	 * {@code PrintStream}.
+	 * 
+	 * @param printStream The print stream the report is printed to.
+	 */
+	public void to(PrintStream printStream) {
+		printStream.print(toString());
+	}
+	
+	/**
+	 * Returns the diagnostics report of the failures; the number of the 
+	 * failures and the total time spent, followed by each failure in 
+	 * descending order of the time spent.
+	 * 
+	 * @return The diagnostics report of the failures.
+	 */
+	@Override
+	public String toString() {
+		List<Failure> failures = failures();
+		long total = 0;
+		
+		for (Failure failure : failures) {
+			total += failure.elapsed;
+		}
+		
+		StringBuilder stringBuilder = new StringBuilder();
+		stringBuilder.append(failures.size() + " class(es) failed to be loaded in "
+				+ TimeUnit.NANOSECONDS.toMillis(total) + "ms");
+		
+		for (Failure failure : failures) {
+			stringBuilder.append("\n  " + failure);
+		}
+		
+		return stringBuilder.toString();
+	}
+	
+}
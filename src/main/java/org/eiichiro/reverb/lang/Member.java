@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2019 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.reverb.lang;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@code Member} is a lightweight field or method representation read directly 
+ * from the class file format without loading the declaring class into the JVM.
+ * {@code Member} holds the binary name of the declaring class, the member name, 
+ * the member descriptor (JVMS 4.3), the access flags and the type names of the 
+ * annotations declared in {@code RuntimeVisibleAnnotations} attribute.
+ * Constructors and static initializers are methods named <code>&lt;init&gt;</code>
+ * and <code>&lt;clinit&gt;</code> respectively.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class Member {
+
+	private final String declaringClass;
+	
+	private final String name;
+	
+	private final String descriptor;
+	
+	private final int access;
+	
+	private final List<String> annotations;
+	
+	/**
+	 * Constructs a new {@code Member} instance with the specified member 
+	 * metadata.
+	 * 
+	 * @param declaringClass The binary name of the declaring class.
+	 * @param name The name of the member.
+	 * @param descriptor The field or method descriptor of the member.
+	 * @param access The access flags of the member.
+	 * @param annotations The binary names of the runtime visible annotation 
+	 * types declared on the member.
+	 */
+	public Member(String declaringClass, String name, String descriptor,
+			int access, List<String> annotations) {
+		if (declaringClass == null) {
+			throw new IllegalArgumentException("'declaringClass' must not be [" + declaringClass + "]");
+		}
+		
+		if (name == null) {
+			throw new IllegalArgumentException("'name' must not be [" + name + "]");
+		}
+		
+		if (descriptor == null || descriptor.isEmpty()) {
+			throw new IllegalArgumentException("'descriptor' must not be [" + descriptor + "]");
+		}
+		
+		this.declaringClass = declaringClass;
+		this.name = name;
+		this.descriptor = descriptor;
+		this.access = access;
+		this.annotations = Collections.unmodifiableList(new ArrayList<String>(annotations));
+	}
+	
+	/**
+	 * Returns the binary name of the declaring class.
+	 * 
+	 * @return The binary name of the declaring class.
+	 */
+	public String declaringClass() {
+		return declaringClass;
+	}
+	
+	/**
+	 * Returns the name of the member.
+	 * 
+	 * @return The name of the member.
+	 */
+	public String name() {
+		return name;
+	}
+	
+	/**
+	 * Returns the field or method descriptor of the member 
+	 * (e.g. <code>Ljava/lang/String;</code>, <code>(I)V</code>).
+	 * 
+	 * @return The descriptor of the member.
+	 */
+	public String descriptor() {
+		return descriptor;
+	}
+	
+	/**
+	 * Returns the access flags of the member.
+	 * 
+	 * @return The access flags of the member.
+	 */
+	public int access() {
+		return access;
+	}
+	
+	/**
+	 * Returns the binary names of the runtime visible annotation types 
+	 * declared on the member.
+	 * 
+	 * @return The binary names of the annotation types.
+	 */
+	public List<String> annotations() {
+		return annotations;
+	}
+	
+	/**
+	 * Indicates whether the member is a method (including constructor) or not.
+	 * 
+	 * @return <code>true</code> If the member is a method.
+	 */
+	public boolean isMethod() {
+		return descriptor.charAt(0) == '(';
+	}
+	
+	/**
+	 * Indicates whether the member is a field or not.
+	 * 
+	 * @return <code>true</code> If the member is a field.
+	 */
+	public boolean isField() {
+		return !isMethod();
+	}
+	
+	/**
+	 * Indicates whether the member is a constructor or not.
+	 * 
+	 * @return <code>true</code> If the member is a constructor.
+	 */
+	public boolean isConstructor() {
+		return name.equals("<init>");
+	}
+	
+	@Override
+	public int hashCode() {
+		return (declaringClass.hashCode() * 31 + name.hashCode()) * 31 + descriptor.hashCode();
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		
+		if (!(obj instanceof Member)) {
+			return false;
+		}
+		
+		Member member = (Member) obj;
+		return declaringClass.equals(member.declaringClass) && name.equals(member.name)
+				&& descriptor.equals(member.descriptor);
+	}
+	
+	/**
+	 * Returns the declaring class, the name and the descriptor of the member 
+	 * (e.g. <code>com.example.Service#handle(Ljava/lang/String;)V</code>).
+	 * 
+	 * @return The string representation of the member.
+	 */
+	@Override
+	public String toString() {
+		return declaringClass + "#" + name + (isMethod() ? "" : ":") + descriptor;
+	}
+	
+}
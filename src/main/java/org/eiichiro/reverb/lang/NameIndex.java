@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2019 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.reverb.lang;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@code NameIndex} is the trigram index over the names of the classes on the 
+ * search path of {@link ClassResolver}.
+ * Every three consecutive characters of each name are mapped to the sorted 
+ * list of the names they appear in, so a substring query is answered by 
+ * intersecting the lists of the trigrams of the query and verifying the few 
+ * remaining candidates, instead of testing all the names. The queries shorter 
+ * than three characters are answered by testing all the names.
+ * This class is immutable and thread-safe.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class NameIndex {
+
+	private static final int N = 3;
+	
+	private static final int[] EMPTY = new int[0];
+	
+	private final String[] names;
+	
+	private final Map<String, int[]> grams = new HashMap<String, int[]>();
+	
+	/**
+	 * Constructs a new {@code NameIndex} instance with the specified names.
+	 * 
+	 * @param names The names to be indexed.
+	 */
+	public NameIndex(Iterable<String> names) {
+		Set<String> set = new HashSet<String>();
+		
+		for (String name : names) {
+			set.add(name);
+		}
+		
+		this.names = set.toArray(new String[set.size()]);
+		Arrays.sort(this.names);
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		
+		for (int i = 0; i < this.names.length; i++) {
+			for (String gram : grams(this.names[i])) {
+				Integer count = counts.get(gram);
+				counts.put(gram, (count == null) ? 1 : count + 1);
+			}
+		}
+		
+		Map<String, Integer> positions = new HashMap<String, Integer>(counts.size() * 2);
+		
+		for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+			grams.put(entry.getKey(), new int[entry.getValue()]);
+			positions.put(entry.getKey(), 0);
+		}
+		
+		// Postings are filled in ascending order of the name so they are sorted.
+		for (int i = 0; i < this.names.length; i++) {
+			for (String gram : grams(this.names[i])) {
+				int position = positions.get(gram);
+				grams.get(gram)[position] = i;
+				positions.put(gram, position + 1);
+			}
+		}
+	}
+	
+	private static Set<String> grams(String name) {
+		Set<String> grams = new HashSet<String>();
+		
+		for (int i = 0; i + N <= name.length(); i++) {
+			grams.add(name.substring(i, i + N));
+		}
+		
+		return grams;
+	}
+	
+	/**
+	 * Returns the names which contain the specified part.
+	 * 
+	 * @param part The part of the name.
+	 * @return The names which contain the specified part.
+	 */
+	public Set<String> find(String part) {
+		if (part == null) {
+			throw new IllegalArgumentException("'part' must not be [" + part + "]");
+		}
+		
+		Set<String> result = new HashSet<String>();
+		
+		if (part.length() < N) {
+			for (String name : names) {
+				if (name.contains(part)) {
+					result.add(name);
+				}
+			}
+			
+			return result;
+		}
+		
+		int[] candidates = null;
+		
+		for (String gram : grams(part)) {
+			int[] postings = grams.get(gram);
+			
+			if (postings == null) {
+				return result;
+			}
+			
+			candidates = (candidates == null) ? postings : intersect(candidates, postings);
+			
+			if (candidates.length == 0) {
+				return result;
+			}
+		}
+		
+		for (int i : candidates) {
+			if (names[i].contains(part)) {
+				result.add(names[i]);
+			}
+		}
+		
+		return result;
+	}
+	
+	private static int[] intersect(int[] a, int[] b) {
+		int[] result = new int[Math.min(a.length, b.length)];
+		int i = 0;
+		int j = 0;
+		int k = 0;
+		
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				i++;
+			} else if (a[i] > b[j]) {
+				j++;
+			} else {
+				result[k++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		
+		return (k == 0) ? EMPTY : Arrays.copyOf(result, k);
+	}
+	
+	/**
+	 * Returns the id of the specified name. The ids are the positions of the 
+	 * indexed names in ascending order, from <code>0</code> to 
+	 * {@link #size()} - 1.
+	 * 
+	 * @param name The name.
+	 * @return The id of the specified name or <code>-1</code> if the name is 
+	 * not indexed.
+	 */
+	int id(String name) {
+		int id = Arrays.binarySearch(names, name);
+		return (id < 0) ? -1 : id;
+	}
+	
+	/**
+	 * Returns the number of the indexed names.
+	 * 
+	 * @return The number of the indexed names.
+	 */
+	public int size() {
+		return names.length;
+	}
+	
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2019 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.reverb.lang;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * {@code PackageFilter} decides which classes on the search path of 
+ * {@link ClassResolver} are traversed by their names, before the class files 
+ * are read.
+ * The filter consists of include and exclude patterns. A pattern is a package 
+ * prefix (e.g. <code>com.example.plugins</code>) or a glob over the binary 
+ * class name where <code>*</code> matches any characters except '.', 
+ * <code>**</code> matches any characters and <code>?</code> matches one 
+ * character except '.' (e.g. <code>com.example.*.plugins</code>, 
+ * <code>com.example.plugins.*</code>). A pattern matches a class when it 
+ * matches the class name or any of the enclosing package names.
+ * A class is accepted if it matches any include pattern (or no include 
+ * pattern is specified) and does not match any exclude pattern.
+ * This class is immutable and thread-safe.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+final class PackageFilter {
+
+	/** {@code PackageFilter} which accepts all the classes. */
+	static final PackageFilter ALL = new PackageFilter(
+			Collections.<String>emptyList(), Collections.<String>emptyList());
+	
+	private final List<String> includes;
+	
+	private final List<String> excludes;
+	
+	private final List<Pattern> includePatterns = new ArrayList<Pattern>();
+	
+	private final List<Pattern> excludePatterns = new ArrayList<Pattern>();
+	
+	private PackageFilter(List<String> includes, List<String> excludes) {
+		this.includes = Collections.unmodifiableList(includes);
+		this.excludes = Collections.unmodifiableList(excludes);
+		
+		for (String include : includes) {
+			includePatterns.add(compile(include));
+		}
+		
+		for (String exclude : excludes) {
+			excludePatterns.add(compile(exclude));
+		}
+	}
+	
+	private static Pattern compile(String glob) {
+		StringBuilder regex = new StringBuilder();
+		
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			
+			if (c == '*') {
+				if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+					regex.append(".*");
+					i++;
+				} else {
+					regex.append("[^.]*");
+				}
+				
+			} else if (c == '?') {
+				regex.append("[^.]");
+			} else {
+				regex.append(Pattern.quote(String.valueOf(c)));
+			}
+		}
+		
+		// Matches the class name or any of the enclosing package names.
+		regex.append("(\\..*)?");
+		return Pattern.compile(regex.toString());
+	}
+	
+	/**
+	 * Returns a new {@code PackageFilter} which has the specified include 
+	 * patterns in addition to the ones of this filter.
+	 * 
+	 * @param patterns The include patterns.
+	 * @return The new {@code PackageFilter}.
+	 */
+	PackageFilter include(String... patterns) {
+		return new PackageFilter(concat(includes, patterns), excludes);
+	}
+	
+	/**
+	 * Returns a new {@code PackageFilter} which has the specified exclude 
+	 * patterns in addition to the ones of this filter.
+	 * 
+	 * @param patterns The exclude patterns.
+	 * @return The new {@code PackageFilter}.
+	 */
+	PackageFilter exclude(String... patterns) {
+		return new PackageFilter(includes, concat(excludes, patterns));
+	}
+	
+	private static List<String> concat(List<String> list, String... patterns) {
+		if (patterns == null) {
+			throw new IllegalArgumentException("'patterns' must not be [" + patterns + "]");
+		}
+		
+		List<String> result = new ArrayList<String>(list);
+		
+		for (String pattern : patterns) {
+			if (pattern == null || pattern.isEmpty()) {
+				throw new IllegalArgumentException("'pattern' must not be [" + pattern + "]");
+			}
+			
+			result.add(pattern);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Returns the include patterns.
+	 * 
+	 * @return The include patterns.
+	 */
+	List<String> includes() {
+		return includes;
+	}
+	
+	/**
+	 * Returns the exclude patterns.
+	 * 
+	 * @return The exclude patterns.
+	 */
+	List<String> excludes() {
+		return excludes;
+	}
+	
+	/**
+	 * Indicates whether this filter accepts all the classes or not.
+	 * 
+	 * @return <code>true</code> If this filter has no pattern.
+	 */
+	boolean all() {
+		return includes.isEmpty() && excludes.isEmpty();
+	}
+	
+	/**
+	 * Indicates whether the class of the specified name is accepted or not.
+	 * 
+	 * @param name The binary name of the class.
+	 * @return <code>true</code> If the class is accepted.
+	 */
+	boolean accepts(String name) {
+		if (all()) {
+			return true;
+		}
+		
+		for (Pattern pattern : excludePatterns) {
+			if (pattern.matcher(name).matches()) {
+				return false;
+			}
+		}
+		
+		if (includePatterns.isEmpty()) {
+			return true;
+		}
+		
+		for (Pattern pattern : includePatterns) {
+			if (pattern.matcher(name).matches()) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Indicates whether the package of the specified name may contain the 
+	 * accepted classes (directly or in its subpackages) or not. If this method 
+	 * returns <code>false</code>, the whole package subtree can be skipped.
+	 * 
+	 * @param name The name of the package ("" for the unnamed package).
+	 * @return <code>false</code> If the package subtree never contains the 
+	 * accepted classes.
+	 */
+	boolean visits(String name) {
+		if (all() || name.isEmpty()) {
+			return true;
+		}
+		
+		for (Pattern pattern : excludePatterns) {
+			if (pattern.matcher(name).matches()) {
+				return false;
+			}
+		}
+		
+		if (includePatterns.isEmpty()) {
+			return true;
+		}
+		
+		for (Pattern pattern : includePatterns) {
+			if (pattern.matcher(name).matches()) {
+				return true;
+			}
+			
+			Matcher matcher = pattern.matcher(name + ".");
+			
+			if (matcher.matches() || matcher.hitEnd()) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	@Override
+	public String toString() {
+		return "includes=" + includes + ", excludes=" + excludes;
+	}
+	
+}
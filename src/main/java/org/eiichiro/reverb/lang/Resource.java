@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2019 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.reverb.lang;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@code Resource} is a class file found on the search path of 
+ * {@link ClassResolver}.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+abstract class Resource {
+
+	/**
+	 * Returns the binary name of the class.
+	 * 
+	 * @return The binary name of the class.
+	 */
+	abstract String name();
+	
+	/**
+	 * Opens {@code InputStream} to read the class file. The caller must close 
+	 * the returned stream.
+	 * 
+	 * @return {@code InputStream} to read the class file.
+	 * @throws IOException If any I/O access fails while opening the class file.
+	 */
+	abstract InputStream open() throws IOException;
+	
+	/**
+	 * Returns the class file metadata if it is already known without reading 
+	 * the class file (e.g. from {@link ClassIndex}).
+	 * 
+	 * @return The class file metadata or <code>null</code> if it is not known.
+	 */
+	ClassFile classFile() {
+		return null;
+	}
+	
+	/**
+	 * Returns the search path entry this class file is found in.
+	 * 
+	 * @return The search path entry or <code>null</code> if it is not known.
+	 */
+	Source source() {
+		return null;
+	}
+	
+	/**
+	 * Returns the ordinal of this class file in its search path entry, with 
+	 * which the search path entry finds the class file again without this 
+	 * {@code Resource} being kept (see {@link Source#resource(String, int)}).
+	 * 
+	 * @return The ordinal of this class file or <code>-1</code> if the class 
+	 * file is found again by name.
+	 */
+	int entry() {
+		return -1;
+	}
+	
+	/**
+	 * Indicates whether the class file metadata read from this resource should 
+	 * be passed to {@link #record(ClassFile)} or not.
+	 * 
+	 * @return <code>true</code> If the class file metadata should be recorded.
+	 */
+	boolean recording() {
+		return false;
+	}
+	
+	/**
+	 * Records the class file metadata read from this resource.
+	 * 
+	 * @param classFile The class file metadata read from this resource.
+	 */
+	void record(ClassFile classFile) {}
+	
+	/**
+	 * Returns the {@code Resource} which delegates to the specified 
+	 * {@code Resource} and whose class file metadata is known as the specified 
+	 * {@code ClassFile}.
+	 * 
+	 * @param resource The {@code Resource} to be delegated to.
+	 * @param classFile The class file metadata of the specified resource.
+	 * @return The {@code Resource} whose class file metadata is known.
+	 */
+	static Resource of(final Resource resource, final ClassFile classFile) {
+		if (resource.classFile() == classFile) {
+			return resource;
+		}
+		
+		return new Resource() {
+			
+			@Override
+			String name() {
+				return resource.name();
+			}
+			
+			@Override
+			InputStream open() throws IOException {
+				return resource.open();
+			}
+			
+			@Override
+			ClassFile classFile() {
+				return classFile;
+			}
+			
+			@Override
+			Source source() {
+				return resource.source();
+			}
+			
+			@Override
+			int entry() {
+				return resource.entry();
+			}
+			
+		};
+	}
+	
+	@Override
+	public String toString() {
+		return name();
+	}
+	
+}
@@ -0,0 +1,1264 @@
+/*
+ * Copyright (C) 2019 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.reverb.lang;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.jar.Manifest;
+import java.util.jar.Attributes.Name;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * {@code Source} is an entry of the search path of {@link ClassResolver} (a 
+ * directory or a jar file) and iterates the class files it contains.
+ * The iteration is lazy; the class files are listed as the iterator proceeds.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+abstract class Source implements Iterable<Resource> {
+
+	private final URL url;
+	
+	final PackageFilter filter;
+	
+	/**
+	 * Constructs a new {@code Source} with the specified URL and 
+	 * {@code PackageFilter}.
+	 * 
+	 * @param url The URL of this search path entry.
+	 * @param filter {@code PackageFilter} to skip the class files by name.
+	 */
+	Source(URL url, PackageFilter filter) {
+		this.url = url;
+		this.filter = filter;
+	}
+	
+	/**
+	 * Returns the URL of this search path entry.
+	 * 
+	 * @return The URL of this search path entry.
+	 */
+	URL url() {
+		return url;
+	}
+	
+	/**
+	 * Returns the class file of the specified class found again by the 
+	 * ordinal taken from {@link Resource#entry()}, so the class files listed 
+	 * once are kept as the ordinals instead of {@code Resource}s. The class 
+	 * file is found by name if the ordinal no longer points to it (e.g. the 
+	 * jar file has been changed).
+	 * 
+	 * @param name The binary name of the class.
+	 * @param entry The ordinal of the class file in this search path entry.
+	 * @return The class file of the specified class.
+	 */
+	abstract Resource resource(String name, int entry);
+	
+	/**
+	 * Notifies that all the class files in this search path entry have been 
+	 * traversed.
+	 */
+	void commit() {}
+	
+	/**
+	 * Releases the resources held by this search path entry. This search 
+	 * path entry can still be traversed after it is closed; the resources 
+	 * are acquired again as needed.
+	 */
+	void close() {}
+	
+	@Override
+	public String toString() {
+		return url.toString();
+	}
+	
+	/**
+	 * {@code DirectorySource} is a directory on the search path. Class names 
+	 * are derived from the path relative to the base directory. The 
+	 * subdirectories of the packages which {@code PackageFilter} never 
+	 * accepts are not walked. The directory is walked with the NIO directory 
+	 * streams, so the base directory can be on any {@code FileSystem} (e.g. 
+	 * a module in the <code>jrt:/</code> module image).
+	 * 
+	 * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+	 */
+	static class DirectorySource extends Source {
+		
+		private final Path base;
+		
+		/**
+		 * Constructs a new {@code DirectorySource} with the specified URL, 
+		 * base directory and {@code PackageFilter}.
+		 * 
+		 * @param url The URL of this search path entry.
+		 * @param base The base directory.
+		 * @param filter {@code PackageFilter} to skip the class files by name.
+		 */
+		DirectorySource(URL url, File base, PackageFilter filter) {
+			this(url, base.toPath(), filter);
+		}
+		
+		/**
+		 * Constructs a new {@code DirectorySource} with the specified URL, 
+		 * base directory path and {@code PackageFilter}.
+		 * 
+		 * @param url The URL of this search path entry.
+		 * @param base The path of the base directory.
+		 * @param filter {@code PackageFilter} to skip the class files by name.
+		 */
+		DirectorySource(URL url, Path base, PackageFilter filter) {
+			super(url, filter);
+			this.base = base;
+		}
+		
+		/**
+		 * Returns the path of the base directory.
+		 * 
+		 * @return The path of the base directory.
+		 */
+		Path base() {
+			return base;
+		}
+		
+		public Iterator<Resource> iterator() {
+			final Deque<Path> directories = new ArrayDeque<Path>();
+			
+			if (Files.isDirectory(base)) {
+				directories.push(base);
+			}
+			
+			return new Iterator<Resource>() {
+				
+				private final Deque<Path> files = new ArrayDeque<Path>();
+				
+				public boolean hasNext() {
+					while (files.isEmpty() && !directories.isEmpty()) {
+						Path directory = directories.pop();
+						
+						try {
+							DirectoryStream<Path> stream = Files.newDirectoryStream(directory);
+							
+							try {
+								for (Path child : stream) {
+									BasicFileAttributes attributes = Files.readAttributes(child, BasicFileAttributes.class);
+									
+									if (attributes.isDirectory()) {
+										if (filter.visits(name(child))) {
+											directories.push(child);
+										}
+										
+									} else if (child.getFileName().toString().endsWith(".class") 
+											&& filter.accepts(name(child))) {
+										files.push(child);
+									}
+								}
+								
+							} finally {
+								stream.close();
+							}
+							
+						} catch (IOException e) {
+							// Unreadable directory. Skipped as File#listFiles() does.
+						}
+					}
+					
+					return !files.isEmpty();
+				}
+				
+				public Resource next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					
+					Path file = files.pop();
+					return resource(name(file), file);
+				}
+				
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+				
+			};
+		}
+		
+		/** The class file is found again by the path derived from the name. */
+		@Override
+		Resource resource(String name, int entry) {
+			Path file = base;
+			String[] elements = name.split("\\.");
+			
+			for (int i = 0; i < elements.length; i++) {
+				file = file.resolve((i == elements.length - 1) ? elements[i] + ".class" : elements[i]);
+			}
+			
+			return resource(name, file);
+		}
+		
+		private Resource resource(final String name, final Path file) {
+			return new Resource() {
+				
+				@Override
+				String name() {
+					return name;
+				}
+				
+				@Override
+				Source source() {
+					return DirectorySource.this;
+				}
+				
+				@Override
+				InputStream open() throws IOException {
+					return Files.newInputStream(file);
+				}
+				
+			};
+		}
+		
+		/**
+		 * Returns the binary class name (or the package name) of the specified 
+		 * class file (or directory) under the base directory.
+		 */
+		String name(Path path) {
+			StringBuilder name = new StringBuilder();
+			
+			for (Path element : base.relativize(path)) {
+				if (name.length() > 0) {
+					name.append('.');
+				}
+				
+				name.append(element.toString());
+			}
+			
+			if (name.toString().endsWith(".class")) {
+				name.setLength(name.length() - 6);
+			}
+			
+			return name.toString();
+		}
+		
+	}
+	
+	/**
+	 * {@code JarSource} is a jar file on the search path. The jar file is 
+	 * opened lazily; if the jar file is recorded in {@link ClassIndex} and has 
+	 * not been changed, it is never opened unless the class file bytes are 
+	 * needed. The entries which {@code PackageFilter} does not accept are 
+	 * skipped by name before they are read. While a {@code PackageFilter} 
+	 * is in effect, the jar file is not recorded in {@code ClassIndex} since 
+	 * the traversal does not see all of its class files. The jar file is 
+	 * acquired from {@link JarFilePool} as {@link JarReader} and released on 
+	 * {@link #close()}.
+	 * The fat jars are traversed without extracting anything: the class 
+	 * directory prefixes (e.g. <code>BOOT-INF/classes/</code>) are stripped 
+	 * from the class names and the nested jar files in the library 
+	 * directories (e.g. <code>BOOT-INF/lib/</code>) are read in place from the 
+	 * mapping of the outer jar file if they are stored uncompressed (as the 
+	 * fat jars store them), or read into memory one at a time otherwise.
+	 * The multi-release jars (<code>Multi-Release: true</code> in the manifest) 
+	 * are traversed as the running JDK sees them: the class file under 
+	 * <code>META-INF/versions/N/</code> of the highest version N not greater 
+	 * than the feature release of the running JDK replaces the base one, and 
+	 * the versioned class files are ignored in the other jar files.
+	 * If the jar file contains the build-time class index 
+	 * (<code>META-INF/reverb/index</code>, see {@link ClassIndexer}), the 
+	 * classes are answered from it without opening any class file and the 
+	 * index is recorded in {@code ClassIndex} as it is. The build-time index 
+	 * of the multi-release jar file is ignored.
+	 * 
+	 * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+	 */
+	static class JarSource extends Source {
+		
+		/** The class directories of the fat jars (Spring Boot and WAR). */
+		static final String[] CLASSES = {"BOOT-INF/classes/", "WEB-INF/classes/"};
+		
+		/** The library directories of the fat jars (Spring Boot and WAR). */
+		static final String[] LIBS = {"BOOT-INF/lib/", "WEB-INF/lib/"};
+		
+		/** The directory of the versioned class files of the multi-release jars. */
+		static final String VERSIONS = "META-INF/versions/";
+		
+		/** The feature release of the running JDK (e.g. 8, 11, 17). */
+		static final int RELEASE = release(System.getProperty("java.specification.version"));
+		
+		private final File file;
+		
+		private final ClassIndex index;
+		
+		private final JarFilePool pool;
+		
+		private final ClassIndex.Entry entry;
+		
+		private final boolean embedded;
+		
+		private JarReader reader;
+		
+		private String classPath;
+		
+		private boolean manifest = false;
+		
+		private boolean multiRelease = false;
+		
+		private List<ClassFile> records;
+		
+		/** The nested jar files of the fat jar by the paths of their entries. */
+		private Map<String, String> libs;
+		
+		/** The path of the nested jar file opened last. */
+		private String lib;
+		
+		/** The reader of the nested jar file opened last. */
+		private JarReader nested;
+		
+		/**
+		 * Constructs a new {@code JarSource} with the specified URL, jar file, 
+		 * {@code ClassIndex}, {@code PackageFilter} and {@code JarFilePool}.
+		 * 
+		 * @param url The URL of this search path entry.
+		 * @param file The jar file.
+		 * @param index {@code ClassIndex} the jar file is recorded in or 
+		 * <code>null</code>.
+		 * @param filter {@code PackageFilter} to skip the class files by name.
+		 * @param pool {@code JarFilePool} to acquire the jar file from.
+		 */
+		JarSource(URL url, File file, ClassIndex index, PackageFilter filter, JarFilePool pool) {
+			this(url, file, index, filter, pool, true);
+		}
+		
+		/**
+		 * Constructs a new {@code JarSource} with the specified URL, jar file, 
+		 * {@code ClassIndex}, {@code PackageFilter} and {@code JarFilePool}.
+		 * 
+		 * @param url The URL of this search path entry.
+		 * @param file The jar file.
+		 * @param index {@code ClassIndex} the jar file is recorded in or 
+		 * <code>null</code>.
+		 * @param filter {@code PackageFilter} to skip the class files by name.
+		 * @param pool {@code JarFilePool} to acquire the jar file from.
+		 * @param embedded <code>true</code> to answer the classes from the 
+		 * build-time class index in the jar file if it exists.
+		 */
+		JarSource(URL url, File file, ClassIndex index, PackageFilter filter, JarFilePool pool, 
+				boolean embedded) {
+			super(url, filter);
+			this.embedded = embedded;
+			this.file = file;
+			this.index = index;
+			this.pool = pool;
+			ClassIndex.Entry entry = (index == null) ? null : index.get(file);
+			
+			if (entry != null && entry.release() != 0 && entry.release() != RELEASE) {
+				// Recorded for another JDK.
+				entry = null;
+			}
+			
+			this.entry = entry;
+		}
+		
+		private static int release(String version) {
+			try {
+				return Integer.parseInt(version.startsWith("1.") ? version.substring(2) : version);
+			} catch (RuntimeException e) {
+				return 8;
+			}
+		}
+		
+		/**
+		 * Returns the jar file.
+		 * 
+		 * @return The jar file.
+		 */
+		File file() {
+			return file;
+		}
+		
+		/**
+		 * Indicates whether the classes in this jar file are answered from 
+		 * {@code ClassIndex} or not.
+		 * 
+		 * @return <code>true</code> If the classes are answered from 
+		 * {@code ClassIndex}.
+		 */
+		boolean indexed() {
+			return entry != null;
+		}
+		
+		/**
+		 * Returns the record of this jar file in {@code ClassIndex}.
+		 * 
+		 * @return The record or <code>null</code> if the classes in this jar 
+		 * file are not answered from {@code ClassIndex}.
+		 */
+		ClassIndex.Entry entry() {
+			return entry;
+		}
+		
+		/**
+		 * Acquires the jar file from {@code JarFilePool} if it has not been 
+		 * acquired yet.
+		 * 
+		 * @return {@code JarReader} of the opened jar file.
+		 * @throws IOException If any I/O access fails while opening the jar 
+		 * file.
+		 */
+		synchronized JarReader reader() throws IOException {
+			if (reader == null) {
+				reader = pool.acquire(file);
+			}
+			
+			return reader;
+		}
+		
+		@Override
+		synchronized void close() {
+			if (reader != null) {
+				pool.release(reader);
+				reader = null;
+			}
+			
+			libs = null;
+			lib = null;
+			nested = null;
+		}
+		
+		/**
+		 * Returns the {@code Class-Path} attribute in the manifest of the jar 
+		 * file.
+		 * 
+		 * @return The {@code Class-Path} attribute or <code>null</code> if the 
+		 * jar file does not have it.
+		 * @throws IOException If any I/O access fails while reading the 
+		 * manifest.
+		 */
+		synchronized String classPath() throws IOException {
+			if (entry != null) {
+				return entry.classPath();
+			}
+			
+			manifest();
+			return classPath;
+		}
+		
+		/**
+		 * Indicates whether the jar file is a multi-release jar file or not.
+		 * 
+		 * @return <code>true</code> If the jar file is a multi-release jar 
+		 * file.
+		 * @throws IOException If any I/O access fails while reading the 
+		 * manifest.
+		 */
+		synchronized boolean multiRelease() throws IOException {
+			manifest();
+			return multiRelease;
+		}
+		
+		private synchronized void manifest() throws IOException {
+			if (!manifest) {
+				Manifest manifest = reader().manifest();
+				
+				if (manifest != null && manifest.getMainAttributes() != null) {
+					classPath = manifest.getMainAttributes().getValue(Name.CLASS_PATH);
+					multiRelease = "true".equalsIgnoreCase(manifest.getMainAttributes().getValue("Multi-Release"));
+				}
+				
+				this.manifest = true;
+			}
+		}
+		
+		@Override
+		synchronized void commit() {
+			if (records != null) {
+				try {
+					index.put(file, classPath(), multiRelease() ? RELEASE : 0, records);
+				} catch (IOException e) {
+					// The manifest is no longer readable. Not recorded.
+				}
+				
+				records = null;
+			}
+		}
+		
+		public Iterator<Resource> iterator() {
+			List<ClassFile> recorded = (entry == null) ? null : entry.classes();
+			
+			if (recorded != null) {
+				return records(recorded);
+			}
+			
+			// Not recorded or the record is broken; scanned and recorded again.
+			
+			final JarReader entries;
+			final Map<String, Integer> versions;
+			
+			try {
+				entries = reader();
+				List<ClassFile> classes = embedded();
+				
+				if (classes != null) {
+					if (index != null) {
+						index.put(file, classPath(), classes);
+					}
+					
+					return records(classes);
+				}
+				
+				versions = versions(entries);
+			} catch (IOException e) {
+				throw new UncheckedException(e);
+			}
+			
+			final List<ClassFile> records;
+			
+			synchronized (this) {
+				if (index != null && filter.all()) {
+					this.records = Collections.synchronizedList(new ArrayList<ClassFile>());
+				}
+				
+				records = this.records;
+			}
+			
+			return new Iterator<Resource>() {
+				
+				private int position = 0;
+				
+				private Resource next;
+				
+				private String lib;
+				
+				/** The nested jar file being listed at random. */
+				private JarReader nested;
+				
+				private int index;
+				
+				/** The nested jar file being streamed (e.g. ZIP64). */
+				private ZipInputStream stream;
+				
+				private Iterator<Map.Entry<String, Integer>> remaining;
+				
+				public boolean hasNext() {
+					try {
+						while (next == null) {
+							if (nested != null) {
+								if (index == nested.size()) {
+									nested = null;
+									continue;
+								}
+								
+								int entry = index++;
+								String name = name(nested.name(entry));
+								
+								if (name != null && filter.accepts(name)) {
+									next = resource(name, lib, nested.name(entry), nested, entry);
+								}
+								
+								continue;
+							}
+							
+							if (stream != null) {
+								ZipEntry entry = stream.getNextEntry();
+								
+								if (entry == null) {
+									stream.close();
+									stream = null;
+									continue;
+								}
+								
+								String name = name(entry.getName());
+								
+								if (!entry.isDirectory() && name != null && filter.accepts(name)) {
+									next = resource(name, lib, entry.getName(), null, -1);
+								}
+								
+								continue;
+							}
+							
+							if (position == entries.size()) {
+								// The versioned class files without the base one.
+								if (remaining == null) {
+									remaining = versions.entrySet().iterator();
+								}
+								
+								if (!remaining.hasNext()) {
+									break;
+								}
+								
+								Map.Entry<String, Integer> versioned = remaining.next();
+								String name = name(versioned.getKey());
+								
+								if (name != null && filter.accepts(name)) {
+									next = resource(name, entries.name(versioned.getValue()), versioned.getValue());
+								}
+								
+								continue;
+							}
+							
+							int entry = position++;
+							String path = entries.name(entry);
+							
+							if (lib(path)) {
+								lib = path;
+								nested = nested(path);
+								index = 0;
+								
+								if (nested == null) {
+									// Not readable at random; only listed by streaming.
+									stream = new ZipInputStream(entries.open(entry));
+								}
+								
+								continue;
+							}
+							
+							String name = name(path);
+							
+							if (name != null && filter.accepts(name)) {
+								Integer versioned = versions.remove(path);
+								next = (versioned == null) ? resource(name, path, entry)
+										: resource(name, entries.name(versioned), versioned);
+							}
+						}
+						
+					} catch (IOException e) {
+						throw new UncheckedException(e);
+					}
+					
+					return next != null;
+				}
+				
+				public Resource next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					
+					Resource resource = next;
+					next = null;
+					return resource;
+				}
+				
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+				
+				private Resource resource(final String name, final String path, final int entry) {
+					return new Resource() {
+						
+						@Override
+						String name() {
+							return name;
+						}
+						
+						@Override
+						Source source() {
+							return JarSource.this;
+						}
+						
+						@Override
+						InputStream open() throws IOException {
+							JarReader reader = reader();
+							
+							if (reader == entries) {
+								return reader.open(entry);
+							}
+							
+							// The jar file has been reopened.
+							int index = reader.find(path);
+							
+							if (index == -1) {
+								throw new FileNotFoundException(path);
+							}
+							
+							return reader.open(index);
+						}
+						
+						@Override
+						boolean recording() {
+							return records != null;
+						}
+						
+						@Override
+						void record(ClassFile classFile) {
+							records.add(classFile);
+						}
+						
+						@Override
+						int entry() {
+							return entry;
+						}
+						
+					};
+				}
+				
+				private Resource resource(final String name, final String lib, 
+						final String path, final JarReader nested, final int entry) {
+					return new Resource() {
+						
+						@Override
+						String name() {
+							return name;
+						}
+						
+						@Override
+						Source source() {
+							return JarSource.this;
+						}
+						
+						@Override
+						InputStream open() throws IOException {
+							if (nested != null && reader() == entries) {
+								return nested.open(entry);
+							}
+							
+							// Streamed or the jar file has been reopened.
+							InputStream stream = JarSource.this.open(lib, path);
+							
+							if (stream == null) {
+								throw new FileNotFoundException(lib + "!/" + path);
+							}
+							
+							return stream;
+						}
+						
+						@Override
+						boolean recording() {
+							return records != null;
+						}
+						
+						@Override
+						void record(ClassFile classFile) {
+							records.add(classFile);
+						}
+						
+					};
+				}
+				
+			};
+		}
+		
+		/**
+		 * Returns the versioned class files of the multi-release jar file 
+		 * which the running JDK uses instead of the base ones, as the indexes 
+		 * of the jar entries keyed by the paths of the base ones.
+		 */
+		private Map<String, Integer> versions(JarReader reader) throws IOException {
+			Map<String, Integer> versions = new LinkedHashMap<String, Integer>();
+			
+			if (!multiRelease()) {
+				return versions;
+			}
+			
+			Map<String, Integer> selected = new HashMap<String, Integer>();
+			
+			for (int i = 0; i < reader.size(); i++) {
+				String path = reader.name(i);
+				int slash = path.indexOf('/', VERSIONS.length());
+				
+				if (!path.startsWith(VERSIONS) || !path.endsWith(".class") || slash == -1) {
+					continue;
+				}
+				
+				int version;
+				
+				try {
+					version = Integer.parseInt(path.substring(VERSIONS.length(), slash));
+				} catch (NumberFormatException e) {
+					continue;
+				}
+				
+				String base = path.substring(slash + 1);
+				Integer previous = selected.get(base);
+				
+				if (version >= 9 && version <= RELEASE && !base.equals("module-info.class")
+						&& (previous == null || previous < version)) {
+					selected.put(base, version);
+					versions.put(base, i);
+				}
+			}
+			
+			return versions;
+		}
+		
+		/**
+		 * Returns the binary class name of the specified jar entry or 
+		 * <code>null</code> if the entry is not a class file. The class 
+		 * directory prefixes of the fat jars (see {@link #CLASSES}) are 
+		 * stripped. The versioned class files of the multi-release jars (see 
+		 * {@link #VERSIONS}) are not class files by themselves.
+		 */
+		private static String name(String path) {
+			if (!path.endsWith(".class")) {
+				return null;
+			}
+			
+			for (String prefix : CLASSES) {
+				if (path.startsWith(prefix)) {
+					path = path.substring(prefix.length());
+					break;
+				}
+			}
+			
+			if (path.startsWith(VERSIONS)) {
+				return null;
+			}
+			
+			return path.substring(0, path.length() - 6).replace('/', '.');
+		}
+		
+		/**
+		 * Indicates whether the specified jar entry is a nested jar file in the 
+		 * library directories of the fat jars (see {@link #LIBS}) or not.
+		 */
+		private static boolean lib(String path) {
+			if (!path.endsWith(".jar")) {
+				return false;
+			}
+			
+			for (String prefix : LIBS) {
+				if (path.startsWith(prefix) && path.indexOf('/', prefix.length()) == -1) {
+					return true;
+				}
+			}
+			
+			return false;
+		}
+		
+		/**
+		 * Opens the entry of the specified path in the specified nested jar 
+		 * file. The nested jar file opened last is kept open, so the 
+		 * entries of the same nested jar file are read at random; the nested 
+		 * jar file which cannot be read at random (e.g. ZIP64) is streamed up 
+		 * to the entry.
+		 * 
+		 * @param lib The path of the nested jar file.
+		 * @param path The path of the entry in the nested jar file.
+		 * @return The {@code InputStream} of the entry or <code>null</code> if 
+		 * the entry is not found.
+		 * @throws IOException If any I/O access fails while reading the jar 
+		 * file.
+		 */
+		private InputStream open(String lib, String path) throws IOException {
+			JarReader nested = nested(lib);
+			
+			if (nested != null) {
+				int index = nested.find(path);
+				return (index == -1) ? null : nested.open(index);
+			}
+			
+			JarReader reader = reader();
+			int index = reader.find(lib);
+			
+			if (index == -1) {
+				return null;
+			}
+			
+			ZipInputStream stream = new ZipInputStream(reader.open(index));
+			
+			try {
+				ZipEntry e;
+				
+				while ((e = stream.getNextEntry()) != null) {
+					if (e.getName().equals(path)) {
+						InputStream result = stream;
+						stream = null;
+						return result;
+					}
+				}
+				
+				return null;
+			} finally {
+				if (stream != null) {
+					stream.close();
+				}
+			}
+		}
+		
+		/**
+		 * Returns the reader of the specified nested jar file, opening it if it 
+		 * is not the one opened last. The nested jar file stored uncompressed 
+		 * is read in place from the mapping of the outer jar file; the other 
+		 * one is read into memory.
+		 * 
+		 * @return The reader or <code>null</code> if the nested jar file is not 
+		 * found or cannot be read at random.
+		 */
+		private JarReader nested(String lib) throws IOException {
+			synchronized (this) {
+				if (lib.equals(this.lib)) {
+					return nested;
+				}
+			}
+			
+			JarReader reader = reader();
+			int index = reader.find(lib);
+			
+			if (index == -1) {
+				return null;
+			}
+			
+			JarReader nested = open(reader, index, true);
+			
+			synchronized (this) {
+				this.lib = lib;
+				this.nested = nested;
+			}
+			
+			return nested;
+		}
+		
+		/**
+		 * Opens the nested jar file at the specified index of the specified 
+		 * reader at random, reading it into memory only if it cannot be read 
+		 * in place and <code>copy</code> is <code>true</code>.
+		 */
+		private JarReader open(JarReader reader, int index, boolean copy) throws IOException {
+			ByteBuffer buffer = reader.buffer(index);
+			
+			if (buffer == null) {
+				if (!copy) {
+					return null;
+				}
+				
+				InputStream stream = reader.open(index);
+				
+				try {
+					buffer = ByteBuffer.wrap(ClassFile.bytes(stream));
+				} finally {
+					stream.close();
+				}
+			}
+			
+			return JarReader.open(file, buffer);
+		}
+		
+		/**
+		 * Returns the nested jar files of the fat jar by the paths of the 
+		 * class files in them, listing them once. Only the central directories 
+		 * of the nested jar files read in place are parsed; the other nested 
+		 * jar files are streamed for their entry names without being kept. 
+		 * The first nested jar file is taken for the path found in several 
+		 * ones.
+		 */
+		private Map<String, String> libs() throws IOException {
+			synchronized (this) {
+				if (libs != null) {
+					return libs;
+				}
+			}
+			
+			JarReader reader = reader();
+			Map<String, String> libs = new HashMap<String, String>();
+			
+			for (int i = 0; i < reader.size(); i++) {
+				String lib = reader.name(i);
+				
+				if (!lib(lib)) {
+					continue;
+				}
+				
+				JarReader nested = open(reader, i, false);
+				
+				if (nested != null) {
+					for (int j = 0; j < nested.size(); j++) {
+						String path = nested.name(j);
+						
+						if (path.endsWith(".class") && !libs.containsKey(path)) {
+							libs.put(path, lib);
+						}
+					}
+					
+					continue;
+				}
+				
+				ZipInputStream stream = new ZipInputStream(reader.open(i));
+				
+				try {
+					for (ZipEntry e; (e = stream.getNextEntry()) != null; ) {
+						if (e.getName().endsWith(".class") && !libs.containsKey(e.getName())) {
+							libs.put(e.getName(), lib);
+						}
+					}
+					
+				} finally {
+					stream.close();
+				}
+			}
+			
+			synchronized (this) {
+				this.libs = libs;
+			}
+			
+			return libs;
+		}
+		
+		/**
+		 * Opens the class file of the specified class in the jar file, in the 
+		 * class directories or in the nested jar files of the fat jar.
+		 */
+		private InputStream open(String name) throws IOException {
+			JarReader reader = reader();
+			String path = name.replace('.', '/') + ".class";
+			int index = -1;
+			
+			if (multiRelease()) {
+				for (int version = RELEASE; index == -1 && version >= 9; version--) {
+					index = reader.find(VERSIONS + version + "/" + path);
+				}
+			}
+			
+			if (index == -1) {
+				index = reader.find(path);
+			}
+			
+			for (int i = 0; index == -1 && i < CLASSES.length; i++) {
+				index = reader.find(CLASSES[i] + path);
+			}
+			
+			if (index != -1) {
+				return reader.open(index);
+			}
+			
+			String lib = libs().get(path);
+			
+			if (lib != null) {
+				InputStream stream = open(lib, path);
+				
+				if (stream != null) {
+					return stream;
+				}
+			}
+			
+			throw new FileNotFoundException(name);
+		}
+		
+		/**
+		 * The ordinal is the index of the jar entry if it is not negative, or 
+		 * the position of the record in {@code ClassIndex} if it is less than 
+		 * <code>-1</code>. The class file is found by name if the ordinal no 
+		 * longer points to it or is <code>-1</code> (e.g. in the nested jar 
+		 * files).
+		 */
+		@Override
+		Resource resource(final String name, final int entry) {
+			if (entry >= 0) {
+				return new Resource() {
+					
+					@Override
+					String name() {
+						return name;
+					}
+					
+					@Override
+					Source source() {
+						return JarSource.this;
+					}
+					
+					@Override
+					InputStream open() throws IOException {
+						JarReader reader = reader();
+						
+						if (entry < reader.size() 
+								&& reader.name(entry).endsWith(name.replace('.', '/') + ".class")) {
+							return reader.open(entry);
+						}
+						
+						return JarSource.this.open(name);
+					}
+					
+					@Override
+					int entry() {
+						return entry;
+					}
+					
+				};
+			}
+			
+			ClassFile classFile = null;
+			List<ClassFile> recorded = (this.entry == null || entry == -1) ? null : this.entry.classes();
+			
+			if (recorded != null && -entry - 2 < recorded.size() 
+					&& recorded.get(-entry - 2).name().equals(name)) {
+				classFile = recorded.get(-entry - 2);
+			}
+			
+			return resource(name, entry, classFile);
+		}
+		
+		private Resource resource(final String name, final int entry, final ClassFile classFile) {
+			return new Resource() {
+				
+				@Override
+				String name() {
+					return name;
+				}
+				
+				@Override
+				Source source() {
+					return JarSource.this;
+				}
+				
+				@Override
+				InputStream open() throws IOException {
+					return JarSource.this.open(name);
+				}
+				
+				@Override
+				ClassFile classFile() {
+					return classFile;
+				}
+				
+				@Override
+				int entry() {
+					return entry;
+				}
+				
+			};
+		}
+		
+		/**
+		 * Reads the build-time class index in the jar file. The index is 
+		 * trusted only if it lists every class file in the jar file (and no 
+		 * other class unless the jar file nests the library jar files), so the 
+		 * partial index written by the incremental compilation or the index 
+		 * without the local and anonymous classes is ignored and the jar file 
+		 * is scanned instead. The class files are matched by the entry names, 
+		 * so the check reads no class file.
+		 * 
+		 * @return The classes in the build-time class index or 
+		 * <code>null</code> if the jar file does not have the valid one.
+		 */
+		private List<ClassFile> embedded() throws IOException {
+			if (!embedded || multiRelease()) {
+				return null;
+			}
+			
+			JarReader reader = reader();
+			int index = reader.find(ClassIndexer.INDEX);
+			
+			if (index == -1) {
+				return null;
+			}
+			
+			InputStream stream = reader.open(index);
+			List<ClassFile> classes;
+			
+			try {
+				classes = ClassIndexer.read(stream);
+			} finally {
+				stream.close();
+			}
+			
+			if (classes == null) {
+				return null;
+			}
+			
+			Set<String> names = new HashSet<String>(classes.size() * 4 / 3 + 1);
+			
+			for (ClassFile classFile : classes) {
+				names.add(classFile.name());
+			}
+			
+			int listed = 0;
+			boolean libs = false;
+			
+			for (int i = 0; i < reader.size(); i++) {
+				String path = reader.name(i);
+				
+				if (lib(path)) {
+					libs = true;
+					continue;
+				}
+				
+				String name = name(path);
+				
+				if (name == null) {
+					continue;
+				}
+				
+				if (names.contains(name)) {
+					listed++;
+				} else if (!name.endsWith("package-info") && !name.endsWith("module-info")) {
+					// Not compiled with the others (or local or anonymous).
+					return null;
+				}
+			}
+			
+			// The classes removed since the index was written.
+			return (libs || listed == names.size()) ? classes : null;
+		}
+		
+		private Iterator<Resource> records(List<ClassFile> records) {
+			final Iterator<ClassFile> classes = records.iterator();
+			return new Iterator<Resource>() {
+				
+				private int position = 0;
+				
+				private ClassFile next;
+				
+				public boolean hasNext() {
+					while (next == null && classes.hasNext()) {
+						ClassFile classFile = classes.next();
+						position++;
+						
+						if (filter.accepts(classFile.name())) {
+							next = classFile;
+						}
+					}
+					
+					return next != null;
+				}
+				
+				public Resource next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					
+					ClassFile classFile = next;
+					next = null;
+					// The records are numbered below -1 not to be taken as the entries.
+					return resource(classFile.name(), -position - 1, classFile);
+				}
+				
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+				
+			};
+		}
+		
+	}
+	
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2019 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.reverb.lang;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * {@code SymbolTable} is the table of the distinct names (e.g. the class 
+ * names) which assigns the sequential integer id to each name.
+ * The names are not kept as {@code String} objects; they are packed into one 
+ * byte array in UTF-8 and looked up by the open addressing hash table of the 
+ * ids, so the names of hundreds of thousands of classes are held with a few 
+ * arrays and the relationships between them can be held as integer arrays.
+ * The name is decoded into a new {@code String} on each {@link #name(int)}.
+ * This class is not thread-safe; it must not be modified after it is shared.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+final class SymbolTable {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	private byte[] bytes = new byte[1024];
+	
+	private int length;
+	
+	/** The offsets of the names in the byte array (the end at [size]). */
+	private int[] offsets = new int[65];
+	
+	private int[] hashes = new int[64];
+	
+	/** The hash table of (id + 1), 0 for the empty slot. */
+	private int[] table = new int[128];
+	
+	private int size;
+	
+	/**
+	 * Returns the id of the specified name. The name is added if it is not in 
+	 * this table.
+	 * 
+	 * @param name The name.
+	 * @return The id of the specified name.
+	 */
+	int add(String name) {
+		byte[] utf8 = name.getBytes(UTF_8);
+		int hash = name.hashCode();
+		int slot = slot(utf8, hash);
+		
+		if (table[slot] != 0) {
+			return table[slot] - 1;
+		}
+		
+		if (size == hashes.length) {
+			int capacity = Math.max(size * 2, 64);
+			hashes = Arrays.copyOf(hashes, capacity);
+			offsets = Arrays.copyOf(offsets, capacity + 1);
+		}
+		
+		if (length + utf8.length > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2 + 1, length + utf8.length));
+		}
+		
+		System.arraycopy(utf8, 0, bytes, length, utf8.length);
+		length += utf8.length;
+		int id = size++;
+		hashes[id] = hash;
+		offsets[size] = length;
+		table[slot] = id + 1;
+		
+		if (size * 2 > table.length) {
+			rehash(table.length * 2);
+		}
+		
+		return id;
+	}
+	
+	/**
+	 * Returns the id of the specified name.
+	 * 
+	 * @param name The name.
+	 * @return The id of the specified name or <code>-1</code> if the name is 
+	 * not in this table.
+	 */
+	int get(String name) {
+		return table[slot(name.getBytes(UTF_8), name.hashCode())] - 1;
+	}
+	
+	/**
+	 * Returns the name of the specified id.
+	 * 
+	 * @param id The id of the name.
+	 * @return The name of the specified id.
+	 */
+	String name(int id) {
+		if (id < 0 || id >= size) {
+			throw new IllegalArgumentException("'id' must not be [" + id + "]");
+		}
+		
+		return new String(bytes, offsets[id], offsets[id + 1] - offsets[id], UTF_8);
+	}
+	
+	/**
+	 * Returns the number of the names in this table.
+	 * 
+	 * @return The number of the names.
+	 */
+	int size() {
+		return size;
+	}
+	
+	/** Releases the unused capacity of the arrays. */
+	void trim() {
+		bytes = Arrays.copyOf(bytes, length);
+		offsets = Arrays.copyOf(offsets, size + 1);
+		hashes = Arrays.copyOf(hashes, size);
+	}
+	
+	/**
+	 * Returns the slot of the hash table which holds the specified name or 
+	 * the empty slot the name should be put in.
+	 */
+	private int slot(byte[] utf8, int hash) {
+		int mask = table.length - 1;
+		
+		for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+			int id = table[slot] - 1;
+			
+			if (id < 0 || (hashes[id] == hash && equals(id, utf8))) {
+				return slot;
+			}
+		}
+	}
+	
+	private boolean equals(int id, byte[] utf8) {
+		int offset = offsets[id];
+		
+		if (offsets[id + 1] - offset != utf8.length) {
+			return false;
+		}
+		
+		for (int i = 0; i < utf8.length; i++) {
+			if (bytes[offset + i] != utf8[i]) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	private void rehash(int capacity) {
+		int[] table = new int[capacity];
+		int mask = capacity - 1;
+		
+		for (int id = 0; id < size; id++) {
+			int slot = mix(hashes[id]) & mask;
+			
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			
+			table[slot] = id + 1;
+		}
+		
+		this.table = table;
+	}
+	
+	private static int mix(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+	
+}
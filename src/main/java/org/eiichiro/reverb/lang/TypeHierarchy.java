@@ -0,0 +1,684 @@
+/*
+ * Copyright (C) 2019 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.reverb.lang;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * {@code TypeHierarchy} is the type hierarchy graph of the classes on the 
+ * search path of {@link ClassResolver}.
+ * {@code TypeHierarchy} is built once from the {@link ClassFile} metadata of 
+ * the classes and holds the inverted indexes from each supertype to its 
+ * direct subclasses and subtypes, and from each annotation type to the 
+ * classes and the members (fields and methods) annotated by it. So the 
+ * transitive subtype queries (e.g. "all the implementors of an interface 
+ * including through interface inheritance") are answered by a graph lookup 
+ * instead of traversing the search path.
+ * The supertypes which are not on the search path (e.g. JDK classes) are 
+ * read from the class file resources of the {@code ClassLoader} specified on 
+ * the construction (they are not loaded) to complete the graph. They are 
+ * available from {@link #get(String)} but never returned as the query 
+ * results.
+ * The graph is held in the compact form to be kept resident for the repeated 
+ * queries; each name of the classes, the supertypes and the annotations is 
+ * stored once in {@link SymbolTable} and the relationships are the arrays of 
+ * the symbol ids. The members are also the arrays of the symbol ids of their 
+ * names, descriptors and annotations. Neither the {@link ClassFile} nor the 
+ * {@link Member} instances are retained; {@link #get(String)} and 
+ * {@link #members(String)} return them rebuilt from the graph.
+ * This class is immutable and thread-safe.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class TypeHierarchy {
+
+	/** The symbol which is not read as a class (e.g. annotation type). */
+	private static final byte UNKNOWN = 0;
+	
+	/** The class on the search path. */
+	private static final byte CLASS = 1;
+	
+	/** The supertype read from the {@code ClassLoader}. */
+	private static final byte EXTERNAL = 2;
+	
+	/**
+	 * The supertype found neither on the search path nor from the 
+	 * {@code ClassLoader}.
+	 */
+	private static final byte MISSING = 3;
+	
+	private final SymbolTable symbols = new SymbolTable();
+	
+	private final byte[] kinds;
+	
+	private final int[] access;
+	
+	/** The symbol id of the superclass of each symbol or <code>-1</code>. */
+	private final int[] superclasses;
+	
+	private final Relation interfaces;
+	
+	private final Relation annotations;
+	
+	private final Relation subclasses;
+	
+	private final Relation subtypes;
+	
+	private final Relation annotated;
+	
+	/** The names and the descriptors of the members. */
+	private final SymbolTable signatures = new SymbolTable();
+	
+	/** The symbol id of the declaring class of each member. */
+	private final int[] memberOwners;
+	
+	/** The id of the name of each member in {@link #signatures}. */
+	private final int[] memberNames;
+	
+	/** The id of the descriptor of each member in {@link #signatures}. */
+	private final int[] memberDescriptors;
+	
+	private final int[] memberAccess;
+	
+	/** The symbol ids of the annotation types of each member. */
+	private final Relation memberAnnotations;
+	
+	/** The indexes of the members declared in each class. */
+	private final Relation declared;
+	
+	/** The indexes of the members annotated by each annotation type. */
+	private final Relation annotatedMembers;
+	
+	private final int count;
+	
+	/**
+	 * Constructs a new {@code TypeHierarchy} instance with the specified 
+	 * classes on the search path and {@code ClassLoader}.
+	 * 
+	 * @param classes The classes on the search path.
+	 * @param classLoader The {@code ClassLoader} to read the supertypes which 
+	 * are not on the search path or <code>null</code> to use the system class 
+	 * loader.
+	 */
+	public TypeHierarchy(Iterable<ClassFile> classes, ClassLoader classLoader) {
+		Builder builder = new Builder();
+		Deque<ClassFile> deque = new ArrayDeque<ClassFile>();
+		
+		for (ClassFile clazz : classes) {
+			int id = symbols.add(clazz.name());
+			
+			if (builder.kinds.get(id) == UNKNOWN) {
+				builder.put(id, CLASS, clazz);
+				deque.push(clazz);
+			}
+		}
+		
+		count = deque.size();
+		
+		while (!deque.isEmpty()) {
+			ClassFile clazz = deque.pop();
+			int id = symbols.get(clazz.name());
+			
+			if (clazz.superclass() != null) {
+				int superclass = symbols.add(clazz.superclass());
+				builder.subclasses.add(superclass, id);
+				builder.subtypes.add(superclass, id);
+				ClassFile external = external(builder, superclass, classLoader);
+				
+				if (external != null) {
+					deque.push(external);
+				}
+			}
+			
+			for (String i : clazz.interfaces()) {
+				int supertype = symbols.add(i);
+				builder.subtypes.add(supertype, id);
+				ClassFile external = external(builder, supertype, classLoader);
+				
+				if (external != null) {
+					deque.push(external);
+				}
+			}
+		}
+		
+		symbols.trim();
+		signatures.trim();
+		int n = symbols.size();
+		kinds = new byte[n];
+		access = new int[n];
+		superclasses = new int[n];
+		
+		for (int i = 0; i < n; i++) {
+			kinds[i] = (byte) builder.kinds.get(i);
+			access[i] = builder.access.get(i);
+			superclasses[i] = builder.superclasses.get(i) - 1;
+		}
+		
+		interfaces = builder.interfaces.build(n);
+		annotations = builder.annotations.build(n);
+		subclasses = builder.subclasses.build(n);
+		subtypes = builder.subtypes.build(n);
+		annotated = builder.annotated.build(n);
+		int m = builder.memberOwners.size;
+		memberOwners = Arrays.copyOf(builder.memberOwners.values, m);
+		memberNames = Arrays.copyOf(builder.memberNames.values, m);
+		memberDescriptors = Arrays.copyOf(builder.memberDescriptors.values, m);
+		memberAccess = Arrays.copyOf(builder.memberAccess.values, m);
+		memberAnnotations = builder.memberAnnotations.build(m);
+		declared = builder.declared.build(n);
+		annotatedMembers = builder.annotatedMembers.build(n);
+	}
+	
+	/**
+	 * Reads the class file of the specified supertype from the specified 
+	 * {@code ClassLoader} if it is neither on the search path nor read yet.
+	 */
+	private ClassFile external(Builder builder, int id, ClassLoader classLoader) {
+		if (builder.kinds.get(id) != UNKNOWN) {
+			return null;
+		}
+		
+		ClassFile clazz = null;
+		String resource = symbols.name(id).replace('.', '/') + ".class";
+		InputStream stream = (classLoader == null)
+				? ClassLoader.getSystemResourceAsStream(resource)
+				: classLoader.getResourceAsStream(resource);
+		
+		if (stream != null) {
+			try {
+				clazz = ClassFile.read(stream);
+			} catch (IOException e) {
+				// Unreadable. Treated as not found.
+			} finally {
+				try {
+					stream.close();
+				} catch (IOException e) {}
+			}
+		}
+		
+		if (clazz == null) {
+			builder.kinds.set(id, MISSING);
+		} else {
+			builder.put(id, EXTERNAL, clazz);
+		}
+		
+		return clazz;
+	}
+	
+	/**
+	 * {@code Builder} is the growable form of the graph used on the 
+	 * construction.
+	 */
+	private class Builder {
+		
+		private final Ints kinds = new Ints();
+		
+		private final Ints access = new Ints();
+		
+		/** The symbol id of the superclass + 1 (0 for none). */
+		private final Ints superclasses = new Ints();
+		
+		private final Edges interfaces = new Edges();
+		
+		private final Edges annotations = new Edges();
+		
+		private final Edges subclasses = new Edges();
+		
+		private final Edges subtypes = new Edges();
+		
+		private final Edges annotated = new Edges();
+		
+		private final Ints memberOwners = new Ints();
+		
+		private final Ints memberNames = new Ints();
+		
+		private final Ints memberDescriptors = new Ints();
+		
+		private final Ints memberAccess = new Ints();
+		
+		private final Edges memberAnnotations = new Edges();
+		
+		private final Edges declared = new Edges();
+		
+		private final Edges annotatedMembers = new Edges();
+		
+		private void put(int id, byte kind, ClassFile clazz) {
+			kinds.set(id, kind);
+			access.set(id, clazz.access());
+			
+			if (clazz.superclass() != null) {
+				superclasses.set(id, symbols.add(clazz.superclass()) + 1);
+			}
+			
+			for (String i : clazz.interfaces()) {
+				interfaces.add(id, symbols.add(i));
+			}
+			
+			for (String a : clazz.annotations()) {
+				int annotation = symbols.add(a);
+				annotations.add(id, annotation);
+				
+				if (kind == CLASS) {
+					annotated.add(annotation, id);
+				}
+			}
+			
+			for (Member member : clazz.members()) {
+				int index = memberOwners.size;
+				memberOwners.add(id);
+				memberNames.add(signatures.add(member.name()));
+				memberDescriptors.add(signatures.add(member.descriptor()));
+				memberAccess.add(member.access());
+				declared.add(id, index);
+				
+				for (String a : member.annotations()) {
+					int annotation = symbols.add(a);
+					memberAnnotations.add(index, annotation);
+					
+					if (kind == CLASS) {
+						annotatedMembers.add(annotation, index);
+					}
+				}
+			}
+		}
+		
+	}
+	
+	/** {@code Ints} is the growable array of <code>int</code>. */
+	private static class Ints {
+		
+		private int[] values = new int[16];
+		
+		private int size;
+		
+		private void add(int value) {
+			set(size, value);
+		}
+		
+		private void set(int index, int value) {
+			if (index >= values.length) {
+				values = Arrays.copyOf(values, Math.max(values.length * 2, index + 1));
+			}
+			
+			values[index] = value;
+			size = Math.max(size, index + 1);
+		}
+		
+		private int get(int index) {
+			return (index < size) ? values[index] : 0;
+		}
+		
+	}
+	
+	/** {@code Edges} is the list of the edges to build {@link Relation}. */
+	private static class Edges {
+		
+		private final Ints from = new Ints();
+		
+		private final Ints to = new Ints();
+		
+		private void add(int from, int to) {
+			this.from.add(from);
+			this.to.add(to);
+		}
+		
+		/**
+		 * Builds the {@code Relation} of the edges. The targets of each 
+		 * symbol keep the order they are added in.
+		 */
+		private Relation build(int n) {
+			int[] offsets = new int[n + 1];
+			
+			for (int i = 0; i < from.size; i++) {
+				offsets[from.values[i] + 1]++;
+			}
+			
+			for (int i = 0; i < n; i++) {
+				offsets[i + 1] += offsets[i];
+			}
+			
+			int[] positions = Arrays.copyOf(offsets, n);
+			int[] targets = new int[from.size];
+			
+			for (int i = 0; i < from.size; i++) {
+				targets[positions[from.values[i]]++] = to.values[i];
+			}
+			
+			return new Relation(offsets, targets);
+		}
+		
+	}
+	
+	/**
+	 * {@code Relation} is the adjacency lists of the symbols in the 
+	 * compressed form; the targets of the symbol <code>i</code> are 
+	 * <code>targets[offsets[i]]</code> to 
+	 * <code>targets[offsets[i + 1] - 1]</code>.
+	 */
+	private static class Relation {
+		
+		private final int[] offsets;
+		
+		private final int[] targets;
+		
+		private Relation(int[] offsets, int[] targets) {
+			this.offsets = offsets;
+			this.targets = targets;
+		}
+		
+	}
+	
+	/**
+	 * Returns the class file metadata of the specified class.
+	 * 
+	 * @param name The binary name of the class.
+	 * @return The class file metadata or <code>null</code> if the class is 
+	 * not found.
+	 */
+	public ClassFile get(String name) {
+		int id = symbols.get(name);
+		
+		if (id < 0 || (kinds[id] != CLASS && kinds[id] != EXTERNAL)) {
+			return null;
+		}
+		
+		List<Member> members = new ArrayList<Member>(declared.offsets[id + 1] - declared.offsets[id]);
+		
+		for (int i = declared.offsets[id]; i < declared.offsets[id + 1]; i++) {
+			members.add(member(declared.targets[i]));
+		}
+		
+		return new ClassFile(name, access[id], 
+				(superclasses[id] < 0) ? null : symbols.name(superclasses[id]), 
+				names(interfaces, id), names(annotations, id), members);
+	}
+	
+	/**
+	 * Indicates whether the specified class is on the search path or not.
+	 * 
+	 * @param name The binary name of the class.
+	 * @return <code>true</code> If the specified class is on the search path.
+	 */
+	public boolean contains(String name) {
+		int id = symbols.get(name);
+		return id >= 0 && kinds[id] == CLASS;
+	}
+	
+	/**
+	 * Returns the classes on the search path.
+	 * 
+	 * @return The classes on the search path.
+	 */
+	public Set<String> classes() {
+		return new AbstractSet<String>() {
+			
+			@Override
+			public Iterator<String> iterator() {
+				return new Iterator<String>() {
+					
+					private int next = next(0);
+					
+					private int next(int id) {
+						while (id < kinds.length && kinds[id] != CLASS) {
+							id++;
+						}
+						
+						return id;
+					}
+					
+					public boolean hasNext() {
+						return next < kinds.length;
+					}
+					
+					public String next() {
+						if (!hasNext()) {
+							throw new NoSuchElementException();
+						}
+						
+						String name = symbols.name(next);
+						next = next(next + 1);
+						return name;
+					}
+					
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+					
+				};
+			}
+			
+			@Override
+			public boolean contains(Object o) {
+				return (o instanceof String) && TypeHierarchy.this.contains((String) o);
+			}
+			
+			@Override
+			public int size() {
+				return count;
+			}
+			
+		};
+	}
+	
+	/**
+	 * Returns the classes on the search path which inherit the specified 
+	 * class directly or indirectly.
+	 * 
+	 * @param superclass The binary name of the superclass.
+	 * @return The binary names of the subclasses.
+	 */
+	public Set<String> subclasses(String superclass) {
+		return closure(subclasses, symbols.get(superclass));
+	}
+	
+	/**
+	 * Returns the classes and interfaces on the search path which are 
+	 * assignable to the specified type except the type itself; that is, the 
+	 * subclasses, the implementors and the subinterfaces including through 
+	 * interface inheritance.
+	 * 
+	 * @param supertype The binary name of the supertype.
+	 * @return The binary names of the subtypes.
+	 */
+	public Set<String> subtypes(String supertype) {
+		return closure(subtypes, symbols.get(supertype));
+	}
+	
+	/**
+	 * Returns the classes on the search path annotated by the specified 
+	 * annotation. If <code>inherited</code> is <code>true</code>, the 
+	 * subclasses of the annotated classes are also returned (as 
+	 * {@code java.lang.annotation.Inherited} annotation does).
+	 * 
+	 * @param annotation The binary name of the annotation type.
+	 * @param inherited Whether the annotation is inherited by subclasses.
+	 * @return The binary names of the annotated classes.
+	 */
+	public Set<String> annotated(String annotation, boolean inherited) {
+		int id = symbols.get(annotation);
+		
+		if (id < 0 || annotated.offsets[id] == annotated.offsets[id + 1]) {
+			return Collections.emptySet();
+		}
+		
+		Set<String> result = new HashSet<String>(names(annotated, id));
+		
+		if (inherited) {
+			for (int i = annotated.offsets[id]; i < annotated.offsets[id + 1]; i++) {
+				int clazz = annotated.targets[i];
+				
+				if ((access[clazz] & ClassFile.ACC_INTERFACE) == 0) {
+					result.addAll(closure(subclasses, clazz));
+				}
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Returns the fields and methods declared in the classes on the search 
+	 * path which are annotated by the specified annotation. The members 
+	 * inherited from the superclasses are not returned for the subclasses.
+	 * 
+	 * @param annotation The binary name of the annotation type.
+	 * @return The annotated fields and methods.
+	 */
+	public Set<Member> members(String annotation) {
+		int id = symbols.get(annotation);
+		
+		if (id < 0 || annotatedMembers.offsets[id] == annotatedMembers.offsets[id + 1]) {
+			return Collections.emptySet();
+		}
+		
+		Set<Member> members = new HashSet<Member>();
+		
+		for (int i = annotatedMembers.offsets[id]; i < annotatedMembers.offsets[id + 1]; i++) {
+			members.add(member(annotatedMembers.targets[i]));
+		}
+		
+		return members;
+	}
+	
+	/** Rebuilds the member of the specified index from the graph. */
+	private Member member(int index) {
+		return new Member(symbols.name(memberOwners[index]), signatures.name(memberNames[index]), 
+				signatures.name(memberDescriptors[index]), memberAccess[index], 
+				names(memberAnnotations, index));
+	}
+	
+	/**
+	 * Returns the direct and indirect supertypes (the superclasses and the 
+	 * interfaces) of the specified type. The supertypes which are not found 
+	 * neither on the search path nor from the {@code ClassLoader} terminate 
+	 * the traversal.
+	 * 
+	 * @param name The binary name of the type.
+	 * @return The binary names of the supertypes.
+	 */
+	public Set<String> supertypes(String name) {
+		Set<String> supertypes = new HashSet<String>();
+		int id = symbols.get(name);
+		
+		if (id < 0) {
+			return supertypes;
+		}
+		
+		BitSet visited = new BitSet(kinds.length);
+		Ints stack = new Ints();
+		stack.add(id);
+		
+		while (stack.size > 0) {
+			int clazz = stack.values[--stack.size];
+			int superclass = superclasses[clazz];
+			
+			if (superclass >= 0 && !visited.get(superclass)) {
+				visited.set(superclass);
+				supertypes.add(symbols.name(superclass));
+				stack.add(superclass);
+			}
+			
+			for (int i = interfaces.offsets[clazz]; i < interfaces.offsets[clazz + 1]; i++) {
+				int supertype = interfaces.targets[i];
+				
+				if (!visited.get(supertype)) {
+					visited.set(supertype);
+					supertypes.add(symbols.name(supertype));
+					stack.add(supertype);
+				}
+			}
+		}
+		
+		return supertypes;
+	}
+	
+	/**
+	 * Returns the id of the specified class on the search path. The ids are 
+	 * less than {@link #ids()}.
+	 * 
+	 * @param name The binary name of the class.
+	 * @return The id of the specified class or <code>-1</code> if the class 
+	 * is not on the search path.
+	 */
+	int id(String name) {
+		int id = symbols.get(name);
+		return (id >= 0 && kinds[id] == CLASS) ? id : -1;
+	}
+	
+	/**
+	 * Returns the upper bound of the ids of the classes.
+	 * 
+	 * @return The upper bound of the ids.
+	 */
+	int ids() {
+		return kinds.length;
+	}
+	
+	private List<String> names(Relation relation, int id) {
+		List<String> names = new ArrayList<String>(relation.offsets[id + 1] - relation.offsets[id]);
+		
+		for (int i = relation.offsets[id]; i < relation.offsets[id + 1]; i++) {
+			names.add(symbols.name(relation.targets[i]));
+		}
+		
+		return names;
+	}
+	
+	private Set<String> closure(Relation relation, int id) {
+		Set<String> result = new HashSet<String>();
+		
+		if (id < 0) {
+			return result;
+		}
+		
+		BitSet visited = new BitSet(kinds.length);
+		Ints stack = new Ints();
+		stack.add(id);
+		
+		while (stack.size > 0) {
+			int next = stack.values[--stack.size];
+			
+			for (int i = relation.offsets[next]; i < relation.offsets[next + 1]; i++) {
+				int n = relation.targets[i];
+				
+				if (!visited.get(n)) {
+					visited.set(n);
+					stack.add(n);
+					
+					if (kinds[n] == CLASS) {
+						result.add(symbols.name(n));
+					}
+				}
+			}
+		}
+		
+		return result;
+	}
+	
+}
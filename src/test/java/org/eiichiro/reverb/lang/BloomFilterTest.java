@@ -0,0 +1,64 @@
+package org.eiichiro.reverb.lang;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BloomFilterTest {
+
+	@Test
+	public void testMightContain() {
+		List<String> names = new ArrayList<String>();
+		
+		for (int i = 0; i < 1000; i++) {
+			names.add("org.example.Type" + i);
+		}
+		
+		BloomFilter filter = new BloomFilter(names);
+		
+		for (String name : names) {
+			assertThat(filter.mightContain(name), is(true));
+		}
+		
+		int positives = 0;
+		
+		for (int i = 0; i < 10000; i++) {
+			if (filter.mightContain("org.example.Other" + i)) {
+				positives++;
+			}
+		}
+		
+		assertThat(positives < 300, is(true));
+		
+		filter = new BloomFilter(Collections.<String>emptyList());
+		assertThat(filter.mightContain(Object.class.getName()), is(false));
+	}
+
+	@Test
+	public void testWriteAndRead() throws IOException {
+		BloomFilter filter = new BloomFilter(Arrays.asList(
+				Annotation1.class.getName(), Interface1.class.getName()));
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		filter.write(new DataOutputStream(bytes));
+		filter = BloomFilter.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		assertThat(filter.mightContain(Annotation1.class.getName()), is(true));
+		assertThat(filter.mightContain(Interface1.class.getName()), is(true));
+		
+		try {
+			BloomFilter.read(new DataInputStream(new ByteArrayInputStream(new byte[4])));
+			fail();
+		} catch (IOException e) {}
+	}
+
+}
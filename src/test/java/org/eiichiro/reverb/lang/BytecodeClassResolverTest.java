@@ -0,0 +1,731 @@
+package org.eiichiro.reverb.lang;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import java.util.stream.Stream;
+import org.eiichiro.reverb.lang.ClassResolver.Matcher;
+import org.eiichiro.reverb.system.Environment;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BytecodeClassResolverTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testBytecodeClassResolverIterable() throws IOException {
+		List<URL> paths = new ArrayList<URL>();
+		paths.add(new URL("http://reverb.eiichiro.org/"));
+		BytecodeClassResolver resolver = new BytecodeClassResolver(paths);
+		assertThat(resolver.paths(), is((Iterable<URL>) paths));
+	}
+
+	@Test
+	public void testBytecodeClassResolverClassLoaderIterable() throws MalformedURLException {
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		List<URL> paths = new ArrayList<URL>();
+		paths.add(new URL("http://reverb.eiichiro.org/"));
+		BytecodeClassResolver resolver = new BytecodeClassResolver(classLoader, paths);
+		assertThat(resolver.classLoader(), is(classLoader));
+		assertThat(resolver.paths(), is((Iterable<URL>) paths));
+	}
+
+	@Test
+	public void testResolveByName() throws IOException {
+		BytecodeClassResolver resolver = new BytecodeClassResolver(paths());
+		Set<ClassFile> set = resolver.resolveByName("bject1");
+		assertThat(set.contains(classFile(Object1.class)), is(true));
+		assertThat(set.contains(classFile(Object2.class)), is(false));
+		assertThat(set.contains(classFile(Object3.class)), is(false));
+		assertThat(set.contains(classFile(Object4.class)), is(false));
+		assertThat(set.contains(classFile(Object5.class)), is(false));
+	}
+
+	@Test
+	public void testResolveBySuperclass() throws IOException {
+		BytecodeClassResolver resolver = new BytecodeClassResolver(paths());
+		Set<ClassFile> set = resolver.resolveBySuperclass(Superclass1.class);
+		assertThat(set.contains(classFile(Object1.class)), is(false));
+		assertThat(set.contains(classFile(Object2.class)), is(true));
+		assertThat(set.contains(classFile(Object3.class)), is(false));
+		assertThat(set.contains(classFile(Object4.class)), is(false));
+		assertThat(set.contains(classFile(Object5.class)), is(true));
+		set = resolver.resolveBySuperclass(TypesafeEnum.class);
+		assertThat(set.contains(classFile(Enum1.class)), is(true));
+		assertThat(set.contains(classFile(Enum2.class)), is(true));
+		set = resolver.resolveBySuperclass(Exception.class);
+		assertThat(set.contains(classFile(UncheckedException.class)), is(true));
+		assertThat(set.contains(classFile(Exception1.class)), is(true));
+	}
+
+	@Test
+	public void testResolveByInterface() throws IOException {
+		BytecodeClassResolver resolver = new BytecodeClassResolver(paths());
+		Set<ClassFile> set = resolver.resolveByInterface(Interface1.class);
+		assertThat(set.contains(classFile(Object1.class)), is(false));
+		assertThat(set.contains(classFile(Object2.class)), is(false));
+		assertThat(set.contains(classFile(Object3.class)), is(true));
+		assertThat(set.contains(classFile(Object4.class)), is(false));
+		assertThat(set.contains(classFile(Object5.class)), is(true));
+	}
+
+	@Test
+	public void testResolveByAnnotation() throws IOException {
+		BytecodeClassResolver resolver = new BytecodeClassResolver(paths());
+		Set<ClassFile> set = resolver.resolveByAnnotation(Annotation1.class);
+		assertThat(set.contains(classFile(Object1.class)), is(false));
+		assertThat(set.contains(classFile(Object2.class)), is(false));
+		assertThat(set.contains(classFile(Object3.class)), is(false));
+		assertThat(set.contains(classFile(Object4.class)), is(true));
+		assertThat(set.contains(classFile(Object5.class)), is(true));
+	}
+
+	@Test
+	public void testResolve() throws IOException, ClassNotFoundException {
+		BytecodeClassResolver resolver = new BytecodeClassResolver(paths());
+		Set<ClassFile> set = resolver.resolve(new Matcher<ClassFile>() {
+			
+			public boolean matches(ClassFile clazz) {
+				return clazz.annotations().contains(Annotation1.class.getName())
+						&& Superclass1.class.getName().equals(clazz.superclass())
+						&& clazz.interfaces().contains(Interface1.class.getName());
+			}
+			
+		});
+		assertThat(set.size(), is(1));
+		ClassFile classFile = set.iterator().next();
+		assertThat(classFile.name(), is(Object5.class.getName()));
+		assertThat(classFile.load(resolver.classLoader()) == Object5.class, is(true));
+	}
+
+	@Test
+	public void testResolveMap() throws IOException {
+		BytecodeClassResolver resolver = new BytecodeClassResolver(paths());
+		Map<String, Matcher<ClassFile>> matchers = new LinkedHashMap<String, Matcher<ClassFile>>();
+		matchers.put("name", new Matcher<ClassFile>() {
+			
+			public boolean matches(ClassFile clazz) {
+				return clazz.name().contains("bject1");
+			}
+			
+		});
+		matchers.put("annotation", new Matcher<ClassFile>() {
+			
+			public boolean matches(ClassFile clazz) {
+				return clazz.annotations().contains(Annotation1.class.getName());
+			}
+			
+		});
+		matchers.put("none", new Matcher<ClassFile>() {
+			
+			public boolean matches(ClassFile clazz) {
+				return false;
+			}
+			
+		});
+		Map<String, Set<ClassFile>> classes = resolver.resolve(matchers);
+		assertThat(new ArrayList<String>(classes.keySet()), is(Arrays.asList("name", "annotation", "none")));
+		assertThat(classes.get("name").contains(classFile(Object1.class)), is(true));
+		assertThat(classes.get("name").contains(classFile(Object2.class)), is(false));
+		assertThat(classes.get("annotation").size(), is(2));
+		assertThat(classes.get("annotation").contains(classFile(Object4.class)), is(true));
+		assertThat(classes.get("annotation").contains(classFile(Object5.class)), is(true));
+		assertThat(classes.get("none").isEmpty(), is(true));
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		
+		try {
+			Map<String, Set<ClassFile>> parallel = resolver.resolve(matchers, executor);
+			assertThat(parallel, is(classes));
+		} finally {
+			executor.shutdown();
+		}
+		
+		assertThat(resolver.resolve(new HashMap<String, Matcher<ClassFile>>()).isEmpty(), is(true));
+	}
+
+	@Test
+	public void testStream() throws IOException {
+		BytecodeClassResolver resolver = new BytecodeClassResolver(paths());
+		Matcher<ClassFile> matcher = new Matcher<ClassFile>() {
+			
+			public boolean matches(ClassFile clazz) {
+				return clazz.annotations().contains(Annotation1.class.getName());
+			}
+			
+		};
+		Set<ClassFile> set = new HashSet<ClassFile>();
+		Iterator<ClassFile> iterator = resolver.iterate(matcher);
+		
+		while (iterator.hasNext()) {
+			set.add(iterator.next());
+		}
+		
+		assertThat(set, is(resolver.resolve(matcher)));
+		assertThat(resolver.stream(matcher).count(), is(2L));
+		assertThat(resolver.stream(matcher).findFirst().isPresent(), is(true));
+		assertThat(resolver.stream(new Matcher<ClassFile>() {
+			
+			public boolean matches(ClassFile clazz) {
+				return false;
+			}
+			
+		}).findFirst().isPresent(), is(false));
+	}
+
+	@Test
+	public void testStreamShortCircuit() throws IOException {
+		File jar = Jars.create(folder.newFile("1.jar"), null, Object1.class, Object2.class, Object3.class);
+		ClassIndex index = new ClassIndex();
+		BytecodeClassResolver resolver = new BytecodeClassResolver(Arrays.asList(jar.toURI().toURL()));
+		resolver.index(index);
+		Matcher<ClassFile> matcher = new Matcher<ClassFile>() {
+			
+			public boolean matches(ClassFile clazz) {
+				return true;
+			}
+			
+		};
+		assertThat(resolver.stream(matcher).findFirst().isPresent(), is(true));
+		assertThat(index.size(), is(0));
+		assertThat(resolver.stream(matcher).count(), is(3L));
+		assertThat(index.size(), is(1));
+		
+		JarFilePool pool = new JarFilePool(0);
+		resolver = new BytecodeClassResolver(Arrays.asList(jar.toURI().toURL()));
+		resolver.pool(pool);
+		Stream<ClassFile> stream = resolver.stream(matcher);
+		assertThat(stream.findFirst().isPresent(), is(true));
+		assertThat(pool.size(), is(1));
+		stream.close();
+		assertThat(pool.size(), is(0));
+		Iterator<ClassFile> iterator = resolver.iterate(matcher);
+		assertThat(iterator.hasNext(), is(true));
+		assertThat(pool.size(), is(1));
+		((Closeable) iterator).close();
+		assertThat(pool.size(), is(0));
+		assertThat(iterator.hasNext(), is(false));
+		assertThat(resolver.stream(matcher).count(), is(3L));
+		assertThat(pool.size(), is(0));
+	}
+
+	@Test
+	public void testIncludeExclude() throws IOException {
+		BytecodeClassResolver resolver = new BytecodeClassResolver(paths());
+		Matcher<ClassFile> matcher = new Matcher<ClassFile>() {
+			
+			public boolean matches(ClassFile clazz) {
+				return true;
+			}
+			
+		};
+		assertThat(resolver.include("org.eiichiro.reverb.lang"), is((ClassResolver<ClassFile>) resolver));
+		Set<ClassFile> set = resolver.resolve(matcher);
+		assertThat(set.contains(classFile(Object1.class)), is(true));
+		assertThat(set.contains(classFile(ClassResolver.class)), is(true));
+		assertThat(set.contains(classFile(Test.class)), is(false));
+		assertThat(set.contains(classFile(Environment.class)), is(false));
+		resolver.exclude("org.eiichiro.reverb.lang.Object*", "**.ClassResolver$*");
+		set = resolver.resolve(matcher);
+		assertThat(set.contains(classFile(Object1.class)), is(false));
+		assertThat(set.contains(classFile(ClassResolver.class)), is(true));
+		assertThat(set.contains(classFile(Matcher.class)), is(false));
+		assertThat(resolver.includes(), is(Arrays.asList("org.eiichiro.reverb.lang")));
+		assertThat(resolver.excludes().size(), is(2));
+		assertThat(resolver.resolveByInterface(Interface1.class).contains(classFile(Interface2.class)), is(true));
+		assertThat(resolver.resolveByInterface(Interface1.class).contains(classFile(Object3.class)), is(false));
+	}
+
+	@Test
+	public void testIncludeJar() throws IOException {
+		File jar = Jars.create(folder.newFile("1.jar"), null, Object1.class, Object2.class, Interface1.class);
+		ClassIndex index = new ClassIndex();
+		BytecodeClassResolver resolver = new BytecodeClassResolver(Arrays.asList(jar.toURI().toURL()));
+		resolver.index(index);
+		resolver.include("**.Object*");
+		Set<ClassFile> set = resolver.resolveByName("");
+		assertThat(set.size(), is(2));
+		assertThat(set.contains(classFile(Interface1.class)), is(false));
+		assertThat(index.size(), is(0));
+		
+		resolver = new BytecodeClassResolver(Arrays.asList(jar.toURI().toURL()));
+		resolver.index(index);
+		assertThat(resolver.resolveByName("").size(), is(3));
+		// Name queries list the entries without recording the jar file.
+		assertThat(index.size(), is(0));
+		resolver.hierarchy();
+		assertThat(index.size(), is(1));
+		resolver.exclude("**.Object2");
+		set = resolver.resolveByName("");
+		assertThat(set.size(), is(2));
+		assertThat(set.contains(classFile(Object2.class)), is(false));
+	}
+
+	@Test
+	public void testResolveNameMatcher() throws IOException {
+		BytecodeClassResolver resolver = new BytecodeClassResolver(paths());
+		final List<String> names = Collections.synchronizedList(new ArrayList<String>());
+		Matcher<ClassFile> matcher = new ClassResolver.NameMatcher<ClassFile>() {
+			
+			public boolean accepts(String name) {
+				return name.startsWith(Object1.class.getPackage().getName() + ".Object");
+			}
+			
+			public boolean matches(ClassFile clazz) {
+				names.add(clazz.name());
+				return clazz.annotations().contains(Annotation1.class.getName());
+			}
+			
+		};
+		Set<ClassFile> set = resolver.resolve(matcher);
+		assertThat(set.size(), is(2));
+		assertThat(set.contains(classFile(Object4.class)), is(true));
+		assertThat(set.contains(classFile(Object5.class)), is(true));
+		assertThat(names.contains(Object1.class.getName()), is(true));
+		assertThat(names.contains(Interface1.class.getName()), is(false));
+		assertThat(names.contains(Test.class.getName()), is(false));
+		names.clear();
+		assertThat(resolver.stream(matcher).count(), is(2L));
+		assertThat(names.contains(Interface1.class.getName()), is(false));
+		names.clear();
+		Map<String, Matcher<ClassFile>> matchers = new HashMap<String, Matcher<ClassFile>>();
+		matchers.put("matcher", matcher);
+		assertThat(resolver.resolve(matchers).get("matcher"), is(set));
+		assertThat(names.contains(Interface1.class.getName()), is(false));
+	}
+
+	@Test
+	public void testResolveByNameListing() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		
+		for (Class<?> clazz : Arrays.<Class<?>>asList(Object1.class, Object2.class)) {
+			entries.put(clazz.getName().replace('.', '/') + ".class", Jars.bytes(clazz));
+		}
+		
+		File jar = Jars.create(folder.newFile("1.jar"), entries, true);
+		// Breaks the local header of Object2; the entry cannot be opened.
+		byte[] bytes = Jars.bytes(jar);
+		byte[] name = (Object2.class.getName().replace('.', '/') + ".class").getBytes("UTF-8");
+		
+		for (int i = 0; i <= bytes.length - name.length; i++) {
+			if (Arrays.equals(Arrays.copyOfRange(bytes, i, i + name.length), name)) {
+				bytes[i - 30] = 0;
+				break;
+			}
+		}
+		
+		Files.write(jar.toPath(), bytes);
+		BytecodeClassResolver resolver = new BytecodeClassResolver(Arrays.asList(jar.toURI().toURL()));
+		resolver.pool(new JarFilePool(0));
+		// Listed by the entry names; only the matched class file is read.
+		assertThat(resolver.names().find("Object").size(), is(2));
+		assertThat(resolver.resolveByName("Object1"), is(Collections.singleton(classFile(Object1.class))));
+		
+		try {
+			resolver.hierarchy();
+			fail();
+		} catch (IOException e) {}
+		
+		resolver.close();
+	}
+
+	@Test
+	public void testManifestClassPath() throws IOException {
+		File jar1 = Jars.create(folder.newFile("1.jar"), "2.jar", Object1.class);
+		File jar2 = Jars.create(folder.newFile("2.jar"), "1.jar ./3.jar lib/", Object2.class);
+		File jar3 = Jars.create(folder.newFile("3.jar"), "2.jar 4.jar", Object3.class);
+		File lib = folder.newFolder("lib");
+		BytecodeClassResolver resolver = new BytecodeClassResolver(Arrays.asList(
+				jar1.toURI().toURL(), jar3.toURI().toURL(), new File(folder.getRoot(), "./2.jar").toURI().toURL()));
+		List<Source> sources = resolver.sources();
+		List<URL> urls = new ArrayList<URL>();
+		
+		for (Source source : sources) {
+			urls.add(source.url());
+		}
+		
+		assertThat(sources.size(), is(4));
+		assertThat(urls.get(0).getPath(), is(jar3.toURI().toURL().getPath()));
+		assertThat(urls.get(1).getPath(), is(lib.toURI().toURL().getPath()));
+		assertThat(urls.get(2).getPath(), is(jar2.toURI().toURL().getPath()));
+		assertThat(urls.get(3).getPath(), is(jar1.toURI().toURL().getPath()));
+		final List<String> names = new ArrayList<String>();
+		Set<ClassFile> set = resolver.resolve(new Matcher<ClassFile>() {
+			
+			public boolean matches(ClassFile clazz) {
+				names.add(clazz.name());
+				return true;
+			}
+			
+		});
+		assertThat(set.size(), is(3));
+		assertThat(names.size(), is(3));
+		resolver.close();
+	}
+
+	@Test
+	public void testNestedJar() throws IOException {
+		File lib1 = Jars.create(folder.newFile("lib1.jar"), null, Object1.class, Object2.class);
+		File lib2 = Jars.create(folder.newFile("lib2.jar"), null, Object3.class);
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put("BOOT-INF/classes/" + Object4.class.getName().replace('.', '/') + ".class", Jars.bytes(Object4.class));
+		entries.put("BOOT-INF/lib/lib1.jar", Jars.bytes(lib1));
+		entries.put("WEB-INF/lib/lib2.jar", Jars.bytes(lib2));
+		entries.put("META-INF/lib/lib2.jar", Jars.bytes(lib2));
+		
+		for (boolean stored : new boolean[] {true, false}) {
+			File jar = Jars.create(new File(folder.getRoot(), stored + ".jar"), entries, stored);
+			ClassIndex index = new ClassIndex();
+			BytecodeClassResolver resolver = new BytecodeClassResolver(Arrays.asList(jar.toURI().toURL()));
+			resolver.index(index);
+			Set<ClassFile> set = resolver.resolveByName("");
+			assertThat(set.size(), is(4));
+			assertThat(set.contains(classFile(Object1.class)), is(true));
+			assertThat(set.contains(classFile(Object2.class)), is(true));
+			assertThat(set.contains(classFile(Object3.class)), is(true));
+			assertThat(set.contains(classFile(Object4.class)), is(true));
+			resolver.hierarchy();
+			assertThat(index.size(), is(1));
+			
+			JLCClassResolver resolver2 = new JLCClassResolver(Arrays.asList(jar.toURI().toURL()));
+			Set<Class<?>> set2 = resolver2.resolveByInterface(Interface1.class);
+			assertThat(set2.size(), is(1));
+			assertThat(set2.contains(Object3.class), is(true));
+			
+			for (Source source : resolver.sources()) {
+				Iterator<Resource> iterator = source.iterator();
+				
+				while (iterator.hasNext()) {
+					Resource resource = iterator.next();
+					assertThat(resource.classFile(), is(notNullValue()));
+					assertThat(ClassFile.read(resource.open()).name(), is(resource.name()));
+				}
+				
+				source.close();
+			}
+			
+			resolver.close();
+		}
+	}
+
+	@Test
+	public void testResource() throws IOException {
+		File lib = Jars.create(folder.newFile("lib.jar"), null, Object1.class);
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put("BOOT-INF/classes/" + Object2.class.getName().replace('.', '/') + ".class", Jars.bytes(Object2.class));
+		entries.put("BOOT-INF/lib/lib.jar", Jars.bytes(lib));
+		entries.put(Object3.class.getName().replace('.', '/') + ".class", Jars.bytes(Object3.class));
+		File jar = Jars.create(folder.newFile("1.jar"), entries, true);
+		File directory = folder.newFolder("classes");
+		File file = new File(directory, Object4.class.getName().replace('.', '/') + ".class");
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), Jars.bytes(Object4.class));
+		ClassIndex index = new ClassIndex();
+		
+		for (int i = 0; i < 2; i++) {
+			// Scanned and recorded at first, answered from ClassIndex next.
+			BytecodeClassResolver resolver = new BytecodeClassResolver(Arrays.asList(
+					jar.toURI().toURL(), directory.toURI().toURL()));
+			resolver.index(index);
+			Set<String> names = new HashSet<String>();
+			
+			for (Source source : resolver.sources()) {
+				for (Resource resource : source) {
+					Resource found = source.resource(resource.name(), resource.entry());
+					assertThat(found.name(), is(resource.name()));
+					assertThat(found.entry(), is(resource.entry()));
+					assertThat(found.source() == source && resource.source() == source, is(true));
+					assertThat(found.classFile() == resource.classFile(), is(true));
+					assertThat(ClassFile.read(found.open()).name(), is(resource.name()));
+					assertThat(ClassFile.read(source.resource(resource.name(), -1).open()).name(), is(resource.name()));
+					names.add(resource.name());
+					
+					if (resource.recording()) {
+						resource.record(ClassFile.read(resource.open()));
+					}
+				}
+				
+				source.commit();
+				source.close();
+			}
+			
+			assertThat(names, is((Set<String>) new HashSet<String>(Arrays.asList(Object1.class.getName(), 
+					Object2.class.getName(), Object3.class.getName(), Object4.class.getName()))));
+			assertThat(resolver.resolveByName("Object").size(), is(4));
+			resolver.close();
+		}
+		
+		assertThat(index.size(), is(1));
+	}
+
+	@Test
+	public void testResolveMembers() throws IOException {
+		File jar = Jars.create(folder.newFile("1.jar"), null, Object4.class, Object5.class);
+		ClassIndex index = new ClassIndex(new File(folder.getRoot(), "classes.idx"));
+		
+		for (int i = 0; i < 2; i++) {
+			BytecodeClassResolver resolver = new BytecodeClassResolver(Arrays.asList(jar.toURI().toURL()));
+			resolver.index(index);
+			Set<Member> set = resolver.resolveMembers(Annotation1.class);
+			assertThat(set.size(), is(3));
+			assertThat(set.contains(new Member(Object5.class.getName(), "field1", 
+					"Ljava/lang/Object;", 0, new ArrayList<String>())), is(true));
+			assertThat(set.contains(new Member(Object5.class.getName(), "<init>", 
+					"()V", 0, new ArrayList<String>())), is(true));
+			assertThat(set.contains(new Member(Object5.class.getName(), "method1", 
+					"(Ljava/lang/String;I)V", 0, new ArrayList<String>())), is(true));
+			assertThat(resolver.resolveMembers(Deprecated.class).size(), is(1));
+			assertThat(resolver.resolveMembers(Override.class).size(), is(0));
+			
+			set = resolver.resolveMembers(new Matcher<Member>() {
+				
+				public boolean matches(Member member) {
+					return member.isMethod() && !member.isConstructor();
+				}
+				
+			});
+			assertThat(set.size(), is(1));
+			Member member = set.iterator().next();
+			assertThat(member.name(), is("method1"));
+			assertThat(member.annotations(), is(Arrays.asList(
+					Annotation1.class.getName(), Deprecated.class.getName())));
+			resolver.close();
+			index.store();
+			index = new ClassIndex(new File(folder.getRoot(), "classes.idx"));
+		}
+	}
+
+	@Test
+	public void testResolveByReference() throws Exception {
+		File jar = Jars.create(folder.newFile("1.jar"), null, Object3.class, Object4.class, 
+				Object5.class, Object8.class, Interface1.class, Superclass1.class);
+		BytecodeClassResolver resolver = new BytecodeClassResolver(Arrays.asList(jar.toURI().toURL()));
+		Set<ClassFile> set = resolver.resolveByReference(Interface1.class);
+		assertThat(set.size(), is(3));
+		assertThat(set.contains(classFile(Object3.class)), is(true));
+		assertThat(set.contains(classFile(Object5.class)), is(true));
+		assertThat(set.contains(classFile(Object8.class)), is(true));
+		set = resolver.resolveByReference(Superclass1.class);
+		assertThat(set.size(), is(1));
+		assertThat(set.contains(classFile(Object5.class)), is(true));
+		assertThat(resolver.resolveByReference(Object3.class).size(), is(0));
+		assertThat(resolver.resolveByReference("org.eiichiro.reverb.lang.Removed").size(), is(0));
+		
+		set = resolver.resolveByReference(Object5.class.getMethod("method1", String.class, int.class));
+		assertThat(set.size(), is(1));
+		assertThat(set.contains(classFile(Object8.class)), is(true));
+		assertThat(resolver.resolveByReference(Object5.class.getMethod("method2")).size(), is(0));
+		assertThat(resolver.resolveByReference(Object5.class.getConstructor()).size(), is(1));
+		assertThat(resolver.resolveByReference(Object5.class.getDeclaredField("field1")).size(), is(1));
+		assertThat(resolver.resolveByReference(Object5.class.getDeclaredField("field2")).size(), is(0));
+		assertThat(resolver.resolveByReference(Object5.class.getName(), "method1", null).size(), is(1));
+		assertThat(resolver.resolveByReference(Object5.class.getName(), "method1", "()V").size(), is(0));
+		
+		ClassIndex index = new ClassIndex();
+		resolver.index(index);
+		resolver.parallel();
+		set = resolver.resolveByReference(Interface1.class);
+		assertThat(set.size(), is(3));
+		assertThat(index.get(jar).classes().size(), is(6));
+		resolver.close();
+	}
+
+	@Test
+	public void testResolveNameMatcherIndex() throws IOException {
+		File jar = Jars.create(folder.newFile("1.jar"), null, Object3.class, Object4.class);
+		ClassIndex index = new ClassIndex();
+		BytecodeClassResolver resolver = new BytecodeClassResolver(Arrays.asList(jar.toURI().toURL()));
+		resolver.index(index);
+		Set<ClassFile> set = resolver.resolve(new ClassResolver.NameMatcher<ClassFile>() {
+			
+			public boolean accepts(String name) {
+				return name.endsWith("Object3");
+			}
+			
+			public boolean matches(ClassFile clazz) {
+				return true;
+			}
+			
+		});
+		assertThat(set.size(), is(1));
+		assertThat(index.get(jar).classes().size(), is(2));
+		resolver.close();
+	}
+
+	@Test
+	public void testMultiRelease() throws IOException {
+		String prefix = Object1.class.getPackage().getName().replace('.', '/') + "/";
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\nMulti-Release: true\r\n\r\n".getBytes("UTF-8"));
+		// The base and versioned class files are distinguished by their contents.
+		entries.put(prefix + "Object1.class", Jars.bytes(Object4.class));
+		entries.put("META-INF/versions/9/" + prefix + "Object1.class", Jars.bytes(Object1.class));
+		entries.put("META-INF/versions/99/" + prefix + "Object1.class", Jars.bytes(Object5.class));
+		entries.put("META-INF/versions/9/" + prefix + "Object3.class", Jars.bytes(Object3.class));
+		entries.put("META-INF/versions/9/module-info.class", new byte[0]);
+		File jar = Jars.create(folder.newFile("multi-release.jar"), entries, false);
+		ClassIndex index = new ClassIndex();
+		Set<String> expected = (Source.JarSource.RELEASE >= 9)
+				? new HashSet<String>(Arrays.asList(Object1.class.getName(), Object3.class.getName()))
+				: new HashSet<String>(Arrays.asList(Object4.class.getName()));
+		
+		for (int i = 0; i < 2; i++) {
+			BytecodeClassResolver resolver = new BytecodeClassResolver(Arrays.asList(jar.toURI().toURL()));
+			resolver.index(index);
+			assertThat(names(resolver.resolve(all())), is(expected));
+			resolver.close();
+		}
+		
+		assertThat(index.get(jar).release(), is(Source.JarSource.RELEASE));
+		BytecodeClassResolver resolver = new BytecodeClassResolver(Arrays.asList(jar.toURI().toURL()));
+		resolver.index(index);
+		// The class file is opened from the versioned entry from the index.
+		assertThat(names(resolver.resolveByName("Object1")), is((Source.JarSource.RELEASE >= 9)
+				? Collections.singleton(Object1.class.getName()) : Collections.<String>emptySet()));
+		resolver.close();
+		
+		// Not a multi-release jar.
+		entries.remove("META-INF/MANIFEST.MF");
+		jar = Jars.create(folder.newFile("jar.jar"), entries, false);
+		resolver = new BytecodeClassResolver(Arrays.asList(jar.toURI().toURL()));
+		assertThat(names(resolver.resolve(all())), is(Collections.singleton(Object4.class.getName())));
+		resolver.close();
+	}
+	
+	@Test
+	public void testModuleImage() throws IOException {
+		if (Source.JarSource.RELEASE < 9) {
+			// No module image.
+			return;
+		}
+		
+		BytecodeClassResolver resolver = new BytecodeClassResolver(Arrays.asList(new URL("jrt:/java.sql")));
+		assertThat(names(resolver.resolveByName("DriverManager")).contains("java.sql.DriverManager"), is(true));
+		assertThat(resolver.hierarchy().subclasses("java.sql.SQLException").contains("java.sql.SQLWarning"), is(true));
+		resolver = new BytecodeClassResolver(Arrays.asList(new URL("jrt:/")));
+		resolver.include("java.sql");
+		assertThat(names(resolver.resolveByName("DriverManager")).contains("java.sql.DriverManager"), is(true));
+		assertThat(new BytecodeClassResolver(Arrays.asList(new URL("jrt:/no.such.module"))).resolve(all()).isEmpty(), is(true));
+	}
+	
+	@Test
+	public void testResolveAsync() throws Exception {
+		File jar = Jars.create(folder.newFile("1.jar"), null, Object1.class, Object3.class, Object4.class);
+		BytecodeClassResolver resolver = new BytecodeClassResolver(Arrays.asList(jar.toURI().toURL()));
+		final long[] progress = new long[2];
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		Set<ClassFile> set = resolver.resolveAsync(all(), executor, new ClassResolver.Progress() {
+			
+			public void progress(long entries, long bytes) {
+				progress[0] = entries;
+				progress[1] = bytes;
+			}
+			
+		}).get();
+		assertThat(names(set), is(names(resolver.resolve(all()))));
+		assertThat(progress[0], is(3L));
+		assertThat(progress[1] > 0, is(true));
+		assertThat(resolver.resolveAsync(all(), executor).get().size(), is(3));
+		executor.shutdown();
+		
+		// Cancelled while traversing.
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+		Executor queue = new Executor() {
+			
+			public void execute(Runnable command) {
+				tasks.add(command);
+			}
+			
+		};
+		final List<CompletableFuture<Set<ClassFile>>> futures = new ArrayList<CompletableFuture<Set<ClassFile>>>();
+		futures.add(resolver.resolveAsync(all(), queue, new ClassResolver.Progress() {
+			
+			public void progress(long entries, long bytes) {
+				progress[0] = entries;
+				futures.get(0).cancel(true);
+			}
+			
+		}));
+		tasks.get(0).run();
+		assertThat(futures.get(0).isCancelled(), is(true));
+		assertThat(progress[0], is(1L));
+		
+		// Cancelled before started.
+		CompletableFuture<Set<ClassFile>> future = resolver.resolveAsync(all(), queue);
+		future.cancel(true);
+		tasks.get(1).run();
+		assertThat(future.isCancelled(), is(true));
+		
+		// Failed.
+		future = new BytecodeClassResolver(Arrays.asList(new File(folder.getRoot(), "missing.jar").toURI().toURL())).resolveAsync(all(), queue);
+		tasks.get(2).run();
+		assertThat(future.isCompletedExceptionally(), is(true));
+		resolver.close();
+	}
+
+	private static Matcher<ClassFile> all() {
+		return new Matcher<ClassFile>() {
+			
+			public boolean matches(ClassFile clazz) {
+				return true;
+			}
+			
+		};
+	}
+	
+	private static Set<String> names(Set<ClassFile> classes) {
+		Set<String> names = new HashSet<String>();
+		
+		for (ClassFile clazz : classes) {
+			names.add(clazz.name());
+		}
+		
+		return names;
+	}
+	
+	static List<URL> paths() throws MalformedURLException {
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		List<URL> paths = new ArrayList<URL>();
+		
+		if (classLoader instanceof URLClassLoader) {
+			// JDK <=8
+			paths = Arrays.asList(((URLClassLoader) classLoader).getURLs());
+		} else {
+			// JDK >9
+			for (String path : Environment.getProperty("java.class.path").split(File.pathSeparator)) {
+				paths.add(new File(path).toURI().toURL());
+			}
+		}
+		
+		return paths;
+	}
+
+	private static ClassFile classFile(Class<?> clazz) {
+		return new ClassFile(clazz.getName(), 0, null, new ArrayList<String>(), new ArrayList<String>());
+	}
+
+}
@@ -0,0 +1,94 @@
+package org.eiichiro.reverb.lang;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ClassFileTest {
+
+	@Test
+	public void testRead() throws IOException {
+		ClassFile classFile = read(Object5.class);
+		assertThat(classFile.name(), is(Object5.class.getName()));
+		assertThat(classFile.superclass(), is(Superclass1.class.getName()));
+		assertThat(classFile.interfaces(), is(Arrays.asList(Interface1.class.getName())));
+		assertThat(classFile.annotations(), is(Arrays.asList(Annotation1.class.getName())));
+		assertThat(classFile.isInterface(), is(false));
+		assertThat(classFile.isAbstract(), is(false));
+		
+		classFile = read(Superclass1.class);
+		assertThat(classFile.superclass(), is(Object.class.getName()));
+		assertThat(classFile.isAbstract(), is(true));
+		
+		classFile = read(Annotation1.class);
+		assertThat(classFile.isInterface(), is(true));
+		assertThat(classFile.isAnnotation(), is(true));
+		assertThat(classFile.annotations().contains("java.lang.annotation.Retention"), is(true));
+		
+		classFile = read(Object.class);
+		assertThat(classFile.name(), is(Object.class.getName()));
+		assertThat(classFile.superclass(), is(nullValue()));
+		
+		classFile = read(ClassResolver.Matcher.class);
+		assertThat(classFile.name(), is("org.eiichiro.reverb.lang.ClassResolver$Matcher"));
+	}
+
+	@Test
+	public void testReadMembers() throws IOException {
+		ClassFile classFile = read(Object5.class);
+		List<Member> members = classFile.members();
+		assertThat(members.size(), is(3));
+		Member member = members.get(0);
+		assertThat(member.declaringClass(), is(Object5.class.getName()));
+		assertThat(member.name(), is("field1"));
+		assertThat(member.descriptor(), is("Ljava/lang/Object;"));
+		assertThat(member.isField(), is(true));
+		assertThat(member.annotations(), is(Arrays.asList(Annotation1.class.getName())));
+		member = members.get(1);
+		assertThat(member.name(), is("<init>"));
+		assertThat(member.isMethod(), is(true));
+		assertThat(member.isConstructor(), is(true));
+		member = members.get(2);
+		assertThat(member.name(), is("method1"));
+		assertThat(member.descriptor(), is("(Ljava/lang/String;I)V"));
+		assertThat(member.access(), is(Modifier.PUBLIC));
+		assertThat(member.isMethod(), is(true));
+		assertThat(member.isConstructor(), is(false));
+		assertThat(member.annotations(), is(Arrays.asList(
+				Annotation1.class.getName(), Deprecated.class.getName())));
+		assertThat(member.toString(), is(Object5.class.getName() + "#method1(Ljava/lang/String;I)V"));
+		
+		assertThat(read(Object4.class).members().isEmpty(), is(true));
+	}
+
+	@Test
+	public void testReadInvalid() throws IOException {
+		assertThat(ClassFile.read(new ByteArrayInputStream(new byte[] {1, 2, 3})), is(nullValue()));
+		assertThat(ClassFile.read(new byte[] {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0, 0, 0, 52, 0, 10}), is(nullValue()));
+	}
+
+	@Test
+	public void testLoad() throws IOException, ClassNotFoundException {
+		ClassFile classFile = read(Object4.class);
+		assertThat(classFile.load(getClass().getClassLoader()) == Object4.class, is(true));
+	}
+
+	private static ClassFile read(Class<?> clazz) throws IOException {
+		InputStream stream = ClassLoader.getSystemResourceAsStream(clazz.getName().replace('.', '/') + ".class");
+		
+		try {
+			return ClassFile.read(stream);
+		} finally {
+			stream.close();
+		}
+	}
+
+}
@@ -0,0 +1,147 @@
+package org.eiichiro.reverb.lang;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassIndexProcessorTest {
+
+	private static final String SOURCE = "package example;\n"
+			+ "import java.util.List;\n"
+			+ "import org.eiichiro.reverb.lang.Annotation1;\n"
+			+ "@Annotation1 @SuppressWarnings(\"all\")\n"
+			+ "public class Plugin<T extends Comparable<T>> extends java.util.AbstractList<T> implements Runnable, java.io.Serializable {\n"
+			+ "  @Annotation1 private transient volatile int count;\n"
+			+ "  @Deprecated protected static final String[][] NAMES = {};\n"
+			+ "  @Annotation1 public Plugin(List<? super T> list, int... values) {}\n"
+			+ "  public void run() {}\n"
+			+ "  public T get(int index) { return null; }\n"
+			+ "  public int size() { return 0; }\n"
+			+ "  @Annotation1 synchronized <E extends Exception> T find(T key, E error, long[] ids, double d) throws E { return null; }\n"
+			+ "  @Annotation1 public abstract static class Nested implements Extension { @Annotation1 Nested() {} }\n"
+			+ "  public class Inner { @Annotation1 public Inner(char c, boolean b) {} }\n"
+			+ "  public interface Extension { @Annotation1 void extend(byte b, short s, float f); @Annotation1 String NAME = \"\"; }\n"
+			+ "  @java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME) public @interface Marker { String value() default \"\"; }\n"
+			+ "  @Marker enum Kind { @Annotation1 A, B; @Annotation1 Kind() {} }\n"
+			+ "  @java.lang.annotation.Documented @interface Source {}\n"
+			+ "}\n";
+			
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testProcess() throws IOException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		
+		if (compiler == null) {
+			// Not on JDK.
+			return;
+		}
+		
+		File source = new File(folder.newFolder("example"), "Plugin.java");
+		Writer writer = new OutputStreamWriter(new FileOutputStream(source), "UTF-8");
+		
+		try {
+			writer.write(SOURCE);
+		} finally {
+			writer.close();
+		}
+		
+		File classes = folder.newFolder("classes");
+		int result = compiler.run(null, null, null, "-nowarn",
+				"-classpath", System.getProperty("java.class.path"),
+				"-processor", ClassIndexProcessor.class.getName(),
+				"-d", classes.getPath(), source.getPath());
+		assertThat(result, is(0));
+		File index = new File(classes, ClassIndexer.INDEX);
+		assertThat(index.isFile(), is(true));
+		InputStream stream = new FileInputStream(index);
+		Map<String, String> processed;
+		
+		try {
+			processed = describe(ClassIndexer.read(stream));
+		} finally {
+			stream.close();
+		}
+		
+		// The same as read from the class files.
+		Map<String, String> indexed = describe(ClassIndexer.index(classes));
+		assertThat(processed.keySet(), is(indexed.keySet()));
+		assertThat(processed.keySet().containsAll(Arrays.asList("example.Plugin", "example.Plugin$Nested",
+				"example.Plugin$Inner", "example.Plugin$Extension", "example.Plugin$Marker",
+				"example.Plugin$Kind", "example.Plugin$Source")), is(true));
+				
+		for (String name : processed.keySet()) {
+			assertThat(processed.get(name), is(indexed.get(name)));
+		}
+		
+		// The incremental compilation keeps the records of the others.
+		source = new File(source.getParentFile(), "Extra.java");
+		writer = new OutputStreamWriter(new FileOutputStream(source), "UTF-8");
+		
+		try {
+			writer.write("package example;\npublic class Extra {}\n");
+		} finally {
+			writer.close();
+		}
+		
+		result = compiler.run(null, null, null, "-nowarn",
+				"-classpath", System.getProperty("java.class.path"),
+				"-processor", ClassIndexProcessor.class.getName(),
+				"-d", classes.getPath(), source.getPath());
+		assertThat(result, is(0));
+		stream = new FileInputStream(index);
+		
+		try {
+			processed = describe(ClassIndexer.read(stream));
+		} finally {
+			stream.close();
+		}
+		
+		assertThat(processed.keySet(), is(describe(ClassIndexer.index(classes)).keySet()));
+		assertThat(processed.containsKey("example.Extra"), is(true));
+		assertThat(processed.containsKey("example.Plugin$Nested"), is(true));
+	}
+
+	private static Map<String, String> describe(List<ClassFile> classes) {
+		Map<String, String> descriptions = new TreeMap<String, String>();
+		
+		for (ClassFile clazz : classes) {
+			StringBuilder description = new StringBuilder();
+			description.append(clazz.isInterface()).append(clazz.isAnnotation())
+					.append(clazz.isEnum()).append(clazz.isAbstract())
+					.append(' ').append(clazz.superclass())
+					.append(' ').append(clazz.interfaces())
+					.append(' ').append(clazz.annotations());
+					
+			for (Member member : clazz.members()) {
+				description.append(' ').append(member.name()).append(member.descriptor())
+						.append(':').append(Integer.toHexString(member.access()))
+						.append(member.annotations());
+			}
+			
+			descriptions.put(clazz.name(), description.toString());
+		}
+		
+		return descriptions;
+	}
+
+}
@@ -0,0 +1,264 @@
+package org.eiichiro.reverb.lang;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassIndexTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testClassIndex() throws IOException {
+		ClassIndex index = new ClassIndex();
+		assertThat(index.file(), is(nullValue()));
+		assertThat(index.size(), is(0));
+		index.store();
+		
+		File file = folder.newFile("classes.idx");
+		file.delete();
+		index = new ClassIndex(file);
+		assertThat(index.file(), is(file));
+		assertThat(index.size(), is(0));
+	}
+
+	@Test
+	public void testStore() throws IOException {
+		File jar = Jars.create(folder.newFile("1.jar"), "2.jar", Object4.class, Object5.class);
+		File file = new File(folder.getRoot(), "classes.idx");
+		ClassIndex index = new ClassIndex(file);
+		BytecodeClassResolver resolver = new BytecodeClassResolver(Arrays.asList(jar.toURI().toURL()));
+		resolver.index(index);
+		assertThat(resolver.index(), is(index));
+		Set<ClassFile> set = resolver.resolveByName("bject");
+		assertThat(set.size(), is(2));
+		resolver.hierarchy();
+		assertThat(index.size(), is(1));
+		index.store();
+		assertThat(file.isFile(), is(true));
+		
+		index = new ClassIndex(file);
+		assertThat(index.size(), is(1));
+		ClassIndex.Entry entry = index.get(jar);
+		assertThat(entry, is(notNullValue()));
+		assertThat(entry.classPath(), is("2.jar"));
+		assertThat(entry.classes().size(), is(2));
+		ClassFile classFile = entry.classes().get(1);
+		assertThat(classFile.name(), is(Object5.class.getName()));
+		assertThat(classFile.superclass(), is(Superclass1.class.getName()));
+		assertThat(classFile.interfaces(), is(Arrays.asList(Interface1.class.getName())));
+		assertThat(classFile.annotations(), is(Arrays.asList(Annotation1.class.getName())));
+		
+		resolver = new BytecodeClassResolver(Arrays.asList(jar.toURI().toURL()));
+		resolver.index(index);
+		set = resolver.resolveByAnnotation(Annotation1.class);
+		assertThat(set.size(), is(2));
+		
+		JLCClassResolver resolver2 = new JLCClassResolver(Arrays.asList(jar.toURI().toURL()));
+		resolver2.index(index);
+		Set<Class<?>> set2 = resolver2.resolveByInterface(Interface1.class);
+		assertThat(set2.size(), is(1));
+		assertThat(set2.contains(Object5.class), is(true));
+		
+		// The temporary file is deleted if the index file cannot be replaced.
+		File directory = folder.newFolder("classes2.idx");
+		new File(directory, "file").createNewFile();
+		index = new ClassIndex(directory);
+		index.put(jar, null, 0, new ArrayList<ClassFile>());
+		int files = folder.getRoot().list().length;
+		
+		try {
+			index.store();
+			fail();
+		} catch (IOException e) {}
+		
+		assertThat(folder.getRoot().list().length, is(files));
+	}
+
+	@Test
+	public void testGet() throws IOException {
+		File jar = Jars.create(folder.newFile("1.jar"), null, Object1.class);
+		ClassIndex index = new ClassIndex();
+		index.put(jar, null, Arrays.asList(ClassFile.read(Jars.bytes(Object1.class))));
+		assertThat(index.get(jar), is(notNullValue()));
+		assertThat(jar.setLastModified(jar.lastModified() - 10000), is(true));
+		assertThat(index.get(jar), is(nullValue()));
+		index.clear();
+		assertThat(index.size(), is(0));
+	}
+
+	@Test
+	public void testInvalidFile() throws IOException {
+		File file = folder.newFile("classes.idx");
+		Files.write(file.toPath(), new byte[] {0x52, 0x56, 0x49, 0x58, 0, 0, 0, 1, 0, 0});
+		ClassIndex index = new ClassIndex(file);
+		assertThat(index.size(), is(0));
+		
+		// Negative count.
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		output.writeInt(0x52564958);
+		output.writeInt(4);
+		output.writeInt(-1);
+		Files.write(file.toPath(), bytes.toByteArray());
+		index = new ClassIndex(file);
+		assertThat(index.size(), is(0));
+		
+		// Offset out of range.
+		bytes.reset();
+		output.writeInt(0x52564958);
+		output.writeInt(4);
+		output.writeInt(1);
+		output.writeUTF("1.jar");
+		output.writeLong(0);
+		output.writeLong(0);
+		output.writeInt(0);
+		output.writeInt(1000);
+		Files.write(file.toPath(), bytes.toByteArray());
+		index = new ClassIndex(file);
+		assertThat(index.size(), is(0));
+	}
+
+	@Test
+	public void testBrokenRecord() throws IOException {
+		File jar = Jars.create(folder.newFile("1.jar"), null, Object1.class);
+		File file = new File(folder.getRoot(), "classes.idx");
+		ClassIndex index = new ClassIndex(file);
+		index.put(jar, null, Arrays.asList(ClassFile.read(Jars.bytes(Object1.class))));
+		index.store();
+		
+		// Breaks the length of the class name in the record.
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		byte[] name = Object1.class.getName().getBytes("UTF-8");
+		int position = indexOf(bytes, name);
+		assertThat(position > 2, is(true));
+		bytes[position - 2] = (byte) 0xff;
+		bytes[position - 1] = (byte) 0xff;
+		Files.write(file.toPath(), bytes);
+		
+		index = new ClassIndex(file);
+		assertThat(index.size(), is(1));
+		assertThat(index.get(jar).classes(), is(nullValue()));
+		
+		// Scanned and recorded again.
+		BytecodeClassResolver resolver = new BytecodeClassResolver(Arrays.asList(jar.toURI().toURL()));
+		resolver.index(index);
+		assertThat(resolver.hierarchy().classes().contains(Object1.class.getName()), is(true));
+		resolver.close();
+		assertThat(index.get(jar).classes().size(), is(1));
+		index.store();
+		index = new ClassIndex(file);
+		assertThat(index.get(jar).classes().size(), is(1));
+	}
+
+	private static int indexOf(byte[] bytes, byte[] pattern) {
+		for (int i = 0; i <= bytes.length - pattern.length; i++) {
+			if (Arrays.equals(Arrays.copyOfRange(bytes, i, i + pattern.length), pattern)) {
+				return i;
+			}
+		}
+		
+		return -1;
+	}
+
+	@Test
+	public void testSummary() throws IOException {
+		File jar = Jars.create(folder.newFile("1.jar"), null, Object4.class, Object6.class, Object7.class);
+		File file = new File(folder.getRoot(), "classes.idx");
+		ClassIndex index = new ClassIndex(file);
+		index.put(jar, null, Arrays.asList(ClassFile.read(Jars.bytes(Object4.class)), 
+				ClassFile.read(Jars.bytes(Object6.class)), ClassFile.read(Jars.bytes(Object7.class))));
+		ClassIndex.Entry entry = index.get(jar);
+		assertThat(entry.mightRefer(Annotation1.class.getName()), is(true));
+		assertThat(entry.mightRefer(Interface2.class.getName()), is(true));
+		assertThat(entry.supertypes(), is(Arrays.asList(Object.class.getName(), Interface2.class.getName())));
+		index.store();
+		
+		index = new ClassIndex(file);
+		entry = index.get(jar);
+		assertThat(entry.mightRefer(Annotation1.class.getName()), is(true));
+		assertThat(entry.mightRefer(Interface2.class.getName()), is(true));
+		assertThat(entry.supertypes(), is(Arrays.asList(Object.class.getName(), Interface2.class.getName())));
+		assertThat(entry.classes().size(), is(3));
+	}
+
+	@Test
+	public void testSkip() throws IOException {
+		File jar1 = Jars.create(folder.newFile("1.jar"), null, Object3.class, Object4.class);
+		File jar2 = Jars.create(folder.newFile("2.jar"), null, Object6.class);
+		File jar3 = Jars.create(folder.newFile("3.jar"), null, Object7.class);
+		File jar4 = Jars.create(folder.newFile("4.jar"), null, Object1.class);
+		List<URL> urls = Arrays.asList(jar1.toURI().toURL(), jar2.toURI().toURL(), 
+				jar3.toURI().toURL(), jar4.toURI().toURL());
+		ClassIndex index = new ClassIndex();
+		BytecodeClassResolver resolver = new BytecodeClassResolver(urls);
+		resolver.index(index);
+		assertThat(resolver.resolveByName("bject").size(), is(5));
+		resolver.hierarchy();
+		resolver.close();
+		assertThat(index.size(), is(4));
+		
+		// Broken with the same size and timestamp; the record is still used.
+		long lastModified = jar4.lastModified();
+		Files.write(jar4.toPath(), new byte[(int) jar4.length()]);
+		assertThat(jar4.setLastModified(lastModified), is(true));
+		
+		resolver = new BytecodeClassResolver(urls);
+		resolver.index(index).pool(new JarFilePool(0));
+		assertThat(names(resolver.resolveByAnnotation(Annotation1.class)), is(names(Object4.class)));
+		// Object7 implements Interface1 via Object6 in the other jar file.
+		assertThat(names(resolver.resolveByInterface(Interface1.class)), 
+				is(names(Object3.class, Object6.class, Object7.class)));
+		assertThat(names(resolver.resolveBySuperclass(Object6.class)), is(names(Object7.class)));
+		resolver.close();
+		
+		// Without the record, the broken jar file is read.
+		resolver = new BytecodeClassResolver(urls);
+		resolver.index(new ClassIndex()).pool(new JarFilePool(0));
+		
+		try {
+			resolver.resolveByName("bject");
+			fail();
+		} catch (Exception e) {
+		} finally {
+			resolver.close();
+		}
+	}
+
+	private static Set<String> names(Set<ClassFile> classes) {
+		Set<String> names = new HashSet<String>();
+		
+		for (ClassFile clazz : classes) {
+			names.add(clazz.name());
+		}
+		
+		return names;
+	}
+
+	private static Set<String> names(Class<?>... classes) {
+		Set<String> names = new HashSet<String>();
+		
+		for (Class<?> clazz : classes) {
+			names.add(clazz.getName());
+		}
+		
+		return names;
+	}
+
+}
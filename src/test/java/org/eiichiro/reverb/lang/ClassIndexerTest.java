@@ -0,0 +1,228 @@
+package org.eiichiro.reverb.lang;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipFile;
+
+import org.eiichiro.reverb.lang.ClassResolver.Matcher;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassIndexerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testIndexJar() throws IOException {
+		File jar = Jars.create(folder.newFile("1.jar"), null, Object1.class, Object3.class, Object4.class);
+		List<ClassFile> classes = ClassIndexer.index(jar);
+		assertThat(names(classes), is(names(Object1.class, Object3.class, Object4.class)));
+		// Indexed again; the index is replaced.
+		ClassIndexer.index(jar);
+		ZipFile zipFile = new ZipFile(jar);
+		
+		try {
+			assertThat(zipFile.size(), is(5));
+			assertThat(zipFile.getEntry("META-INF/MANIFEST.MF") == null, is(false));
+			InputStream stream = zipFile.getInputStream(zipFile.getEntry(ClassIndexer.INDEX));
+			
+			try {
+				assertThat(names(ClassIndexer.read(stream)), is(names(classes)));
+			} finally {
+				stream.close();
+			}
+			
+		} finally {
+			zipFile.close();
+		}
+	}
+
+	@Test
+	public void testIndexDirectory() throws IOException {
+		File directory = folder.newFolder("classes");
+		File file = new File(directory, Object1.class.getName().replace('.', '/') + ".class");
+		file.getParentFile().mkdirs();
+		FileOutputStream output = new FileOutputStream(file);
+		
+		try {
+			output.write(Jars.bytes(Object1.class));
+		} finally {
+			output.close();
+		}
+		
+		assertThat(names(ClassIndexer.index(directory)), is(names(Object1.class)));
+		InputStream stream = new FileInputStream(new File(directory, ClassIndexer.INDEX));
+		
+		try {
+			List<ClassFile> classes = ClassIndexer.read(stream);
+			assertThat(names(classes), is(names(Object1.class)));
+			assertThat(classes.get(0).annotations(), is(ClassFile.read(Jars.bytes(Object1.class)).annotations()));
+		} finally {
+			stream.close();
+		}
+		
+		try {
+			ClassIndexer.index(new File(directory, "missing"));
+			fail();
+		} catch (IllegalArgumentException e) {}
+	}
+
+	@Test
+	public void testRead() throws IOException {
+		List<ClassFile> classes = new ArrayList<ClassFile>();
+		classes.add(ClassFile.read(Jars.bytes(Object2.class)));
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ClassIndexer.write(output, classes);
+		byte[] bytes = output.toByteArray();
+		assertThat(names(ClassIndexer.read(new ByteArrayInputStream(bytes))), is(names(Object2.class)));
+		// Truncated.
+		assertThat(ClassIndexer.read(new ByteArrayInputStream(Arrays.copyOf(bytes, 10))) == null, is(true));
+		// Not an index.
+		assertThat(ClassIndexer.read(new ByteArrayInputStream(new byte[16])) == null, is(true));
+		// Negative count.
+		byte[] negative = Arrays.copyOf(bytes, 12);
+		Arrays.fill(negative, 8, 12, (byte) 0xff);
+		assertThat(ClassIndexer.read(new ByteArrayInputStream(negative)) == null, is(true));
+		// Malformed modified UTF-8 class name.
+		byte[] malformed = Arrays.copyOf(bytes, 16);
+		malformed[12] = 0;
+		malformed[13] = 2;
+		malformed[14] = (byte) 0xff;
+		malformed[15] = (byte) 0xff;
+		assertThat(ClassIndexer.read(new ByteArrayInputStream(malformed)) == null, is(true));
+	}
+
+	@Test
+	public void testRewriteFailure() throws IOException {
+		// The stored entry is corrupted after the jar file is created, so the 
+		// copy fails with CRC mismatch.
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put(Object1.class.getName().replace('.', '/') + ".class", Jars.bytes(Object1.class));
+		entries.put("data.txt", "0123456789ABCDEF".getBytes("US-ASCII"));
+		File jar = Jars.create(folder.newFile("1.jar"), entries, true);
+		byte[] bytes = Jars.bytes(jar);
+		String content = new String(bytes, "ISO-8859-1");
+		bytes[content.indexOf("0123456789ABCDEF")] = 'X';
+		FileOutputStream output = new FileOutputStream(jar);
+		
+		try {
+			output.write(bytes);
+		} finally {
+			output.close();
+		}
+		
+		try {
+			ClassIndexer.index(jar);
+			fail();
+		} catch (IOException e) {}
+		
+		assertThat(new File(jar.getPath() + ".tmp").exists(), is(false));
+		assertThat(Arrays.equals(Jars.bytes(jar), bytes), is(true));
+	}
+
+	@Test
+	public void testResolve() throws IOException {
+		// The class files in the jar file are broken; only the index is valid.
+		List<ClassFile> classes = new ArrayList<ClassFile>();
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		
+		for (Class<?> clazz : Arrays.<Class<?>>asList(Object1.class, Object2.class, Object3.class)) {
+			classes.add(ClassFile.read(Jars.bytes(clazz)));
+			entries.put(clazz.getName().replace('.', '/') + ".class", new byte[] {0});
+		}
+		
+		ByteArrayOutputStream index = new ByteArrayOutputStream();
+		ClassIndexer.write(index, classes);
+		entries.put(ClassIndexer.INDEX, index.toByteArray());
+		File jar = Jars.create(folder.newFile("1.jar"), entries, false);
+		BytecodeClassResolver resolver = new BytecodeClassResolver(Arrays.asList(jar.toURI().toURL()));
+		ClassIndex classIndex = new ClassIndex();
+		resolver.index(classIndex);
+		Set<String> names = new HashSet<String>();
+		
+		for (ClassFile clazz : resolver.resolveByInterface(Interface1.class)) {
+			names.add(clazz.name());
+		}
+		
+		assertThat(names, is(names(Object3.class)));
+		assertThat(names(classIndex.get(jar).classes()), is(names(Object1.class, Object2.class, Object3.class)));
+		resolver.close();
+		
+		// Not trusted by the indexer itself.
+		assertThat(ClassIndexer.index(jar).isEmpty(), is(true));
+	}
+
+	@Test
+	public void testResolvePartial() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		
+		for (Class<?> clazz : Arrays.<Class<?>>asList(Object1.class, Object2.class)) {
+			entries.put(clazz.getName().replace('.', '/') + ".class", Jars.bytes(clazz));
+		}
+		
+		Matcher<ClassFile> matcher = new Matcher<ClassFile>() {
+			
+			public boolean matches(ClassFile clazz) {
+				return true;
+			}
+			
+		};
+		
+		// Written by the incremental compilation (or without the anonymous classes).
+		ByteArrayOutputStream index = new ByteArrayOutputStream();
+		ClassIndexer.write(index, Arrays.asList(ClassFile.read(Jars.bytes(Object1.class))));
+		entries.put(ClassIndexer.INDEX, index.toByteArray());
+		File jar = Jars.create(folder.newFile("1.jar"), entries, false);
+		BytecodeClassResolver resolver = new BytecodeClassResolver(Arrays.asList(jar.toURI().toURL()));
+		assertThat(names(new ArrayList<ClassFile>(resolver.resolve(matcher))), is(names(Object1.class, Object2.class)));
+		resolver.close();
+		
+		// Lists the class removed since.
+		index = new ByteArrayOutputStream();
+		ClassIndexer.write(index, Arrays.asList(ClassFile.read(Jars.bytes(Object1.class)),
+				ClassFile.read(Jars.bytes(Object2.class)), ClassFile.read(Jars.bytes(Object3.class))));
+		entries.put(ClassIndexer.INDEX, index.toByteArray());
+		jar = Jars.create(folder.newFile("2.jar"), entries, false);
+		resolver = new BytecodeClassResolver(Arrays.asList(jar.toURI().toURL()));
+		assertThat(names(new ArrayList<ClassFile>(resolver.resolve(matcher))), is(names(Object1.class, Object2.class)));
+		resolver.close();
+	}
+
+	private static Set<String> names(Class<?>... classes) {
+		Set<String> names = new HashSet<String>();
+		
+		for (Class<?> clazz : classes) {
+			names.add(clazz.getName());
+		}
+		
+		return names;
+	}
+
+	private static Set<String> names(List<ClassFile> classes) {
+		Set<String> names = new HashSet<String>();
+		
+		for (ClassFile clazz : classes) {
+			names.add(clazz.name());
+		}
+		
+		return names;
+	}
+
+}
@@ -0,0 +1,85 @@
+package org.eiichiro.reverb.lang;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassListTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testAdd() throws IOException {
+		ClassList list = new ClassList(resolver());
+		assertThat(list.addByInterface(Interface1.class), is(list));
+		assertThat(new ArrayList<String>(list.classes()), is(Arrays.asList(
+				Interface2.class.getName(), Object3.class.getName(), Object5.class.getName(), 
+				Object6.class.getName(), Object7.class.getName())));
+		list = new ClassList(resolver()).addByAnnotation(Annotation1.class)
+				.addBySuperclass(Object6.class).add(Arrays.asList(Object3.class.getName()));
+		assertThat(new ArrayList<String>(list.classes()), is(Arrays.asList(
+				Object3.class.getName(), Object4.class.getName(), Object5.class.getName(), 
+				Object7.class.getName())));
+		
+		try {
+			new ClassList(null);
+			fail();
+		} catch (IllegalArgumentException e) {}
+	}
+	
+	@Test
+	public void testWriteClassList() throws IOException {
+		ClassList list = new ClassList(resolver()).add(Arrays.asList(Object7.class.getName()));
+		File file = new File(folder.getRoot(), "cds/app.classlist");
+		list.writeClassList(file);
+		List<String> lines = Files.readAllLines(file.toPath());
+		// The supertypes are listed before the subtypes.
+		assertThat(lines, is(Arrays.asList("java/lang/Object", 
+				"org/eiichiro/reverb/lang/Interface1", "org/eiichiro/reverb/lang/Interface2", 
+				"org/eiichiro/reverb/lang/Object6", "org/eiichiro/reverb/lang/Object7")));
+				
+		// Not on the search path.
+		list = new ClassList(resolver()).add(Arrays.asList("java.util.RandomAccess", "example.Missing"));
+		StringWriter writer = new StringWriter();
+		list.writeClassList(writer);
+		assertThat(writer.toString(), is("example/Missing\njava/lang/Object\njava/util/RandomAccess\n"));
+	}
+	
+	@Test
+	public void testWriteReflectConfig() throws IOException {
+		ClassList list = new ClassList(resolver()).addBySuperclass(Object6.class);
+		StringWriter writer = new StringWriter();
+		list.writeReflectConfig(writer);
+		assertThat(writer.toString(), is("[\n"
+				+ "  {\n"
+				+ "    \"name\" : \"org.eiichiro.reverb.lang.Object7\",\n"
+				+ "    \"allDeclaredConstructors\" : true,\n"
+				+ "    \"allDeclaredMethods\" : true,\n"
+				+ "    \"allDeclaredFields\" : true\n"
+				+ "  }\n"
+				+ "]\n"));
+		writer = new StringWriter();
+		new ClassList(resolver()).writeReflectConfig(writer);
+		assertThat(writer.toString(), is("[\n]\n"));
+	}
+	
+	private BytecodeClassResolver resolver() throws IOException {
+		File jar = Jars.create(File.createTempFile("classes", ".jar", folder.getRoot()), null, 
+				Annotation1.class, Interface1.class, Interface2.class, Superclass1.class, 
+				Object3.class, Object4.class, Object5.class, Object6.class, Object7.class);
+		return new BytecodeClassResolver(Arrays.asList(jar.toURI().toURL()));
+	}
+
+}
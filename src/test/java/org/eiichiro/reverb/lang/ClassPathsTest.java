@@ -0,0 +1,108 @@
+package org.eiichiro.reverb.lang;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassPathsTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testClassPath() throws IOException {
+		List<URL> paths = ClassPaths.classPath();
+		URL classes = new File("target/test-classes").getCanonicalFile().toURI().toURL();
+		assertThat(paths.contains(classes), is(true));
+		assertThat(classes.toString().endsWith("/"), is(true));
+	}
+	
+	@Test
+	public void testModulePath() throws IOException {
+		File modules = folder.newFolder("modules");
+		File jar1 = Jars.create(new File(modules, "1.jar"), null, Object1.class);
+		File jar2 = Jars.create(new File(modules, "2.jar"), null, Object2.class);
+		new File(modules, "readme.txt").createNewFile();
+		File jar3 = Jars.create(folder.newFile("3.jar"), null, Object3.class);
+		String property = System.getProperty("jdk.module.path");
+		
+		try {
+			System.setProperty("jdk.module.path", modules + File.pathSeparator + jar3 
+					+ File.pathSeparator + new File(folder.getRoot(), "missing.jar"));
+			assertThat(ClassPaths.modulePath(), is(Arrays.asList(url(jar1), url(jar2), url(jar3))));
+		} finally {
+			if (property == null) {
+				System.clearProperty("jdk.module.path");
+			} else {
+				System.setProperty("jdk.module.path", property);
+			}
+		}
+	}
+	
+	@Test
+	public void testOf() throws IOException {
+		File jar1 = Jars.create(folder.newFile("1.jar"), null, Object1.class);
+		File jar2 = Jars.create(folder.newFile("2.jar"), null, Object2.class);
+		URLClassLoader parent = new URLClassLoader(new URL[] {jar1.toURI().toURL()}, null);
+		// Duplicated and not normalized.
+		URLClassLoader child = new URLClassLoader(new URL[] {
+				new File(folder.getRoot(), "../" + folder.getRoot().getName() + "/1.jar").toURI().toURL(), 
+				jar2.toURI().toURL(), new URL("http://reverb.eiichiro.org/")}, parent);
+		
+		try {
+			assertThat(ClassPaths.of(child), is(Arrays.asList(url(jar1), url(jar2))));
+			assertThat(ClassPaths.of(parent), is(Arrays.asList(url(jar1))));
+		} finally {
+			child.close();
+			parent.close();
+		}
+		
+		List<URL> paths = ClassPaths.of(getClass().getClassLoader());
+		assertThat(paths.containsAll(ClassPaths.classPath()), is(true));
+		
+		try {
+			ClassPaths.of(null);
+			fail();
+		} catch (IllegalArgumentException e) {}
+	}
+	
+	@Test
+	public void testShared() throws IOException {
+		File jar = Jars.create(folder.newFile("1.jar"), null, Object1.class, Object2.class);
+		URLClassLoader classLoader = new URLClassLoader(new URL[] {jar.toURI().toURL()}, null);
+		ClassIndex index = ClassIndex.shared();
+		
+		try {
+			BytecodeClassResolver resolver = BytecodeClassResolver.of(classLoader);
+			assertThat(resolver.index(), is(index));
+			assertThat(resolver.paths(), is((Iterable<URL>) Arrays.asList(url(jar))));
+			assertThat(index.get(jar), is(nullValue()));
+			assertThat(resolver.hierarchy().contains(Object1.class.getName()), is(true));
+			ClassIndex.Entry entry = index.get(jar);
+			assertThat(entry.classes().size(), is(2));
+			// Keyed by the normalized path.
+			assertThat(index.get(new File(jar.getParentFile(), "./1.jar")), is(entry));
+			JLCClassResolver other = JLCClassResolver.of(classLoader);
+			assertThat(other.index(), is(index));
+			assertThat(other.resolveByName("Object1").size(), is(1));
+			assertThat(index.get(jar), is(entry));
+		} finally {
+			classLoader.close();
+		}
+	}
+	
+	private static URL url(File file) throws IOException {
+		return file.getCanonicalFile().toURI().toURL();
+	}
+
+}
@@ -0,0 +1,164 @@
+package org.eiichiro.reverb.lang;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eiichiro.reverb.lang.ClassResolver.Matcher;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassWatcherTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testWatch() throws Exception {
+		File directory = folder.newFolder("classes");
+		write(directory, Object1.class);
+		File jar = Jars.create(folder.newFile("1.jar"), null, Object2.class);
+		BytecodeClassResolver resolver = new BytecodeClassResolver(Arrays.asList(
+				directory.toURI().toURL(), jar.toURI().toURL()));
+		final BlockingQueue<List<Set<ClassFile>>> changes = new LinkedBlockingQueue<List<Set<ClassFile>>>();
+		ClassWatcher<ClassFile> watcher = resolver.watch(new Matcher<ClassFile>() {
+			
+			public boolean matches(ClassFile clazz) {
+				return !clazz.isInterface();
+			}
+			
+		}, new ClassWatcher.Listener<ClassFile>() {
+			
+			public void changed(Set<ClassFile> added, Set<ClassFile> modified, Set<ClassFile> removed) {
+				changes.add(Arrays.asList(added, modified, removed));
+			}
+			
+		});
+		
+		try {
+			Set<ClassFile> classes = watcher.classes();
+			assertThat(classes.size(), is(2));
+			assertThat(classes.contains(classFile(Object1.class)), is(true));
+			assertThat(classes.contains(classFile(Object2.class)), is(true));
+			
+			// Added (including the class which does not match).
+			write(directory, Object3.class);
+			write(directory, Interface1.class);
+			List<Set<ClassFile>> change = changes.poll(30, TimeUnit.SECONDS);
+			assertThat(change, is(notNullValue()));
+			assertThat(change.get(0).size(), is(1));
+			assertThat(change.get(0).contains(classFile(Object3.class)), is(true));
+			assertThat(change.get(1).size(), is(0));
+			assertThat(change.get(2).size(), is(0));
+			assertThat(watcher.classes().size(), is(3));
+			
+			// Modified.
+			File file = write(directory, Object1.class);
+			file.setLastModified(file.lastModified() + 2000);
+			change = changes.poll(30, TimeUnit.SECONDS);
+			assertThat(change, is(notNullValue()));
+			assertThat(change.get(1).contains(classFile(Object1.class)), is(true));
+			assertThat(change.get(0).size(), is(0));
+			assertThat(change.get(2).size(), is(0));
+			
+			// Removed.
+			assertThat(new File(directory, path(Object3.class)).delete(), is(true));
+			change = changes.poll(30, TimeUnit.SECONDS);
+			assertThat(change, is(notNullValue()));
+			assertThat(change.get(2).size(), is(1));
+			assertThat(change.get(2).contains(classFile(Object3.class)), is(true));
+			assertThat(watcher.classes().size(), is(2));
+		} finally {
+			watcher.close();
+		}
+		
+		write(directory, Object4.class);
+		assertThat(changes.poll(500, TimeUnit.MILLISECONDS), is(nullValue()));
+		assertThat(watcher.classes().contains(classFile(Object4.class)), is(false));
+	}
+
+	@Test
+	public void testWatchLoadFailure() throws Exception {
+		File directory = folder.newFolder("classes");
+		// Object2 cannot be loaded without Superclass1.
+		write(directory, Object2.class);
+		URLClassLoader classLoader = new URLClassLoader(new URL[] {directory.toURI().toURL()}, null);
+		JLCClassResolver resolver = new JLCClassResolver(classLoader, Arrays.asList(directory.toURI().toURL()));
+		final BlockingQueue<Set<Class<?>>> changes = new LinkedBlockingQueue<Set<Class<?>>>();
+		ClassWatcher<Class<?>> watcher = resolver.watch(new Matcher<Class<?>>() {
+			
+			public boolean matches(Class<?> clazz) {
+				return true;
+			}
+			
+		}, new ClassWatcher.Listener<Class<?>>() {
+			
+			public void changed(Set<Class<?>> added, Set<Class<?>> modified, Set<Class<?>> removed) {
+				changes.add(added);
+			}
+			
+		});
+		
+		try {
+			assertThat(watcher.classes().size(), is(0));
+			assertThat(resolver.failures().contains(Object2.class.getName()), is(true));
+			
+			// Fixed; Object2 is tried again.
+			write(directory, Superclass1.class);
+			File file = write(directory, Object2.class);
+			file.setLastModified(file.lastModified() + 2000);
+			Set<String> names = new HashSet<String>();
+			
+			while (!names.contains(Object2.class.getName())) {
+				Set<Class<?>> added = changes.poll(30, TimeUnit.SECONDS);
+				assertThat(added, is(notNullValue()));
+				
+				for (Class<?> clazz : added) {
+					names.add(clazz.getName());
+				}
+			}
+			
+			assertThat(resolver.failures().contains(Object2.class.getName()), is(false));
+		} finally {
+			watcher.close();
+			classLoader.close();
+		}
+	}
+
+	private static File write(File directory, Class<?> clazz) throws IOException {
+		File file = new File(directory, path(clazz));
+		file.getParentFile().mkdirs();
+		FileOutputStream stream = new FileOutputStream(file);
+		
+		try {
+			stream.write(Jars.bytes(clazz));
+		} finally {
+			stream.close();
+		}
+		
+		return file;
+	}
+
+	private static String path(Class<?> clazz) {
+		return clazz.getName().replace('.', '/') + ".class";
+	}
+
+	private static ClassFile classFile(Class<?> clazz) {
+		return new ClassFile(clazz.getName(), 0, null, new ArrayList<String>(), new ArrayList<String>());
+	}
+
+}
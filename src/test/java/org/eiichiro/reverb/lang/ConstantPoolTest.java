@@ -0,0 +1,61 @@
+package org.eiichiro.reverb.lang;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class ConstantPoolTest {
+
+	@Test
+	public void testReferences() throws IOException {
+		ConstantPool pool = ConstantPool.read(Jars.bytes(Object8.class));
+		assertThat(pool, is(notNullValue()));
+		assertThat(pool.references(ConstantPool.utf8("org/eiichiro/reverb/lang/Object5")), is(true));
+		assertThat(pool.references(ConstantPool.utf8("org/eiichiro/reverb/lang/Interface1")), is(true));
+		assertThat(pool.references(ConstantPool.utf8("java/util/List")), is(true));
+		// String literal.
+		assertThat(pool.references(ConstantPool.utf8("org/eiichiro/reverb/lang/Object3")), is(false));
+		// Prefix of the referred type.
+		assertThat(pool.references(ConstantPool.utf8("org/eiichiro/reverb/lang/Object")), is(false));
+		
+		byte[] owner = ConstantPool.utf8("org/eiichiro/reverb/lang/Object5");
+		assertThat(pool.references(owner, ConstantPool.utf8("method1"), 
+				ConstantPool.utf8("(Ljava/lang/String;I)V")), is(true));
+		assertThat(pool.references(owner, ConstantPool.utf8("method1"), null), is(true));
+		assertThat(pool.references(owner, ConstantPool.utf8("field1"), null), is(true));
+		assertThat(pool.references(owner, ConstantPool.utf8("method2"), null), is(false));
+		assertThat(pool.references(ConstantPool.utf8("org/eiichiro/reverb/lang/Object4"), 
+				ConstantPool.utf8("method1"), null), is(false));
+	}
+
+	@Test
+	public void testRead() {
+		assertThat(ConstantPool.read(new byte[] {1, 2, 3}), is(nullValue()));
+		assertThat(ConstantPool.read(new byte[] {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0, 0, 0, 52, 0, 10}), is(nullValue()));
+	}
+
+	@Test
+	public void testReferencesMalformed() {
+		// #1 Class and #2 String naming #65535, #3 Methodref of #65535.#65535.
+		ConstantPool pool = ConstantPool.read(new byte[] {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 
+				0, 0, 0, 52, 0, 4, 7, (byte) 0xFF, (byte) 0xFF, 8, (byte) 0xFF, (byte) 0xFF, 
+				10, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF});
+		assertThat(pool, is(notNullValue()));
+		assertThat(pool.references(ConstantPool.utf8("java/lang/Object")), is(false));
+		assertThat(pool.references(ConstantPool.utf8("java/lang/Object"), 
+				ConstantPool.utf8("toString"), null), is(false));
+	}
+
+	@Test
+	public void testUtf8() {
+		assertThat(Arrays.equals(ConstantPool.utf8("a/B"), new byte[] {'a', '/', 'B'}), is(true));
+		assertThat(Arrays.equals(ConstantPool.utf8("\u0000"), new byte[] {(byte) 0xC0, (byte) 0x80}), is(true));
+		assertThat(Arrays.equals(ConstantPool.utf8("\u00e9"), new byte[] {(byte) 0xC3, (byte) 0xA9}), is(true));
+		assertThat(Arrays.equals(ConstantPool.utf8("\u3042"), new byte[] {(byte) 0xE3, (byte) 0x81, (byte) 0x82}), is(true));
+	}
+
+}
@@ -0,0 +1,3 @@
+package org.eiichiro.reverb.lang;
+
+public interface Interface2 extends Interface1 {}
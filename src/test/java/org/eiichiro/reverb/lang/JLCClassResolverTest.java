@@ -12,13 +12,20 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.eiichiro.reverb.lang.ClassResolver.Matcher;
 import org.eiichiro.reverb.system.Environment;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class JLCClassResolverTest {
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	@Test
 	public void testClassResolverIterable() throws IOException {
 		List<URL> paths = new ArrayList<URL>();
@@ -174,4 +181,197 @@ public class JLCClassResolverTest {
 		assertThat(set.contains(Object5.class), is(true));
 	}
 
+	@Test
+	public void testResolveParallel() throws IOException, ClassNotFoundException {
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		List<URL> paths = new ArrayList<URL>();
+		
+		if (classLoader instanceof URLClassLoader) {
+			// JDK <=8
+			paths = Arrays.asList(((URLClassLoader) classLoader).getURLs());
+		} else {
+			// JDK >9
+			for (String path : Environment.getProperty("java.class.path").split(File.pathSeparator)) {
+				paths.add(new File(path).toURI().toURL());
+			}
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		
+		try {
+			JLCClassResolver resolver = new JLCClassResolver(paths);
+			assertThat(resolver.executor(), is(nullValue()));
+			Set<Class<?>> sequential = resolver.resolveByInterface(Interface1.class);
+			resolver.parallel(executor);
+			assertThat(resolver.executor(), is(executor));
+			Set<Class<?>> set = resolver.resolveByInterface(Interface1.class);
+			assertThat(set, is(sequential));
+			assertThat(set.contains(Object3.class), is(true));
+			assertThat(set.contains(Object5.class), is(true));
+			resolver.parallel();
+			set = resolver.resolveByAnnotation(Annotation1.class);
+			assertThat(set.contains(Object4.class), is(true));
+			assertThat(set.contains(Object5.class), is(true));
+			assertThat(set.contains(Object3.class), is(false));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testResolveByInterfaceInheritance() throws IOException, ClassNotFoundException {
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		List<URL> paths = new ArrayList<URL>();
+		
+		if (classLoader instanceof URLClassLoader) {
+			// JDK <=8
+			paths = Arrays.asList(((URLClassLoader) classLoader).getURLs());
+		} else {
+			// JDK >9
+			for (String path : Environment.getProperty("java.class.path").split(File.pathSeparator)) {
+				paths.add(new File(path).toURI().toURL());
+			}
+		}
+		
+		JLCClassResolver resolver = new JLCClassResolver(paths);
+		Set<Class<?>> set = resolver.resolveByInterface(Interface1.class);
+		assertThat(set.contains(Interface2.class), is(true));
+		assertThat(set.contains(Object6.class), is(true));
+		assertThat(set.contains(Object7.class), is(true));
+		assertThat(resolver.hierarchy(), is(resolver.hierarchy()));
+		set = resolver.resolveBySuperclass(Object6.class);
+		assertThat(set.size(), is(1));
+		assertThat(set.contains(Object7.class), is(true));
+		set = resolver.resolveBySuperclass(Exception.class);
+		assertThat(set.contains(Exception1.class), is(true));
+		assertThat(set.contains(UncheckedException.class), is(true));
+		TypeHierarchy hierarchy = resolver.hierarchy();
+		resolver.refresh();
+		assertThat(resolver.hierarchy() == hierarchy, is(false));
+	}
+
+	@Test
+	public void testFailures() throws IOException {
+		File jar = Jars.create(folder.newFile("1.jar"), null, Object1.class, Object2.class);
+		URLClassLoader classLoader = new URLClassLoader(new URL[] {jar.toURI().toURL()}, null);
+		
+		try {
+			JLCClassResolver resolver = new JLCClassResolver(classLoader, Arrays.asList(jar.toURI().toURL()));
+			// Object2 cannot be loaded without Superclass1.
+			Set<Class<?>> set = resolver.resolveByName("Object");
+			assertThat(set.size(), is(1));
+			assertThat(set.iterator().next().getName(), is(Object1.class.getName()));
+			LoadFailures failures = resolver.failures();
+			assertThat(failures, is(LoadFailures.of(classLoader)));
+			assertThat(failures.size(), is(1));
+			LoadFailures.Failure failure = failures.get(Object2.class.getName());
+			assertThat(failure.reason().startsWith(NoClassDefFoundError.class.getName()), is(true));
+			assertThat(failures.toString().startsWith("1 class(es) failed to be loaded"), is(true));
+			
+			set = new JLCClassResolver(classLoader, Arrays.asList(jar.toURI().toURL())).resolveByName("Object");
+			assertThat(set.size(), is(1));
+			assertThat(failures.get(Object2.class.getName()) == failure, is(true));
+			assertThat(failures.remove(Object2.class.getName()), is(true));
+			resolver.resolveByName("Object");
+			assertThat(failures.get(Object2.class.getName()) == failure, is(false));
+			// Forgotten when the class file has been changed.
+			resolver.changed(Object2.class.getName());
+			assertThat(failures.contains(Object2.class.getName()), is(false));
+			assertThat(LoadFailures.of(getClass().getClassLoader()).contains(Object2.class.getName()), is(false));
+		} finally {
+			classLoader.close();
+		}
+	}
+
+	@Test
+	public void testInitialize() throws IOException {
+		File jar = Jars.create(folder.newFile("1.jar"), null, Object9.class, Object10.class);
+		Matcher<Class<?>> matcher = new Matcher<Class<?>>() {
+			
+			public boolean matches(Class<?> clazz) {
+				// Annotations are readable on the uninitialized class.
+				return clazz.isAnnotationPresent(Deprecated.class);
+			}
+			
+		};
+		assertThat(initialize(jar, JLCClassResolver.Initialization.NEVER, matcher), is(Arrays.asList((String) null, null)));
+		assertThat(initialize(jar, JLCClassResolver.Initialization.MATCHED, matcher), is(Arrays.asList("initialized", null)));
+		assertThat(initialize(jar, JLCClassResolver.Initialization.ALWAYS, matcher), is(Arrays.asList("initialized", "initialized")));
+		
+		try {
+			new JLCClassResolver(new ArrayList<URL>()).initialize(null);
+			fail();
+		} catch (IllegalArgumentException e) {}
+	}
+	
+	@Test
+	public void testInitializationFailure() throws IOException {
+		File jar = Jars.create(folder.newFile("1.jar"), null, Object11.class);
+		URLClassLoader classLoader = new URLClassLoader(new URL[] {jar.toURI().toURL()}, null);
+		Matcher<Class<?>> matcher = new Matcher<Class<?>>() {
+			
+			public boolean matches(Class<?> clazz) {
+				return clazz.isAnnotationPresent(Deprecated.class);
+			}
+			
+		};
+		
+		try {
+			List<URL> paths = Arrays.asList(jar.toURI().toURL());
+			JLCClassResolver resolver = new JLCClassResolver(classLoader, paths);
+			resolver.initialize(JLCClassResolver.Initialization.MATCHED);
+			// The static initializer of Object11 throws.
+			assertThat(resolver.resolve(matcher).isEmpty(), is(true));
+			LoadFailures failures = resolver.failures();
+			assertThat(failures.size(), is(1));
+			LoadFailures.Failure failure = failures.get(Object11.class.getName());
+			assertThat(failure.initialization(), is(true));
+			assertThat(failure.reason().startsWith(ExceptionInInitializerError.class.getName()), is(true));
+			assertThat(resolver.resolve(matcher).isEmpty(), is(true));
+			assertThat(failures.get(Object11.class.getName()) == failure, is(true));
+			// Still loaded without initialization.
+			resolver = new JLCClassResolver(classLoader, paths).initialize(JLCClassResolver.Initialization.NEVER);
+			Set<Class<?>> set = resolver.resolve(matcher);
+			assertThat(set.size(), is(1));
+			assertThat(set.iterator().next().getName(), is(Object11.class.getName()));
+			resolver = new JLCClassResolver(classLoader, paths);
+			assertThat(resolver.resolve(matcher).isEmpty(), is(true));
+			assertThat(failures.get(Object11.class.getName()) == failure, is(true));
+		} finally {
+			classLoader.close();
+		}
+		
+		classLoader = new URLClassLoader(new URL[] {jar.toURI().toURL()}, null);
+		
+		try {
+			JLCClassResolver resolver = new JLCClassResolver(classLoader, Arrays.asList(jar.toURI().toURL()));
+			assertThat(resolver.resolve(matcher).isEmpty(), is(true));
+			assertThat(resolver.failures().get(Object11.class.getName()).initialization(), is(true));
+		} finally {
+			classLoader.close();
+		}
+	}
+
+	private List<String> initialize(File jar, JLCClassResolver.Initialization initialization, 
+			Matcher<Class<?>> matcher) throws IOException {
+		System.clearProperty(Object9.class.getName());
+		System.clearProperty(Object10.class.getName());
+		URLClassLoader classLoader = new URLClassLoader(new URL[] {jar.toURI().toURL()}, null);
+		
+		try {
+			JLCClassResolver resolver = new JLCClassResolver(classLoader, Arrays.asList(jar.toURI().toURL()));
+			assertThat(resolver.initialization(), is(JLCClassResolver.Initialization.ALWAYS));
+			assertThat(resolver.initialize(initialization), is(resolver));
+			Set<Class<?>> set = resolver.resolve(matcher);
+			assertThat(set.size(), is(1));
+			assertThat(set.iterator().next().getName(), is(Object9.class.getName()));
+			return Arrays.asList(System.getProperty(Object9.class.getName()), 
+					System.getProperty(Object10.class.getName()));
+		} finally {
+			classLoader.close();
+			System.clearProperty(Object9.class.getName());
+			System.clearProperty(Object10.class.getName());
+		}
+	}
+	
 }
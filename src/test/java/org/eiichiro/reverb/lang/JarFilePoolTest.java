@@ -0,0 +1,139 @@
+package org.eiichiro.reverb.lang;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eiichiro.reverb.lang.ClassResolver.Matcher;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JarFilePoolTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testAcquire() throws IOException {
+		File jar1 = Jars.create(folder.newFile("1.jar"), null, Object1.class);
+		File jar2 = Jars.create(folder.newFile("2.jar"), null, Object2.class);
+		JarFilePool pool = new JarFilePool(1);
+		assertThat(pool.capacity(), is(1));
+		JarReader reader1 = pool.acquire(jar1);
+		assertThat(pool.acquire(jar1) == reader1, is(true));
+		JarReader reader2 = pool.acquire(jar2);
+		assertThat(pool.size(), is(2));
+		pool.release(reader1);
+		pool.release(reader1);
+		assertThat(pool.size(), is(1));
+		pool.release(reader2);
+		assertThat(pool.size(), is(1));
+		assertThat(pool.acquire(jar2) == reader2, is(true));
+		pool.release(reader2);
+		pool.clear();
+		assertThat(pool.size(), is(0));
+		
+		try {
+			new JarFilePool(-1);
+			fail();
+		} catch (IllegalArgumentException e) {}
+	}
+
+	@Test
+	public void testAcquireModified() throws IOException {
+		File jar = Jars.create(folder.newFile("1.jar"), null, Object1.class);
+		JarFilePool pool = new JarFilePool(4);
+		JarReader reader1 = pool.acquire(jar);
+		Jars.create(jar, null, Object1.class, Object2.class);
+		JarReader reader2 = pool.acquire(jar);
+		assertThat(reader2 == reader1, is(false));
+		assertThat(reader2.find("org/eiichiro/reverb/lang/Object2.class"), is(not(-1)));
+		assertThat(pool.size(), is(2));
+		pool.release(reader1);
+		assertThat(pool.size(), is(1));
+		pool.release(reader2);
+		assertThat(pool.size(), is(1));
+	}
+
+	@Test
+	public void testAcquireConcurrently() throws Exception {
+		final File jar = Jars.create(folder.newFile("1.jar"), null, Object1.class);
+		final JarFilePool pool = new JarFilePool(4);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<JarReader>> futures = new ArrayList<Future<JarReader>>();
+		
+		try {
+			for (int i = 0; i < 32; i++) {
+				futures.add(executor.submit(new Callable<JarReader>() {
+					
+					public JarReader call() throws IOException {
+						return pool.acquire(jar);
+					}
+					
+				}));
+			}
+			
+			JarReader reader = futures.get(0).get();
+			
+			for (Future<JarReader> future : futures) {
+				assertThat(future.get() == reader, is(true));
+			}
+			
+			assertThat(pool.size(), is(1));
+			
+			for (int i = 0; i < futures.size(); i++) {
+				pool.release(reader);
+			}
+			
+			pool.clear();
+			assertThat(pool.size(), is(0));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testClassResolver() throws IOException {
+		File jar = Jars.create(folder.newFile("1.jar"), null, Object1.class, Object2.class);
+		JarFilePool pool = new JarFilePool(0);
+		BytecodeClassResolver resolver = new BytecodeClassResolver(Arrays.asList(jar.toURI().toURL()));
+		assertThat(resolver.pool(), is(JarFilePool.shared()));
+		resolver.pool(pool);
+		assertThat(resolver.pool(), is(pool));
+		assertThat(resolver.resolveByName("Object").size(), is(2));
+		assertThat(pool.size(), is(0));
+		Matcher<ClassFile> matcher = new Matcher<ClassFile>() {
+			
+			public boolean matches(ClassFile clazz) {
+				return true;
+			}
+			
+		};
+		assertThat(resolver.resolve(matcher).size(), is(2));
+		assertThat(pool.size(), is(0));
+		Iterator<ClassFile> iterator = resolver.iterate(matcher);
+		assertThat(iterator.hasNext(), is(true));
+		assertThat(pool.size(), is(1));
+		resolver.close();
+		assertThat(pool.size(), is(0));
+		
+		JLCClassResolver resolver2 = new JLCClassResolver(Arrays.asList(jar.toURI().toURL()));
+		resolver2.pool(pool);
+		assertThat(resolver2.resolveByInterface(Interface1.class).isEmpty(), is(true));
+		assertThat(resolver2.resolveByName("Object1").size(), is(1));
+		assertThat(pool.size(), is(0));
+		resolver2.close();
+	}
+
+}
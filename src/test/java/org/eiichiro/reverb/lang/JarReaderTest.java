@@ -0,0 +1,205 @@
+package org.eiichiro.reverb.lang;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JarReaderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testOpen() throws IOException {
+		byte[] large = new byte[2 * 1024 * 1024];
+		new Random(0).nextBytes(large);
+		
+		for (int i = 0; i < large.length / 2; i++) {
+			large[i] = 0;
+		}
+		
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put("org/", new byte[0]);
+		entries.put("org/eiichiro/reverb/lang/Object1.class", Jars.bytes(Object1.class));
+		entries.put("org/eiichiro/reverb/lang/Object2.class", Jars.bytes(Object2.class));
+		entries.put("large.bin", large);
+		
+		for (boolean stored : new boolean[] {true, false}) {
+			File file = Jars.create(new File(folder.getRoot(), stored + ".jar"), entries, stored);
+			JarReader reader = JarReader.open(file);
+			
+			try {
+				assertThat(reader instanceof JarReader.MappedJarReader, is(true));
+				assertThat(reader.file(), is(file));
+				assertThat(reader.size(), is(4));
+				assertThat(reader.find("META-INF/MANIFEST.MF"), is(-1));
+				assertThat(reader.manifest(), is(nullValue()));
+				assertThat(reader.find("org/eiichiro/reverb/lang/Object3.class"), is(-1));
+				
+				for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+					int index = reader.find(entry.getKey());
+					assertThat(reader.name(index), is(entry.getKey()));
+					assertThat(Arrays.equals(bytes(reader.open(index)), entry.getValue()), is(true));
+				}
+				
+			} finally {
+				reader.close();
+			}
+			
+			try {
+				reader.open(0);
+				fail();
+			} catch (IOException e) {}
+		}
+	}
+
+	@Test
+	public void testOpenPrefixed() throws IOException {
+		File jar = Jars.create(folder.newFile("1.jar"), "2.jar", Object1.class);
+		File file = folder.newFile("prefixed.jar");
+		FileOutputStream stream = new FileOutputStream(file);
+		
+		try {
+			stream.write("#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n".getBytes("UTF-8"));
+			stream.write(Jars.bytes(jar));
+		} finally {
+			stream.close();
+		}
+		
+		JarReader reader = JarReader.open(file);
+		assertThat(reader instanceof JarReader.MappedJarReader, is(true));
+		int index = reader.find("org/eiichiro/reverb/lang/Object1.class");
+		assertThat(Arrays.equals(bytes(reader.open(index)), Jars.bytes(Object1.class)), is(true));
+		assertThat(reader.manifest().getMainAttributes().getValue("Class-Path"), is("2.jar"));
+		reader.close();
+	}
+
+	@Test
+	public void testOpenBytes() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put("org/eiichiro/reverb/lang/Object1.class", Jars.bytes(Object1.class));
+		entries.put("org/eiichiro/reverb/lang/Object2.class", Jars.bytes(Object2.class));
+		
+		for (boolean stored : new boolean[] {true, false}) {
+			File file = Jars.create(new File(folder.getRoot(), stored + ".jar"), entries, stored);
+			JarReader reader = JarReader.open(file, ByteBuffer.wrap(Jars.bytes(file)));
+			assertThat(reader.file(), is(file));
+			assertThat(reader.size(), is(2));
+			
+			for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+				int index = reader.find(entry.getKey());
+				assertThat(Arrays.equals(bytes(reader.open(index)), entry.getValue()), is(true));
+			}
+		}
+		
+		assertThat(JarReader.open(folder.getRoot(), ByteBuffer.wrap("invalid".getBytes("UTF-8"))), is(nullValue()));
+	}
+
+	@Test
+	public void testBuffer() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put("org/eiichiro/reverb/lang/Object1.class", Jars.bytes(Object1.class));
+		
+		for (boolean stored : new boolean[] {true, false}) {
+			File file = Jars.create(new File(folder.getRoot(), stored + ".jar"), entries, stored);
+			JarReader reader = JarReader.open(file);
+			ByteBuffer buffer = reader.buffer(reader.find("org/eiichiro/reverb/lang/Object1.class"));
+			
+			if (stored) {
+				byte[] bytes = new byte[buffer.remaining()];
+				buffer.get(bytes);
+				assertThat(Arrays.equals(bytes, Jars.bytes(Object1.class)), is(true));
+			} else {
+				assertThat(buffer, is(nullValue()));
+			}
+			
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testOpenInvalid() throws IOException {
+		File file = folder.newFile("invalid.jar");
+		FileOutputStream stream = new FileOutputStream(file);
+		
+		try {
+			stream.write("invalid".getBytes("UTF-8"));
+		} finally {
+			stream.close();
+		}
+		
+		try {
+			JarReader.open(file);
+			fail();
+		} catch (IOException e) {}
+	}
+
+	@Test
+	public void testOpenTruncated() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put("org/eiichiro/reverb/lang/Object1.class", Jars.bytes(Object1.class));
+		
+		for (boolean stored : new boolean[] {true, false}) {
+			File file = Jars.create(new File(folder.getRoot(), stored + ".jar"), entries, stored);
+			byte[] bytes = bytes(new FileInputStream(file));
+			// The compressed size in the central directory runs past the end.
+			ByteBuffer buffer = ByteBuffer.wrap(bytes.clone()).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(central(buffer) + 20, bytes.length);
+			JarReader reader = JarReader.open(file, buffer);
+			int index = reader.find("org/eiichiro/reverb/lang/Object1.class");
+			
+			try {
+				reader.open(index);
+				fail();
+			} catch (ZipException e) {}
+			
+			try {
+				reader.buffer(index);
+				
+				if (stored) {
+					fail();
+				}
+			} catch (ZipException e) {}
+			
+			// The local header offset in the central directory is out of range.
+			buffer = ByteBuffer.wrap(bytes.clone()).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(central(buffer) + 42, bytes.length);
+			assertThat(JarReader.open(file, buffer), is(nullValue()));
+		}
+	}
+
+	private static int central(ByteBuffer buffer) {
+		for (int i = buffer.limit() - 4; i >= 0; i--) {
+			if (buffer.getInt(i) == 0x02014b50) {
+				return i;
+			}
+		}
+		
+		throw new AssertionError();
+	}
+
+	private static byte[] bytes(InputStream stream) throws IOException {
+		try {
+			return ClassFile.bytes(stream);
+		} finally {
+			stream.close();
+		}
+	}
+
+}
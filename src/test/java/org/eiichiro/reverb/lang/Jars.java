@@ -0,0 +1,87 @@
+package org.eiichiro.reverb.lang;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+
+class Jars {
+
+	static File create(File file, String classPath, Class<?>... classes) throws IOException {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		
+		if (classPath != null) {
+			manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, classPath);
+		}
+		
+		JarOutputStream stream = new JarOutputStream(new FileOutputStream(file), manifest);
+		
+		try {
+			for (Class<?> clazz : classes) {
+				String name = clazz.getName().replace('.', '/') + ".class";
+				stream.putNextEntry(new JarEntry(name));
+				stream.write(bytes(clazz));
+				stream.closeEntry();
+			}
+		} finally {
+			stream.close();
+		}
+		
+		return file;
+	}
+
+	static File create(File file, Map<String, byte[]> entries, boolean stored) throws IOException {
+		JarOutputStream stream = new JarOutputStream(new FileOutputStream(file));
+		
+		try {
+			for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+				JarEntry jarEntry = new JarEntry(entry.getKey());
+				
+				if (stored) {
+					CRC32 crc = new CRC32();
+					crc.update(entry.getValue());
+					jarEntry.setMethod(JarEntry.STORED);
+					jarEntry.setSize(entry.getValue().length);
+					jarEntry.setCrc(crc.getValue());
+				}
+				
+				stream.putNextEntry(jarEntry);
+				stream.write(entry.getValue());
+				stream.closeEntry();
+			}
+		} finally {
+			stream.close();
+		}
+		
+		return file;
+	}
+
+	static byte[] bytes(File file) throws IOException {
+		InputStream stream = new FileInputStream(file);
+		
+		try {
+			return ClassFile.bytes(stream);
+		} finally {
+			stream.close();
+		}
+	}
+
+	static byte[] bytes(Class<?> clazz) throws IOException {
+		InputStream stream = ClassLoader.getSystemResourceAsStream(clazz.getName().replace('.', '/') + ".class");
+		
+		try {
+			return ClassFile.bytes(stream);
+		} finally {
+			stream.close();
+		}
+	}
+
+}
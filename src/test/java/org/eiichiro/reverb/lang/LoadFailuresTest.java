@@ -0,0 +1,49 @@
+package org.eiichiro.reverb.lang;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class LoadFailuresTest {
+
+	@Test
+	public void testLoadFailures() {
+		LoadFailures failures = new LoadFailures();
+		failures.put("a.A", new ClassNotFoundException("a.A"), 1000);
+		failures.put("b.B", new NoClassDefFoundError(), 3000000);
+		failures.put("c.C", new ClassNotFoundException("c.C"), 2000);
+		assertThat(failures.size(), is(3));
+		assertThat(failures.contains("a.A"), is(true));
+		assertThat(failures.contains("d.D"), is(false));
+		assertThat(failures.get("a.A").reason(), is("java.lang.ClassNotFoundException: a.A"));
+		assertThat(failures.get("b.B").reason(), is("java.lang.NoClassDefFoundError"));
+		assertThat(failures.get("a.A").initialization(), is(false));
+		failures.put("e.E", new ExceptionInInitializerError(), 0, true);
+		assertThat(failures.get("e.E").initialization(), is(true));
+		assertThat(failures.remove("e.E"), is(true));
+		List<LoadFailures.Failure> list = failures.failures();
+		assertThat(list.get(0).name(), is("b.B"));
+		assertThat(list.get(1).name(), is("c.C"));
+		assertThat(list.get(2).name(), is("a.A"));
+		assertThat(failures.toString(), is("3 class(es) failed to be loaded in 3ms\n" 
+				+ "  b.B (3000us): java.lang.NoClassDefFoundError\n" 
+				+ "  c.C (2us): java.lang.ClassNotFoundException: c.C\n" 
+				+ "  a.A (1us): java.lang.ClassNotFoundException: a.A"));
+		assertThat(failures.remove("a.A"), is(true));
+		assertThat(failures.remove("a.A"), is(false));
+		failures.clear();
+		assertThat(failures.size(), is(0));
+	}
+
+	@Test
+	public void testOf() {
+		ClassLoader classLoader = getClass().getClassLoader();
+		assertThat(LoadFailures.of(classLoader) == LoadFailures.of(classLoader), is(true));
+		assertThat(LoadFailures.of(null) == LoadFailures.of(null), is(true));
+		assertThat(LoadFailures.of(null) == LoadFailures.of(classLoader), is(false));
+	}
+
+}
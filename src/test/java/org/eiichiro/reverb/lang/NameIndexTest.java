@@ -0,0 +1,58 @@
+package org.eiichiro.reverb.lang;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class NameIndexTest {
+
+	@Test
+	public void testFind() {
+		NameIndex index = new NameIndex(Arrays.asList(
+				"org.example.Object1", "org.example.Object2", "org.example.sub.Object1", 
+				"org.example.Interface1", "org.example.Object1"));
+		assertThat(index.size(), is(4));
+		assertThat(index.find("bject1"), is(set("org.example.Object1", "org.example.sub.Object1")));
+		assertThat(index.find("Object"), is(set("org.example.Object1", "org.example.Object2", "org.example.sub.Object1")));
+		assertThat(index.find("sub.Object1"), is(set("org.example.sub.Object1")));
+		assertThat(index.find("Interface1"), is(set("org.example.Interface1")));
+		assertThat(index.find("1"), is(set("org.example.Object1", "org.example.sub.Object1", "org.example.Interface1")));
+		assertThat(index.find("").size(), is(4));
+		assertThat(index.find("Object3").isEmpty(), is(true));
+		assertThat(index.find("xyz").isEmpty(), is(true));
+		// Every trigram appears but not contiguously.
+		assertThat(index.find("Object1Interface").isEmpty(), is(true));
+		assertThat(index.id("org.example.Interface1"), is(0));
+		assertThat(index.id("org.example.sub.Object1"), is(3));
+		assertThat(index.id("org.example.Object3"), is(-1));
+		
+		try {
+			index.find(null);
+			fail();
+		} catch (IllegalArgumentException e) {}
+		
+		assertThat(new NameIndex(Collections.<String>emptyList()).find("Object").isEmpty(), is(true));
+	}
+
+	@Test
+	public void testNames() throws IOException {
+		BytecodeClassResolver resolver = new BytecodeClassResolver(BytecodeClassResolverTest.paths());
+		NameIndex index = resolver.names();
+		assertThat(resolver.names() == index, is(true));
+		assertThat(index.find("reverb.lang.Object1").contains(Object1.class.getName()), is(true));
+		resolver.refresh();
+		assertThat(resolver.names() == index, is(false));
+	}
+
+	private static Set<String> set(String... names) {
+		return new HashSet<String>(Arrays.asList(names));
+	}
+
+}
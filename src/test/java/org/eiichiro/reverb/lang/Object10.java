@@ -0,0 +1,9 @@
+package org.eiichiro.reverb.lang;
+
+public class Object10 {
+
+	static {
+		System.setProperty(Object10.class.getName(), "initialized");
+	}
+	
+}
@@ -0,0 +1,12 @@
+package org.eiichiro.reverb.lang;
+
+@Deprecated
+public class Object11 {
+
+	static {
+		if (Object11.class != null) {
+			throw new IllegalStateException(Object11.class.getName());
+		}
+	}
+
+}
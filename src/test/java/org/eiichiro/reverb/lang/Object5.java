@@ -1,4 +1,20 @@
 package org.eiichiro.reverb.lang;
 
 @Annotation1
-public class Object5 extends Superclass1 implements Interface1 {}
+public class Object5 extends Superclass1 implements Interface1 {
+
+	@Annotation1
+	Object field1;
+	
+	Object field2;
+	
+	@Annotation1
+	public Object5() {}
+	
+	@Annotation1
+	@Deprecated
+	public void method1(String s, int i) {}
+	
+	public void method2() {}
+	
+}
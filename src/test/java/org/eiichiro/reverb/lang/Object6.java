@@ -0,0 +1,3 @@
+package org.eiichiro.reverb.lang;
+
+public class Object6 implements Interface2 {}
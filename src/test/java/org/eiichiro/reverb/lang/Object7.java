@@ -0,0 +1,3 @@
+package org.eiichiro.reverb.lang;
+
+public class Object7 extends Object6 {}
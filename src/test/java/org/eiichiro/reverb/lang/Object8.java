@@ -0,0 +1,16 @@
+package org.eiichiro.reverb.lang;
+
+import java.util.List;
+
+public class Object8 {
+
+	List<Interface1> interfaces;
+	
+	public String method() {
+		Object5 object5 = new Object5();
+		object5.method1("method1", 0);
+		object5.field1 = interfaces;
+		return "Lorg/eiichiro/reverb/lang/Object3;";
+	}
+	
+}
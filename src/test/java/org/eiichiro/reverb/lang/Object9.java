@@ -0,0 +1,10 @@
+package org.eiichiro.reverb.lang;
+
+@Deprecated
+public class Object9 {
+
+	static {
+		System.setProperty(Object9.class.getName(), "initialized");
+	}
+	
+}
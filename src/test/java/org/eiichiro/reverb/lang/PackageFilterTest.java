@@ -0,0 +1,71 @@
+package org.eiichiro.reverb.lang;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class PackageFilterTest {
+
+	@Test
+	public void testAll() {
+		PackageFilter filter = PackageFilter.ALL;
+		assertThat(filter.all(), is(true));
+		assertThat(filter.accepts("com.example.Object1"), is(true));
+		assertThat(filter.visits("com.example"), is(true));
+	}
+
+	@Test
+	public void testInclude() {
+		PackageFilter filter = PackageFilter.ALL.include("com.example.plugins");
+		assertThat(filter.all(), is(false));
+		assertThat(filter.includes(), is(Arrays.asList("com.example.plugins")));
+		assertThat(filter.accepts("com.example.plugins.Plugin1"), is(true));
+		assertThat(filter.accepts("com.example.plugins.sub.Plugin2"), is(true));
+		assertThat(filter.accepts("com.example.pluginsx.Plugin3"), is(false));
+		assertThat(filter.accepts("com.example.Object1"), is(false));
+		assertThat(filter.accepts("Object1"), is(false));
+		assertThat(filter.visits(""), is(true));
+		assertThat(filter.visits("com"), is(true));
+		assertThat(filter.visits("com.example"), is(true));
+		assertThat(filter.visits("com.example.plugins"), is(true));
+		assertThat(filter.visits("com.example.plugins.sub"), is(true));
+		assertThat(filter.visits("com.example.other"), is(false));
+		assertThat(filter.visits("org"), is(false));
+	}
+
+	@Test
+	public void testIncludeGlob() {
+		PackageFilter filter = PackageFilter.ALL.include("com.*.plugins.*", "org.**.Test?");
+		assertThat(filter.accepts("com.example.plugins.Plugin1"), is(true));
+		assertThat(filter.accepts("com.example.plugins.sub.Plugin2"), is(true));
+		assertThat(filter.accepts("com.example.sub.plugins.Plugin3"), is(false));
+		assertThat(filter.accepts("com.example.Plugin4"), is(false));
+		assertThat(filter.accepts("org.example.sub.Test1"), is(true));
+		assertThat(filter.accepts("org.example.sub.Test12"), is(false));
+		assertThat(filter.visits("com.example"), is(true));
+		assertThat(filter.visits("com.example.sub"), is(false));
+		assertThat(filter.visits("org.example.sub"), is(true));
+		assertThat(filter.visits("net"), is(false));
+	}
+
+	@Test
+	public void testExclude() {
+		PackageFilter filter = PackageFilter.ALL.include("com.example").exclude("com.example.internal", "**.Test*");
+		assertThat(filter.excludes(), is(Arrays.asList("com.example.internal", "**.Test*")));
+		assertThat(filter.accepts("com.example.Object1"), is(true));
+		assertThat(filter.accepts("com.example.internal.Object2"), is(false));
+		assertThat(filter.accepts("com.example.TestObject3"), is(false));
+		assertThat(filter.visits("com.example"), is(true));
+		assertThat(filter.visits("com.example.internal"), is(false));
+		assertThat(filter.visits("com.example.internal.sub"), is(false));
+		
+		try {
+			PackageFilter.ALL.include((String) null);
+			fail();
+		} catch (IllegalArgumentException e) {}
+	}
+
+}
@@ -0,0 +1,52 @@
+package org.eiichiro.reverb.lang;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import org.junit.Test;
+
+public class SymbolTableTest {
+
+	@Test
+	public void testAdd() {
+		SymbolTable symbols = new SymbolTable();
+		assertThat(symbols.add("java.lang.Object"), is(0));
+		assertThat(symbols.add("java.lang.String"), is(1));
+		assertThat(symbols.add("java.lang.Object"), is(0));
+		assertThat(symbols.add(""), is(2));
+		assertThat(symbols.add("p.\u00e9\u3042"), is(3));
+		assertThat(symbols.size(), is(4));
+		assertThat(symbols.get("java.lang.String"), is(1));
+		assertThat(symbols.get("java.lang.Integer"), is(-1));
+		assertThat(symbols.name(0), is("java.lang.Object"));
+		assertThat(symbols.name(2), is(""));
+		assertThat(symbols.name(3), is("p.\u00e9\u3042"));
+		
+		try {
+			symbols.name(4);
+			fail();
+		} catch (IllegalArgumentException e) {}
+	}
+	
+	@Test
+	public void testGrow() {
+		SymbolTable symbols = new SymbolTable();
+		
+		for (int i = 0; i < 10000; i++) {
+			assertThat(symbols.add("org.example.Class" + i), is(i));
+		}
+		
+		symbols.trim();
+		assertThat(symbols.size(), is(10000));
+		
+		for (int i = 0; i < 10000; i++) {
+			assertThat(symbols.get("org.example.Class" + i), is(i));
+			assertThat(symbols.name(i), is("org.example.Class" + i));
+		}
+		
+		assertThat(symbols.add("org.example.Class10000"), is(10000));
+		assertThat(symbols.name(10000), is("org.example.Class10000"));
+		assertThat(symbols.get("org.example.Class9999"), is(9999));
+	}
+
+}
@@ -0,0 +1,120 @@
+package org.eiichiro.reverb.lang;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TypeHierarchyTest {
+
+	@Test
+	public void testSubclasses() throws IOException {
+		TypeHierarchy hierarchy = hierarchy();
+		Set<String> set = hierarchy.subclasses(Superclass1.class.getName());
+		assertThat(set.contains(Object2.class.getName()), is(true));
+		assertThat(set.contains(Object5.class.getName()), is(true));
+		assertThat(set.contains(Object1.class.getName()), is(false));
+		set = hierarchy.subclasses(Exception.class.getName());
+		assertThat(set.contains(Exception1.class.getName()), is(true));
+		assertThat(set.contains(UncheckedException.class.getName()), is(true));
+		assertThat(set.contains(RuntimeException.class.getName()), is(false));
+	}
+
+	@Test
+	public void testSubtypes() throws IOException {
+		TypeHierarchy hierarchy = hierarchy();
+		Set<String> set = hierarchy.subtypes(Interface1.class.getName());
+		assertThat(set.contains(Object3.class.getName()), is(true));
+		assertThat(set.contains(Object5.class.getName()), is(true));
+		assertThat(set.contains(Interface2.class.getName()), is(true));
+		assertThat(set.contains(Object6.class.getName()), is(true));
+		assertThat(set.contains(Object7.class.getName()), is(true));
+		assertThat(set.contains(Object1.class.getName()), is(false));
+		assertThat(set.contains(Object2.class.getName()), is(false));
+		assertThat(set.contains(Object4.class.getName()), is(false));
+	}
+
+	@Test
+	public void testAnnotated() throws IOException {
+		TypeHierarchy hierarchy = hierarchy();
+		Set<String> set = hierarchy.annotated(Annotation1.class.getName(), false);
+		assertThat(set.size(), is(2));
+		assertThat(set.contains(Object4.class.getName()), is(true));
+		assertThat(set.contains(Object5.class.getName()), is(true));
+		assertThat(hierarchy.annotated(Override.class.getName(), false).isEmpty(), is(true));
+	}
+
+	@Test
+	public void testSupertypes() throws IOException {
+		TypeHierarchy hierarchy = hierarchy();
+		Set<String> set = hierarchy.supertypes(Object7.class.getName());
+		assertThat(set.contains(Object6.class.getName()), is(true));
+		assertThat(set.contains(Interface2.class.getName()), is(true));
+		assertThat(set.contains(Interface1.class.getName()), is(true));
+		assertThat(set.contains(Object.class.getName()), is(true));
+		assertThat(hierarchy.contains(Object7.class.getName()), is(true));
+		assertThat(hierarchy.contains(Object.class.getName()), is(false));
+		assertThat(hierarchy.get(Object.class.getName()), is(notNullValue()));
+	}
+
+	@Test
+	public void testGet() throws IOException {
+		TypeHierarchy hierarchy = hierarchy();
+		ClassFile clazz = hierarchy.get(Object5.class.getName());
+		ClassFile expected = ClassFile.read(Jars.bytes(Object5.class));
+		assertThat(clazz, is(expected));
+		assertThat(clazz.access(), is(expected.access()));
+		assertThat(clazz.superclass(), is(Superclass1.class.getName()));
+		assertThat(clazz.interfaces(), is(expected.interfaces()));
+		assertThat(clazz.annotations(), is(expected.annotations()));
+		assertThat(clazz.members(), is(expected.members()));
+		
+		for (int i = 0; i < expected.members().size(); i++) {
+			assertThat(clazz.members().get(i).access(), is(expected.members().get(i).access()));
+			assertThat(clazz.members().get(i).annotations(), is(expected.members().get(i).annotations()));
+		}
+		
+		Set<Member> members = hierarchy.members(Annotation1.class.getName());
+		assertThat(members, is((Set<Member>) new HashSet<Member>(expected.members())));
+		
+		for (Member member : members) {
+			assertThat(member.annotations().contains(Annotation1.class.getName()), is(true));
+		}
+		
+		assertThat(hierarchy.get(Object.class.getName()).superclass(), is(nullValue()));
+		assertThat(hierarchy.get(Annotation1.class.getName()), is(nullValue()));
+		assertThat(hierarchy.get("org.example.Missing"), is(nullValue()));
+	}
+	
+	@Test
+	public void testClasses() throws IOException {
+		TypeHierarchy hierarchy = hierarchy();
+		Set<String> classes = hierarchy.classes();
+		assertThat(classes.size(), is(12));
+		assertThat(new HashSet<String>(classes).size(), is(12));
+		assertThat(classes.contains(Object1.class.getName()), is(true));
+		assertThat(classes.contains(Object.class.getName()), is(false));
+		assertThat(classes.contains(Annotation1.class.getName()), is(false));
+		assertThat(hierarchy.id(Object1.class.getName()) >= 0, is(true));
+		assertThat(hierarchy.id(Object.class.getName()), is(-1));
+	}
+
+	private static TypeHierarchy hierarchy() throws IOException {
+		Class<?>[] classes = new Class<?>[] {Object1.class, Object2.class, Object3.class, 
+				Object4.class, Object5.class, Object6.class, Object7.class, Interface1.class, 
+				Interface2.class, Superclass1.class, Exception1.class, UncheckedException.class};
+		ClassFile[] classFiles = new ClassFile[classes.length];
+		
+		for (int i = 0; i < classes.length; i++) {
+			classFiles[i] = ClassFile.read(Jars.bytes(classes[i]));
+		}
+		
+		return new TypeHierarchy(Arrays.asList(classFiles), null);
+	}
+
+}